@@ -0,0 +1,22 @@
+package ru.nsu.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Точка входа benchmarks.jar. Запускает JMH с переданными аргументами и по умолчанию сохраняет результаты
+ * в jmh-result.json, чтобы прогоны можно было сравнивать между коммитами. Формат и файл переопределяются
+ * стандартными опциями JMH -rf и -rff.
+ */
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        List<String> jmhArgs = new ArrayList<>(List.of(args));
+        if (!jmhArgs.contains("-rf")) {
+            jmhArgs.addAll(0, List.of("-rf", "json"));
+        }
+        if (!jmhArgs.contains("-rff")) {
+            jmhArgs.addAll(0, List.of("-rff", "jmh-result.json"));
+        }
+        org.openjdk.jmh.Main.main(jmhArgs.toArray(String[]::new));
+    }
+}
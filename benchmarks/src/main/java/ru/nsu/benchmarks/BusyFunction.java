@@ -0,0 +1,23 @@
+package ru.nsu.benchmarks;
+
+import ru.nsu.model.RemoteFunction;
+
+/**
+ * CPU-нагрузка фиксированной стоимости на элемент для {@link ParallelMapBenchmark}.
+ */
+public class BusyFunction implements RemoteFunction<Integer, Double> {
+    private final int iterations;
+
+    public BusyFunction(int iterations) {
+        this.iterations = iterations;
+    }
+
+    @Override
+    public Double apply(Integer value) {
+        double sum = 0;
+        for (int i = 1; i <= iterations; i++) {
+            sum += Math.sqrt((double) value * i);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,93 @@
+package ru.nsu.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.nsu.common.HashUtils;
+import ru.nsu.worker.DynamicClassLoader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Загрузка кода задачи на worker-е через {@link DynamicClassLoader#loadTaskClass}.
+ * hit - код с этим хэшем уже загружен, miss - новый код: разбор class-файла или jar-архива, создание ClassLoader-а
+ * и определение классов. Код - один class-файл или jar с классом задачи и его зависимостью. В обоих случаях
+ * вызывается метод задачи: при промахе это первый вызов, который определяет и зависимость из jar.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClassLoadingBenchmark {
+    @Param({"class", "jar"})
+    public String codeFormat;
+
+    private String className;
+    private byte[] code;
+    private String codeHash;
+    private DynamicClassLoader warmLoader;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        if ("class".equals(codeFormat)) {
+            className = SampleTask.class.getName();
+            code = classBytes(SampleTask.class);
+        } else {
+            className = SampleBundleTask.class.getName();
+            code = jar(SampleBundleTask.class, SampleTask.class);
+        }
+        codeHash = HashUtils.sha256Hex(code);
+        // Родитель - platform ClassLoader: классы задачи определяются из кода, а не берутся из classpath бенчмарка
+        warmLoader = new DynamicClassLoader(ClassLoader.getPlatformClassLoader());
+        warmLoader.loadTaskClass(codeHash, className, code);
+    }
+
+    @Benchmark
+    public Object hit() throws Exception {
+        return run(warmLoader);
+    }
+
+    @Benchmark
+    public Object miss() throws Exception {
+        // Свежий загрузчик на каждый вызов: кэш пуст, а определённые классы собираются GC вместе с ним
+        return run(new DynamicClassLoader(ClassLoader.getPlatformClassLoader()));
+    }
+
+    private Object run(DynamicClassLoader loader) throws Exception {
+        return loader.loadTaskClass(codeHash, className, code).getMethod("run", Integer.class).invoke(null, 7);
+    }
+
+    private static byte[] classBytes(Class<?> type) throws IOException {
+        try (InputStream in = type.getResourceAsStream(type.getSimpleName() + ".class")) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static byte[] jar(Class<?>... types) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JarOutputStream jar = new JarOutputStream(out)) {
+            for (Class<?> type : types) {
+                jar.putNextEntry(new JarEntry(type.getName().replace('.', '/') + ".class"));
+                jar.write(classBytes(type));
+                jar.closeEntry();
+            }
+        }
+        return out.toByteArray();
+    }
+}
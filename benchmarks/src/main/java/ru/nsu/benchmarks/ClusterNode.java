@@ -0,0 +1,27 @@
+package ru.nsu.benchmarks;
+
+import ru.nsu.dispatcher.DispatcherServer;
+import ru.nsu.worker.WorkerServer;
+
+import java.net.URI;
+
+/**
+ * Узел кластера, запускаемый {@link LoadHarness} в дочернем процессе.
+ * Аргументы: {@code dispatcher <port>} или {@code worker <port> <dispatcherUrl> <workerId>}.
+ * Процесс работает, пока его не завершит родитель.
+ */
+public class ClusterNode {
+    public static void main(String[] args) throws Exception {
+        int port = Integer.parseInt(args[1]);
+        if ("dispatcher".equals(args[0])) {
+            DispatcherServer server = new DispatcherServer(port);
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        } else {
+            WorkerServer server = new WorkerServer(args[3], port, URI.create(args[2]));
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        }
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,113 @@
+package ru.nsu.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.nsu.common.codec.Codec;
+import ru.nsu.common.codec.Codecs;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность кодирования/декодирования аргументов задач разными форматами.
+ * Размер закодированного payload-а печатается при подготовке каждого набора параметров.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+    private static final int SIZE = 10_000;
+    private static final int PRIMITIVE_ARRAY_SIZE = 1_000_000;
+
+    @Param({"java", "compact"})
+    public String codecName;
+
+    @Param({"integers", "strings", "records", "map", "doubles"})
+    public String payload;
+
+    private Codec codec;
+    private Object[] arguments;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        codec = Codecs.forName(codecName);
+        arguments = new Object[]{createPayload(payload), 42};
+        encoded = codec.encode(arguments);
+        System.out.printf("%n[payload] codec=%s payload=%s bytes=%d%n", codecName, payload, encoded.length);
+    }
+
+    @Benchmark
+    public byte[] encode() throws Exception {
+        return codec.encode(arguments);
+    }
+
+    @Benchmark
+    public Object decode() throws Exception {
+        return codec.decode(encoded, CodecBenchmark.class.getClassLoader());
+    }
+
+    static Object createPayload(String payload) {
+        Random random = new Random(42);
+        switch (payload) {
+            case "integers": {
+                List<Integer> list = new ArrayList<>(SIZE);
+                for (int i = 0; i < SIZE; i++) {
+                    list.add(random.nextInt(1_000_000));
+                }
+                return list;
+            }
+            case "strings": {
+                List<String> list = new ArrayList<>(SIZE);
+                for (int i = 0; i < SIZE; i++) {
+                    list.add("item-" + random.nextInt(1_000_000));
+                }
+                return list;
+            }
+            case "records": {
+                List<Point> list = new ArrayList<>(SIZE);
+                for (int i = 0; i < SIZE; i++) {
+                    list.add(new Point(random.nextInt(), random.nextDouble(), "p" + i));
+                }
+                return list;
+            }
+            case "map": {
+                Map<String, Long> map = new HashMap<>();
+                for (int i = 0; i < SIZE; i++) {
+                    map.put("key-" + i, random.nextLong());
+                }
+                return map;
+            }
+            case "doubles": {
+                double[] doubles = new double[PRIMITIVE_ARRAY_SIZE];
+                for (int i = 0; i < doubles.length; i++) {
+                    doubles[i] = random.nextDouble();
+                }
+                return doubles;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown payload: " + payload);
+        }
+    }
+
+    public record Point(int id, double weight, String label) implements Serializable {
+    }
+}
@@ -0,0 +1,364 @@
+package ru.nsu.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import ru.nsu.client.ClientConfig;
+import ru.nsu.client.RemoteExecutor;
+import ru.nsu.common.JacksonConfig;
+import ru.nsu.dispatcher.DispatcherServer;
+import ru.nsu.worker.WorkerServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Нагрузочный прогон кластера от отправки задачи до получения результата.
+ * Поднимает dispatcher и worker-ы на loopback (в этом процессе или дочерними процессами) либо подключается
+ * к уже запущенному кластеру, отправляет задачи из набора {@link LoadMix} с заданной частотой и печатает
+ * пропускную способность и перцентили задержки.
+ * <p>
+ * Нагрузка открытая: задачи отправляются по расписанию независимо от того, завершились ли предыдущие,
+ * а задержка считается от запланированного момента отправки. Поэтому очередь в клиенте или отставание
+ * генератора попадают в задержку, а не снижают нагрузку незаметно.
+ * <p>
+ * Запуск: {@code java -cp benchmarks.jar ru.nsu.benchmarks.LoadHarness --workers=4 --rate=500 --synthetic=spin:100000}.
+ * Опции:
+ * <ul>
+ *     <li>--cluster - inprocess (по умолчанию), process (узлы в дочерних JVM) или external (--dispatcher=URL);</li>
+ *     <li>--workers - число worker-ов, по умолчанию 2; для external - сколько worker-ов дождаться;</li>
+ *     <li>--port - порт dispatcher-а, worker-ы занимают следующие порты, по умолчанию 19180;</li>
+ *     <li>--rate - задач в секунду, по умолчанию 200;</li>
+ *     <li>--warmup и --duration - длительность прогрева и измерения в секундах, по умолчанию 5 и 30;</li>
+ *     <li>--mix - JSONL-файл с задачами ({@link LoadMix#fromJsonl}) или --synthetic - синтетические задачи
+ *     ({@link LoadMix#synthetic}), по умолчанию spin:100000;</li>
+ *     <li>--maxInFlight - ограничение клиента на число выполняющихся задач, по умолчанию 10000;</li>
+ *     <li>--seed - зерно выбора задач из набора, по умолчанию 42;</li>
+ *     <li>--traceSampleRate - доля трассируемых задач, по умолчанию 0.01;</li>
+ *     <li>--report - файл для отчёта в JSON.</li>
+ * </ul>
+ */
+public class LoadHarness {
+    private static final long DRAIN_TIMEOUT_SECONDS = 60;
+    private static final long STARTUP_TIMEOUT_MILLIS = 30_000;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        ObjectMapper objectMapper = JacksonConfig.createObjectMapper();
+        LoadMix mix = options.containsKey("mix")
+                ? LoadMix.fromJsonl(objectMapper, Path.of(options.remove("mix")))
+                : LoadMix.synthetic(options.getOrDefault("synthetic", "spin:100000"));
+        options.remove("synthetic");
+
+        String clusterMode = options.getOrDefault("cluster", "inprocess");
+        int workers = Integer.parseInt(options.getOrDefault("workers", "2"));
+        int port = Integer.parseInt(options.getOrDefault("port", "19180"));
+        double rate = Double.parseDouble(options.getOrDefault("rate", "200"));
+        long warmupSeconds = Long.parseLong(options.getOrDefault("warmup", "5"));
+        long durationSeconds = Long.parseLong(options.getOrDefault("duration", "30"));
+        int maxInFlight = Integer.parseInt(options.getOrDefault("maxInFlight", "10000"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        double traceSampleRate = Double.parseDouble(options.getOrDefault("traceSampleRate", "0.01"));
+
+        try (Cluster cluster = Cluster.start(clusterMode, workers, port, options.get("dispatcher"))) {
+            ClientConfig config = ClientConfig.defaults(cluster.dispatcherUrl())
+                    .withMaxInFlight(maxInFlight)
+                    .withTraceSampleRate(traceSampleRate);
+            try (RemoteExecutor executor = new RemoteExecutor(config)) {
+                awaitWorkers(executor, workers);
+                System.out.printf("Cluster %s with %d workers at %s, rate %.1f/s, warmup %ds, duration %ds%n",
+                        clusterMode, workers, cluster.dispatcherUrl(), rate, warmupSeconds, durationSeconds);
+
+                Run run = new Run(mix, rate, TimeUnit.SECONDS.toNanos(warmupSeconds),
+                        TimeUnit.SECONDS.toNanos(durationSeconds), new Random(seed));
+                run.execute(executor);
+                run.print(System.out);
+                if (options.containsKey("report")) {
+                    File report = new File(options.get("report"));
+                    objectMapper.writerWithDefaultPrettyPrinter().writeValue(report, run.toJson(objectMapper));
+                    System.out.println("Report saved to " + report);
+                }
+            }
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Expected --option=value, got: " + arg);
+            }
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+
+    private static void awaitWorkers(RemoteExecutor executor, int workers) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+        while (true) {
+            try {
+                if (executor.countAliveWorkers() >= workers) {
+                    return;
+                }
+            } catch (IOException e) {
+                // Dispatcher ещё не запущен
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Workers did not register within " + STARTUP_TIMEOUT_MILLIS + " ms");
+            }
+            Thread.sleep(100);
+        }
+    }
+
+    /**
+     * Один прогон: расписание отправки и статистика по элементам набора.
+     */
+    private static class Run {
+        private final LoadMix mix;
+        private final double rate;
+        private final long warmupNanos;
+        private final long durationNanos;
+        private final Random random;
+        private final Map<String, Latencies> byName = new LinkedHashMap<>();
+        private final Latencies total = new Latencies();
+        private final AtomicLong lastCompletion = new AtomicLong();
+        private long maxLagNanos;
+        private long measuredSubmitted;
+
+        Run(LoadMix mix, double rate, long warmupNanos, long durationNanos, Random random) {
+            this.mix = mix;
+            this.rate = rate;
+            this.warmupNanos = warmupNanos;
+            this.durationNanos = durationNanos;
+            this.random = random;
+            mix.getEntries().forEach(entry -> byName.put(entry.name(), new Latencies()));
+        }
+
+        void execute(RemoteExecutor executor) {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            long start = System.nanoTime();
+            long measureFrom = start + warmupNanos;
+            long end = measureFrom + durationNanos;
+
+            for (long i = 0; ; i++) {
+                long intended = start + (long) (i * 1e9 / rate);
+                if (intended >= end) {
+                    break;
+                }
+                long wait = intended - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                boolean measured = intended >= measureFrom;
+                if (measured) {
+                    maxLagNanos = Math.max(maxLagNanos, System.nanoTime() - intended);
+                    measuredSubmitted++;
+                }
+
+                LoadMix.Entry entry = mix.pick(random);
+                futures.add(executor.submit(entry.newTask()).handle((result, error) -> {
+                    long now = System.nanoTime();
+                    if (measured) {
+                        boolean success = error == null && result.isSuccess();
+                        byName.get(entry.name()).record(now - intended, success);
+                        total.record(now - intended, success);
+                        lastCompletion.accumulateAndGet(now, Math::max);
+                    }
+                    return null;
+                }));
+            }
+
+            try {
+                CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                        .get(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                System.out.printf("Tasks still running after %ds, reporting completed ones%n", DRAIN_TIMEOUT_SECONDS);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            // Пропускная способность - по окну от начала измерения до последнего результата
+            long window = Math.max(lastCompletion.get() - measureFrom, durationNanos);
+            total.throughput = total.succeeded() * 1e9 / window;
+        }
+
+        void print(PrintStream out) {
+            out.printf("Submitted %d tasks (offered %.1f/s), max generator lag %.3f ms%n",
+                    measuredSubmitted, measuredSubmitted * 1e9 / durationNanos, maxLagNanos / 1e6);
+            out.printf("Throughput %.1f tasks/s%n", total.throughput);
+            out.printf("%-24s %8s %8s %10s %10s %10s %10s %10s%n",
+                    "task", "ok", "failed", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+            byName.forEach((name, latencies) -> latencies.print(out, name));
+            total.print(out, "total");
+        }
+
+        ObjectNode toJson(ObjectMapper objectMapper) {
+            ObjectNode node = objectMapper.createObjectNode();
+            node.put("rate", rate);
+            node.put("durationSeconds", durationNanos / 1e9);
+            node.put("submitted", measuredSubmitted);
+            node.put("maxGeneratorLagMs", maxLagNanos / 1e6);
+            node.put("throughput", total.throughput);
+            node.set("total", total.toJson(objectMapper));
+            ObjectNode tasks = node.putObject("tasks");
+            byName.forEach((name, latencies) -> tasks.set(name, latencies.toJson(objectMapper)));
+            return node;
+        }
+    }
+
+    /**
+     * Задержки успешных задач и число ошибок. Результаты приходят из разных потоков.
+     */
+    private static class Latencies {
+        private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+
+        private long[] values = new long[1024];
+        private int size;
+        private long failed;
+        private double throughput;
+
+        synchronized void record(long nanos, boolean success) {
+            if (!success) {
+                failed++;
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = nanos;
+        }
+
+        synchronized int succeeded() {
+            return size;
+        }
+
+        synchronized double[] percentilesMillis() {
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            double[] result = new double[PERCENTILES.length + 1];
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                result[i] = sorted.length == 0 ? 0
+                        : sorted[Math.max((int) Math.ceil(PERCENTILES[i] * sorted.length) - 1, 0)] / 1e6;
+            }
+            result[PERCENTILES.length] = sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6;
+            return result;
+        }
+
+        void print(PrintStream out, String name) {
+            double[] p = percentilesMillis();
+            out.printf("%-24s %8d %8d %10.2f %10.2f %10.2f %10.2f %10.2f%n",
+                    name, succeeded(), failed, p[0], p[1], p[2], p[3], p[4]);
+        }
+
+        ObjectNode toJson(ObjectMapper objectMapper) {
+            double[] p = percentilesMillis();
+            ObjectNode node = objectMapper.createObjectNode();
+            node.put("succeeded", succeeded());
+            node.put("failed", failed);
+            node.put("p50Ms", p[0]);
+            node.put("p90Ms", p[1]);
+            node.put("p99Ms", p[2]);
+            node.put("p999Ms", p[3]);
+            node.put("maxMs", p[4]);
+            return node;
+        }
+    }
+
+    /**
+     * Кластер, на который подаётся нагрузка.
+     */
+    private static class Cluster implements AutoCloseable {
+        private final URI dispatcherUrl;
+        private final List<Runnable> stoppers = new ArrayList<>();
+
+        private Cluster(URI dispatcherUrl) {
+            this.dispatcherUrl = dispatcherUrl;
+        }
+
+        static Cluster start(String mode, int workers, int port, String externalUrl) throws IOException {
+            if ("external".equals(mode)) {
+                if (externalUrl == null) {
+                    throw new IllegalArgumentException("--dispatcher is required for external cluster");
+                }
+                return new Cluster(URI.create(externalUrl));
+            }
+
+            Cluster cluster = new Cluster(URI.create("http://localhost:" + port));
+            try {
+                if ("inprocess".equals(mode)) {
+                    DispatcherServer dispatcher = new DispatcherServer(port);
+                    dispatcher.start();
+                    cluster.stoppers.add(dispatcher::stop);
+                    for (int i = 0; i < workers; i++) {
+                        WorkerServer worker = new WorkerServer("load-worker-" + i, port + 1 + i,
+                                cluster.dispatcherUrl);
+                        worker.start();
+                        cluster.stoppers.add(0, worker::stop);
+                    }
+                } else if ("process".equals(mode)) {
+                    cluster.spawn("dispatcher", "dispatcher", String.valueOf(port));
+                    for (int i = 0; i < workers; i++) {
+                        cluster.spawn("worker-" + i, "worker", String.valueOf(port + 1 + i),
+                                cluster.dispatcherUrl.toString(), "load-worker-" + i);
+                    }
+                } else {
+                    throw new IllegalArgumentException("Unknown cluster mode: " + mode);
+                }
+            } catch (IOException | RuntimeException e) {
+                cluster.close();
+                throw e;
+            }
+            return cluster;
+        }
+
+        URI dispatcherUrl() {
+            return dispatcherUrl;
+        }
+
+        /**
+         * Запускает узел {@link ClusterNode} в дочерней JVM с classpath текущего процесса.
+         * Вывод узла пишется в файл во временном каталоге.
+         */
+        private void spawn(String name, String... args) throws IOException {
+            List<String> command = new ArrayList<>(List.of(
+                    Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                    "-cp", System.getProperty("java.class.path"), ClusterNode.class.getName()));
+            command.addAll(List.of(args));
+            File log = new File(System.getProperty("java.io.tmpdir"), "load-" + name + ".log");
+            Process process = new ProcessBuilder(command)
+                    .redirectErrorStream(true)
+                    .redirectOutput(log)
+                    .start();
+            System.out.printf("Started %s (pid %d), log %s%n", name, process.pid(), log);
+            stoppers.add(0, () -> {
+                process.destroy();
+                try {
+                    if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                        process.destroyForcibly();
+                    }
+                } catch (InterruptedException e) {
+                    process.destroyForcibly();
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+
+        @Override
+        public void close() {
+            stoppers.forEach(Runnable::run);
+        }
+    }
+}
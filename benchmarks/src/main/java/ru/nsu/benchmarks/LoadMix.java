@@ -0,0 +1,133 @@
+package ru.nsu.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import ru.nsu.common.HashUtils;
+import ru.nsu.common.codec.Codec;
+import ru.nsu.common.codec.Codecs;
+import ru.nsu.common.codec.JavaSerializationCodec;
+import ru.nsu.model.Task;
+import ru.nsu.model.TaskMetadata;
+import ru.nsu.model.TaskType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Набор задач, из которого {@link LoadHarness} выбирает отправляемые задачи с учётом весов.
+ * Каждая отправка получает копию шаблона с новым taskId.
+ */
+public class LoadMix {
+    private final List<Entry> entries;
+    private final int totalWeight;
+
+    private LoadMix(List<Entry> entries) {
+        if (entries.isEmpty()) {
+            throw new IllegalArgumentException("Task mix is empty");
+        }
+        this.entries = entries;
+        this.totalWeight = entries.stream().mapToInt(Entry::weight).sum();
+    }
+
+    /**
+     * Читает набор из JSONL-файла: по задаче на строку в формате examples/task_request.json.
+     * Необязательные поля weight (вес, по умолчанию 1) и name (имя в отчёте, по умолчанию класс.метод)
+     * не входят в задачу.
+     */
+    public static LoadMix fromJsonl(ObjectMapper objectMapper, Path file) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        for (String line : Files.readAllLines(file)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            ObjectNode node = (ObjectNode) objectMapper.readTree(line);
+            int weight = node.has("weight") ? node.remove("weight").asInt() : 1;
+            String name = node.has("name") ? node.remove("name").asText() : null;
+            Task task = objectMapper.treeToValue(node, Task.class);
+            entries.add(new Entry(name != null ? name : task.getClassName() + "." + task.getMethodName(),
+                    task, weight));
+        }
+        return new LoadMix(entries);
+    }
+
+    /**
+     * Создаёт набор синтетических задач {@link LoadTasks} по описанию вида {@code spin:100000@3,sleep:10,echo:65536}:
+     * вид задачи, её параметр и вес через запятую. Параметры: sleep - миллисекунды, spin - число итераций,
+     * echo - размер массива байт. Суффикс {@code #tenant} задаёт арендатора задач, например
+     * {@code sleep:200@9#batch,spin:1000#interactive}. В JSONL-наборе арендатор указывается в metadata.tenantId.
+     */
+    public static LoadMix synthetic(String spec) throws IOException {
+        byte[] code;
+        try (InputStream in = LoadTasks.class.getResourceAsStream(LoadTasks.class.getSimpleName() + ".class")) {
+            code = in.readAllBytes();
+        }
+        String codeHash = HashUtils.sha256Hex(code);
+        Codec codec = Codecs.forName(JavaSerializationCodec.NAME);
+
+        List<Entry> entries = new ArrayList<>();
+        for (String item : spec.split(",")) {
+            String kind = item.trim();
+            String tenant = null;
+            int hash = kind.indexOf('#');
+            if (hash >= 0) {
+                tenant = kind.substring(hash + 1);
+                kind = kind.substring(0, hash);
+            }
+            int weight = 1;
+            int at = kind.indexOf('@');
+            if (at >= 0) {
+                weight = Integer.parseInt(kind.substring(at + 1));
+                kind = kind.substring(0, at);
+            }
+            String param = null;
+            int colon = kind.indexOf(':');
+            if (colon >= 0) {
+                param = kind.substring(colon + 1);
+                kind = kind.substring(0, colon);
+            }
+
+            Object argument = switch (kind) {
+                case "sleep" -> param != null ? Integer.parseInt(param) : 10;
+                case "spin" -> param != null ? Integer.parseInt(param) : 100_000;
+                case "echo" -> new byte[param != null ? Integer.parseInt(param) : 1024];
+                default -> throw new IllegalArgumentException("Unknown synthetic task: " + kind);
+            };
+            Task task = new Task(null, TaskType.CALL, LoadTasks.class.getName(), kind, code,
+                    codec.encode(new Object[]{argument}), null, codeHash, null, null, null,
+                    new TaskMetadata(null, 0, 0L, codec.getName(), null, null, 0, false, false, null, tenant));
+            String name = param != null ? kind + ":" + param : kind;
+            entries.add(new Entry(tenant != null ? name + "#" + tenant : name, task, weight));
+        }
+        return new LoadMix(entries);
+    }
+
+    /**
+     * Выбирает элемент набора с вероятностью, пропорциональной его весу.
+     */
+    public Entry pick(Random random) {
+        int point = random.nextInt(totalWeight);
+        for (Entry entry : entries) {
+            point -= entry.weight();
+            if (point < 0) {
+                return entry;
+            }
+        }
+        return entries.get(entries.size() - 1);
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public record Entry(String name, Task template, int weight) {
+        public Task newTask() {
+            return template.withTaskId(UUID.randomUUID());
+        }
+    }
+}
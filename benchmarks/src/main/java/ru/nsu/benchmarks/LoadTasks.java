@@ -0,0 +1,33 @@
+package ru.nsu.benchmarks;
+
+/**
+ * Синтетические задачи {@link LoadHarness}. Зависят только от JDK: байткод класса отправляется на worker-ы
+ * как код задачи.
+ */
+public class LoadTasks {
+    /**
+     * Задача, ожидающая заданное время (ввод-вывод, внешние вызовы).
+     */
+    public static Integer sleep(Integer millis) throws InterruptedException {
+        Thread.sleep(millis);
+        return millis;
+    }
+
+    /**
+     * Задача с CPU-нагрузкой фиксированной стоимости.
+     */
+    public static Double spin(Integer iterations) {
+        double sum = 0;
+        for (int i = 1; i <= iterations; i++) {
+            sum += Math.sqrt(i);
+        }
+        return sum;
+    }
+
+    /**
+     * Возвращает полученные байты: нагрузка на передачу аргументов и результатов.
+     */
+    public static byte[] echo(byte[] payload) {
+        return payload;
+    }
+}
@@ -0,0 +1,81 @@
+package ru.nsu.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.nsu.client.RemoteExecutor;
+import ru.nsu.dispatcher.DispatcherServer;
+import ru.nsu.worker.WorkerServer;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Масштабирование distributed parallel map по числу worker-ов.
+ * Dispatcher и worker-ы запускаются в процессе бенчмарка, каждый worker применяет функцию в одном потоке
+ * (worker.mapParallelism=1), так что время отражает распределение чанков, а не пул внутри worker-а.
+ * Осмысленно при числе ядер не меньше максимального числа worker-ов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Dworker.mapParallelism=1")
+public class ParallelMapBenchmark {
+    private static final int DISPATCHER_PORT = 19080;
+    private static final int ELEMENTS = 20_000;
+
+    @Param({"1", "2", "4"})
+    public int workers;
+
+    @Param({"20000"})
+    public int iterationsPerElement;
+
+    private DispatcherServer dispatcher;
+    private final List<WorkerServer> workerServers = new ArrayList<>();
+    private RemoteExecutor executor;
+    private List<Integer> input;
+    private BusyFunction function;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dispatcher = new DispatcherServer(DISPATCHER_PORT);
+        dispatcher.start();
+        URI dispatcherUrl = URI.create("http://localhost:" + DISPATCHER_PORT);
+        for (int i = 0; i < workers; i++) {
+            WorkerServer worker = new WorkerServer("bench-worker-" + i, DISPATCHER_PORT + 1 + i, dispatcherUrl);
+            worker.start();
+            workerServers.add(worker);
+        }
+
+        executor = new RemoteExecutor(dispatcherUrl);
+        input = IntStream.range(0, ELEMENTS).boxed().toList();
+        function = new BusyFunction(iterationsPerElement);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.close();
+        workerServers.forEach(WorkerServer::stop);
+        dispatcher.stop();
+    }
+
+    @Benchmark
+    public List<Double> parallelMap() {
+        return executor.parallelMap(input, function).join();
+    }
+}
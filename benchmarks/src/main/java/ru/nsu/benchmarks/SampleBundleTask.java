@@ -0,0 +1,10 @@
+package ru.nsu.benchmarks;
+
+/**
+ * Класс задачи, которому нужен ещё один пользовательский класс: его код передаётся jar-архивом.
+ */
+public class SampleBundleTask {
+    public static long run(Integer n) {
+        return SampleTask.run(n) * 2;
+    }
+}
@@ -0,0 +1,11 @@
+package ru.nsu.benchmarks;
+
+/**
+ * Класс задачи для бенчмарков загрузки кода. Зависит только от JDK, поэтому его байткод можно загрузить
+ * ClassLoader-ом worker-а с platform ClassLoader-ом в качестве родителя.
+ */
+public class SampleTask {
+    public static long run(Integer n) {
+        return (long) n * n + 1;
+    }
+}
@@ -0,0 +1,88 @@
+package ru.nsu.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.nsu.common.HashUtils;
+import ru.nsu.common.JacksonConfig;
+import ru.nsu.common.TaskFrames;
+import ru.nsu.model.Task;
+import ru.nsu.model.TaskMetadata;
+import ru.nsu.model.TaskType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Кодирование и декодирование задачи с большим байткодом: JSON (байты в base64) против бинарных кадров
+ * {@link TaskFrames}, в которых байткод и аргументы передаются сырыми секциями.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TaskSerializationBenchmark {
+
+    @Param({"json", "frame"})
+    public String format;
+
+    @Param({"16384", "1048576", "8388608"})
+    public int classBytesSize;
+
+    private ObjectMapper objectMapper;
+    private Task task;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        objectMapper = JacksonConfig.createObjectMapper();
+        Random random = new Random(42);
+        byte[] classBytes = new byte[classBytesSize];
+        random.nextBytes(classBytes);
+        byte[] arguments = new byte[1024];
+        random.nextBytes(arguments);
+
+        task = new Task(UUID.randomUUID(), TaskType.CALL, "com.example.Job", "run", classBytes, arguments, null,
+                HashUtils.sha256Hex(classBytes), null, null, null,
+                new TaskMetadata(null, 0, 0L, "java", null, null, 0, false, false, null, null));
+        encoded = "json".equals(format) ? objectMapper.writeValueAsBytes(task) : join(encodeFrame());
+        System.out.printf("%n[payload] format=%s classBytes=%d bytes=%d%n", format, classBytesSize, encoded.length);
+    }
+
+    @Benchmark
+    public Object encode() throws Exception {
+        return "json".equals(format) ? objectMapper.writeValueAsBytes(task) : encodeFrame();
+    }
+
+    @Benchmark
+    public Task decode() throws Exception {
+        return "json".equals(format) ? objectMapper.readValue(encoded, Task.class)
+                : TaskFrames.decodeTask(objectMapper, new ByteArrayInputStream(encoded));
+    }
+
+    private List<byte[]> encodeFrame() throws Exception {
+        return TaskFrames.encodeTask(objectMapper, task);
+    }
+
+    private static byte[] join(List<byte[]> segments) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        segments.forEach(out::writeBytes);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,80 @@
+package ru.nsu.dispatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.nsu.model.Task;
+import ru.nsu.model.TaskMetadata;
+import ru.nsu.model.TaskType;
+import ru.nsu.model.WorkerInfo;
+import ru.nsu.model.WorkerStatus;
+
+import java.net.URI;
+import java.time.Instant;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Выбор worker-а для задачи ({@link DispatcherServer#selectWorker(Task)}) в кластерах разного размера.
+ * Сервер не запускается, worker-ы регистрируются напрямую. Каждый десятый worker недоступен, у остальных
+ * случайное число активных задач. Бенчмарк лежит в пакете dispatcher-а, чтобы вызывать package-private методы.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SelectWorkerBenchmark {
+
+    @Param({"4", "64", "1024"})
+    public int clusterSize;
+
+    private DispatcherServer dispatcher;
+    private Task task;
+    private Task pinnedTask;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dispatcher = new DispatcherServer(0);
+        Random random = new Random(42);
+        for (int i = 0; i < clusterSize; i++) {
+            WorkerInfo worker = new WorkerInfo("worker-" + i, URI.create("http://localhost:" + (20000 + i)),
+                    i % 10 == 9 ? WorkerStatus.UNAVAILABLE : WorkerStatus.ALIVE, Instant.now(), List.of(), 4, -1);
+            int activeTasks = random.nextInt(16);
+            for (int t = 0; t < activeTasks; t++) {
+                worker.addTask(UUID.randomUUID());
+            }
+            dispatcher.registerWorker(worker);
+        }
+
+        task = task(null);
+        pinnedTask = task("worker-" + (clusterSize / 2));
+    }
+
+    @Benchmark
+    public WorkerInfo leastLoaded() {
+        return dispatcher.selectWorker(task);
+    }
+
+    @Benchmark
+    public WorkerInfo pinned() {
+        return dispatcher.selectWorker(pinnedTask);
+    }
+
+    private static Task task(String workerId) {
+        return new Task(UUID.randomUUID(), TaskType.CALL, "com.example.Job", "run", null, null, null, null, null,
+                null, null, new TaskMetadata(null, 0, 0L, null, null, workerId, 0, false, false, null, null));
+    }
+}
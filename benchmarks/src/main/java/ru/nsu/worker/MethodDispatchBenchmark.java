@@ -0,0 +1,87 @@
+package ru.nsu.worker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Поиск метода задачи по типам аргументов ({@link TaskExecutor#findMethod}) и его вызов через reflection,
+ * как при выполнении каждой CALL-задачи. Бенчмарк лежит в пакете worker-а, чтобы вызывать package-private метод.
+ * <ul>
+ *     <li>exact - типы аргументов совпадают с параметрами, метод находится через getMethod;</li>
+ *     <li>primitive - параметры примитивные, getMethod бросает NoSuchMethodException и метод ищется перебором;</li>
+ *     <li>subtype - аргумент - подтип параметра, тоже перебором.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MethodDispatchBenchmark {
+
+    @Param({"exact", "primitive", "subtype"})
+    public String signature;
+
+    private String methodName;
+    private Object[] args;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        switch (signature) {
+            case "exact" -> {
+                methodName = "add";
+                args = new Object[]{2, 3};
+            }
+            case "primitive" -> {
+                methodName = "multiply";
+                args = new Object[]{2, 3};
+            }
+            case "subtype" -> {
+                methodName = "size";
+                args = new Object[]{new ArrayList<>(List.of(1, 2, 3))};
+            }
+            default -> throw new IllegalArgumentException("Unknown signature: " + signature);
+        }
+    }
+
+    @Benchmark
+    public Method findMethod() throws Exception {
+        return TaskExecutor.findMethod(Calculator.class, methodName, args);
+    }
+
+    @Benchmark
+    public Object findAndInvoke() throws Exception {
+        return TaskExecutor.findMethod(Calculator.class, methodName, args).invoke(null, args);
+    }
+
+    public static class Calculator {
+        public static Integer add(Integer a, Integer b) {
+            return a + b;
+        }
+
+        public static int multiply(int a, int b) {
+            return a * b;
+        }
+
+        public static int size(Collection<?> values) {
+            return values.size();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package ru.nsu.client;
+
+import ru.nsu.common.codec.Codec;
+import ru.nsu.common.codec.Codecs;
+import ru.nsu.model.Task;
+import ru.nsu.model.TaskMetadata;
+import ru.nsu.model.TaskResult;
+import ru.nsu.model.TaskType;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Задание над коллекцией, которое делится на чанки и раздаётся worker-ам через {@link RemoteExecutor}.
+ * <p>
+ * Размер чанка подбирается по измеренной стоимости элемента. Сначала каждому worker-у отправляется небольшой
+ * пробный чанк. Затем размер выбирается так, чтобы чанк выполнялся около {@link #TARGET_CHUNK_NANOS}, но был
+ * не больше доли оставшихся элементов на worker. К концу коллекции чанки мельчают, и последний медленный
+ * чанк не задерживает всё задание.
+ *
+ * @param <T> тип элементов коллекции
+ * @param <V> тип результата задания
+ */
+abstract class ChunkedJob<T, V> {
+    /**
+     * Желаемое время выполнения одного чанка на worker-е.
+     */
+    private static final long TARGET_CHUNK_NANOS = 200_000_000L;
+    /**
+     * Сколько чанков держать в работе на каждый worker: пока один выполняется, следующий уже в пути.
+     */
+    private static final int CHUNKS_IN_FLIGHT_PER_WORKER = 2;
+    private static final int MAX_PROBE_CHUNK_SIZE = 64;
+    private static final double COST_SMOOTHING = 0.3;
+
+    protected final RemoteExecutor executor;
+    protected final List<T> input;
+    /**
+     * ClassLoader класса функции: через него разрешаются пользовательские типы результатов.
+     */
+    protected final ClassLoader classLoader;
+    private final RemoteCode code;
+    private final Codec codec;
+    private final byte[] function;
+    private final int workers;
+    private final CompletableFuture<Void> chunksDone = new CompletableFuture<>();
+
+    private int nextIndex;
+    private int inFlight;
+    private int completedElements;
+    /**
+     * Сглаженная стоимость одного элемента в наносекундах, 0 - ещё не измерена.
+     */
+    private double nanosPerElement;
+
+    /**
+     * @param function функция, применяемая к чанкам на worker-ах: именованный класс или сериализуемая лямбда
+     * @throws IllegalArgumentException если функция - несериализуемая лямбда или лямбда из класса, который
+     *                                  использует клиентскую библиотеку в сигнатурах методов или статическом
+     *                                  инициализаторе
+     * @throws UncheckedIOException если функцию не удалось сериализовать
+     */
+    protected ChunkedJob(RemoteExecutor executor, List<T> input, Object function, int workers) {
+        this.executor = executor;
+        this.input = input;
+        this.classLoader = function.getClass().getClassLoader();
+        this.code = RemoteCode.ofFunction(function);
+        this.codec = Codecs.forName(executor.getConfig().getCodec());
+        this.workers = Math.max(1, workers);
+        try {
+            // Функция одна на всё задание: сериализуется один раз, worker кэширует восстановленный экземпляр
+            this.function = codec.encode(function);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialize function " + function.getClass().getName(), e);
+        }
+    }
+
+    CompletableFuture<V> start() {
+        if (input.isEmpty()) {
+            chunksDone.complete(null);
+        } else {
+            dispatch();
+        }
+        return chunksDone.thenCompose(ignored -> complete());
+    }
+
+    /**
+     * Создаёт задачу для чанка input[from, from + chunk.size()).
+     */
+    protected abstract Task chunkTask(List<T> chunk) throws IOException;
+
+    /**
+     * Обрабатывает результат чанка. Вызывается конкурентно для разных чанков.
+     */
+    protected abstract void acceptChunk(int from, TaskResult result);
+
+    /**
+     * Вычисляет результат задания после обработки всех чанков.
+     */
+    protected abstract CompletableFuture<V> complete();
+
+    protected Task newTask(TaskType type, Object[] arguments, String jobId, String workerId) throws IOException {
+        byte[] taskFunction = type == TaskType.COLLECT ? null : function;
+        return new Task(UUID.randomUUID(), type, code.className(), "apply", code.classBytes(),
+                codec.encode(arguments), taskFunction, code.codeHash(), null, null, null,
+                new TaskMetadata(null, 0, 0L, codec.getName(), jobId, workerId, 0, false, false, null, null));
+    }
+
+    /**
+     * Отправляет чанки, пока есть необработанные элементы и свободные места в окне.
+     */
+    private synchronized void dispatch() {
+        // Пока стоимость элемента неизвестна, в работе только пробные чанки, по одному на worker
+        int window = nanosPerElement == 0 ? workers : workers * CHUNKS_IN_FLIGHT_PER_WORKER;
+        while (!chunksDone.isDone() && nextIndex < input.size() && inFlight < window) {
+            int from = nextIndex;
+            int size = nextChunkSize();
+            nextIndex += size;
+            inFlight++;
+            submitChunk(from, size);
+        }
+    }
+
+    private int nextChunkSize() {
+        int remaining = input.size() - nextIndex;
+        if (nanosPerElement == 0) {
+            return Math.min(remaining, Math.clamp(input.size() / (workers * 32L), 1, MAX_PROBE_CHUNK_SIZE));
+        }
+        long byCost = (long) (TARGET_CHUNK_NANOS / nanosPerElement);
+        long byRemaining = (remaining + CHUNKS_IN_FLIGHT_PER_WORKER * workers - 1)
+                / (CHUNKS_IN_FLIGHT_PER_WORKER * workers);
+        return (int) Math.clamp(Math.min(byCost, byRemaining), 1, remaining);
+    }
+
+    private void submitChunk(int from, int size) {
+        long submittedAt = System.nanoTime();
+        Task task;
+        try {
+            task = chunkTask(new ArrayList<>(input.subList(from, from + size)));
+        } catch (IOException e) {
+            chunksDone.completeExceptionally(new RemoteExecutionException("Failed to encode chunk at " + from, e));
+            return;
+        }
+
+        executor.submit(task).whenComplete((result, error) -> {
+            if (error != null) {
+                chunksDone.completeExceptionally(error);
+            } else if (!result.isSuccess()) {
+                chunksDone.completeExceptionally(new RemoteExecutionException(0, result.getErrorMessage()));
+            } else {
+                onChunkCompleted(from, size, result, System.nanoTime() - submittedAt);
+            }
+        });
+    }
+
+    private void onChunkCompleted(int from, int size, TaskResult result, long roundTripNanos) {
+        try {
+            acceptChunk(from, result);
+        } catch (RuntimeException e) {
+            chunksDone.completeExceptionally(e);
+            return;
+        }
+
+        synchronized (this) {
+            // Worker-ы до появления executionNanos его не присылают, тогда оцениваем по времени ответа
+            long nanos = result.getExecutionNanos() > 0 ? result.getExecutionNanos() : roundTripNanos;
+            double sample = Math.max(1.0, (double) nanos / size);
+            nanosPerElement = nanosPerElement == 0 ? sample
+                    : nanosPerElement + COST_SMOOTHING * (sample - nanosPerElement);
+
+            inFlight--;
+            completedElements += size;
+            if (completedElements == input.size()) {
+                chunksDone.complete(null);
+                return;
+            }
+        }
+        dispatch();
+    }
+}
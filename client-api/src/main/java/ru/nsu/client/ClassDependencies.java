@@ -0,0 +1,404 @@
+package ru.nsu.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Собирает транзитивное замыкание пользовательских классов, на которые ссылается класс задачи.
+ * Ссылки читаются из constant pool class-файла: записи CONSTANT_Class и типы в дескрипторах и сигнатурах.
+ * Классы JDK и библиотек, которые есть на каждом worker-е, в замыкание не входят.
+ */
+final class ClassDependencies {
+    /**
+     * Пакеты, классы которых загружаются worker-ом из собственного classpath, и клиентская библиотека.
+     * Клиентские классы на worker-е не исполняются: на них ссылается только код, отправляющий задачи, например
+     * main-класс, в котором объявлена лямбда. Без этого исключения в замыкание попадал бы весь клиент вместе с
+     * Jackson. Сигнатуры методов и статический инициализатор класса с лямбдой не должны использовать клиент,
+     * см. {@link #clientClassesForLambdas(Class)}.
+     */
+    private static final String[] WORKER_PACKAGES = {"ru/nsu/model/", "ru/nsu/common/", "ru/nsu/client/"};
+    private static final String CLIENT_PACKAGE = "ru/nsu/client/";
+    /**
+     * Тип в дескрипторе или сигнатуре: Lpkg/Name; или Lpkg/Name&lt;...&gt;.
+     */
+    private static final Pattern DESCRIPTOR_TYPE = Pattern.compile("L([^;<>()\\[]+)[;<]");
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC = 0x12;
+    private static final int LDC_W = 0x13;
+    private static final int LDC2_W = 0x14;
+    private static final int ILOAD = 0x15;
+    private static final int LLOAD = 0x16;
+    private static final int FLOAD = 0x17;
+    private static final int DLOAD = 0x18;
+    private static final int ALOAD = 0x19;
+    private static final int ISTORE = 0x36;
+    private static final int LSTORE = 0x37;
+    private static final int FSTORE = 0x38;
+    private static final int DSTORE = 0x39;
+    private static final int ASTORE = 0x3a;
+    private static final int IINC = 0x84;
+    private static final int IFEQ = 0x99;
+    private static final int JSR = 0xa8;
+    private static final int RET = 0xa9;
+    private static final int TABLESWITCH = 0xaa;
+    private static final int LOOKUPSWITCH = 0xab;
+    private static final int GETSTATIC = 0xb2;
+    private static final int PUTSTATIC = 0xb3;
+    private static final int GETFIELD = 0xb4;
+    private static final int PUTFIELD = 0xb5;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int INVOKEINTERFACE = 0xb9;
+    private static final int INVOKEDYNAMIC = 0xba;
+    private static final int NEW = 0xbb;
+    private static final int NEWARRAY = 0xbc;
+    private static final int ANEWARRAY = 0xbd;
+    private static final int CHECKCAST = 0xc0;
+    private static final int INSTANCEOF = 0xc1;
+    private static final int WIDE = 0xc4;
+    private static final int MULTIANEWARRAY = 0xc5;
+    private static final int IFNULL = 0xc6;
+    private static final int IFNONNULL = 0xc7;
+    private static final int GOTO_W = 0xc8;
+    private static final int JSR_W = 0xc9;
+
+    private ClassDependencies() {
+    }
+
+    /**
+     * Возвращает байткод класса и всех пользовательских классов, достижимых из него по ссылкам.
+     * @return внутреннее имя класса (pkg/Name) -> байткод, отсортировано по имени
+     * @throws UncheckedIOException если байткод класса недоступен через его ClassLoader
+     */
+    static Map<String, byte[]> closure(Class<?> entry) {
+        ClassLoader classLoader = entry.getClassLoader() != null ? entry.getClassLoader()
+                : ClassLoader.getSystemClassLoader();
+        String entryName = entry.getName().replace('.', '/');
+
+        Map<String, byte[]> classes = new TreeMap<>();
+        Set<String> visited = new HashSet<>();
+        Deque<String> queue = new ArrayDeque<>();
+        visited.add(entryName);
+        queue.add(entryName);
+
+        while (!queue.isEmpty()) {
+            String name = queue.poll();
+            byte[] bytes = readClass(classLoader, name);
+            if (bytes == null) {
+                if (name.equals(entryName)) {
+                    throw new UncheckedIOException(new IOException("Class file not found: " + name + ".class"));
+                }
+                continue;
+            }
+            classes.put(name, bytes);
+
+            for (String reference : referencedClasses(bytes)) {
+                if (visited.add(reference) && isShippable(reference)) {
+                    queue.add(reference);
+                }
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * Возвращает внутренние имена классов, на которые ссылается constant pool class-файла.
+     */
+    static Set<String> referencedClasses(byte[] classFile) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(classFile))) {
+            ConstantPool pool = ConstantPool.read(in);
+            Set<String> references = new LinkedHashSet<>();
+            for (int i = 1; i < pool.tags.length; i++) {
+                if (pool.tags[i] == CONSTANT_CLASS) {
+                    addClassName(references, pool.utf8[pool.first[i]]);
+                }
+            }
+            // Массивы, типы полей и параметров, generic-сигнатуры
+            for (String value : pool.utf8) {
+                addDescriptorTypes(references, value);
+            }
+            return references;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Malformed class file", e);
+        }
+    }
+
+    /**
+     * Возвращает внутренние имена классов, которые загружаются при вызове статического метода класса через
+     * reflection: типы параметров и результатов всех его методов и классы, которые использует статический
+     * инициализатор (владельцы полей и методов, к которым он обращается, типы в их дескрипторах, создаваемые
+     * и проверяемые типы).
+     */
+    static Set<String> staticCallReferences(byte[] classFile) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(classFile))) {
+            ConstantPool pool = ConstantPool.read(in);
+            Set<String> references = new LinkedHashSet<>();
+            in.skipBytes(6); // access_flags, this_class, super_class
+            in.skipBytes(2 * in.readUnsignedShort()); // interfaces
+            int fieldCount = in.readUnsignedShort();
+            for (int i = 0; i < fieldCount; i++) {
+                in.skipBytes(6);
+                skipAttributes(in);
+            }
+            int methodCount = in.readUnsignedShort();
+            for (int i = 0; i < methodCount; i++) {
+                in.skipBytes(2);
+                String name = pool.utf8[in.readUnsignedShort()];
+                addDescriptorTypes(references, pool.utf8[in.readUnsignedShort()]);
+                if (!"<clinit>".equals(name)) {
+                    skipAttributes(in);
+                    continue;
+                }
+                int attributeCount = in.readUnsignedShort();
+                for (int a = 0; a < attributeCount; a++) {
+                    String attribute = pool.utf8[in.readUnsignedShort()];
+                    int length = in.readInt();
+                    if (!"Code".equals(attribute)) {
+                        in.skipBytes(length);
+                        continue;
+                    }
+                    in.skipBytes(4); // max_stack, max_locals
+                    byte[] code = new byte[in.readInt()];
+                    in.readFully(code);
+                    addInstructionReferences(references, pool, code);
+                    in.skipBytes(2 * 4 * in.readUnsignedShort()); // exception_table
+                    skipAttributes(in);
+                }
+            }
+            return references;
+        } catch (IOException | IndexOutOfBoundsException e) {
+            throw new UncheckedIOException("Malformed class file", e instanceof IOException io ? io
+                    : new IOException(e.getMessage(), e));
+        }
+    }
+
+    /**
+     * Возвращает клиентские классы, которые worker загрузил бы, восстанавливая лямбду, объявленную в классе.
+     * SerializedLambda ищет метод $deserializeLambda$ через getDeclaredMethod, что разрешает типы параметров
+     * и результатов всех методов класса, а вызов метода выполняет статический инициализатор. Клиентской
+     * библиотеки на worker-е нет, и восстановление завершилось бы NoClassDefFoundError.
+     * @throws UncheckedIOException если байткод класса недоступен через его ClassLoader
+     */
+    static Set<String> clientClassesForLambdas(Class<?> type) {
+        ClassLoader classLoader = type.getClassLoader() != null ? type.getClassLoader()
+                : ClassLoader.getSystemClassLoader();
+        String name = type.getName().replace('.', '/');
+        byte[] bytes = readClass(classLoader, name);
+        if (bytes == null) {
+            throw new UncheckedIOException(new IOException("Class file not found: " + name + ".class"));
+        }
+        Set<String> clientClasses = new TreeSet<>();
+        for (String reference : staticCallReferences(bytes)) {
+            if (reference.startsWith(CLIENT_PACKAGE)) {
+                clientClasses.add(reference.replace('/', '.'));
+            }
+        }
+        return clientClasses;
+    }
+
+    /**
+     * Добавляет классы из записей constant pool, на которые ссылаются инструкции байткода.
+     */
+    private static void addInstructionReferences(Set<String> references, ConstantPool pool, byte[] code) {
+        int pc = 0;
+        while (pc < code.length) {
+            int opcode = code[pc] & 0xFF;
+            int index = switch (opcode) {
+                case LDC -> code[pc + 1] & 0xFF;
+                case LDC_W, LDC2_W, GETSTATIC, PUTSTATIC, GETFIELD, PUTFIELD, INVOKEVIRTUAL, INVOKESPECIAL,
+                     INVOKESTATIC, INVOKEINTERFACE, INVOKEDYNAMIC, NEW, ANEWARRAY, CHECKCAST, INSTANCEOF,
+                     MULTIANEWARRAY -> ((code[pc + 1] & 0xFF) << 8) | (code[pc + 2] & 0xFF);
+                default -> 0;
+            };
+            if (index > 0) {
+                pool.addReferences(references, index);
+            }
+            pc += instructionLength(code, pc, opcode);
+        }
+    }
+
+    /**
+     * Длина инструкции в байтах, включая код операции.
+     */
+    private static int instructionLength(byte[] code, int pc, int opcode) {
+        return switch (opcode) {
+            case BIPUSH, LDC, NEWARRAY, RET -> 2;
+            case ILOAD, LLOAD, FLOAD, DLOAD, ALOAD, ISTORE, LSTORE, FSTORE, DSTORE, ASTORE -> 2;
+            case SIPUSH, LDC_W, LDC2_W, IINC, GETSTATIC, PUTSTATIC, GETFIELD, PUTFIELD, INVOKEVIRTUAL,
+                 INVOKESPECIAL, INVOKESTATIC, NEW, ANEWARRAY, CHECKCAST, INSTANCEOF, IFNULL, IFNONNULL -> 3;
+            case MULTIANEWARRAY -> 4;
+            case INVOKEINTERFACE, INVOKEDYNAMIC, GOTO_W, JSR_W -> 5;
+            case WIDE -> (code[pc + 1] & 0xFF) == IINC ? 6 : 4;
+            case TABLESWITCH -> {
+                int base = (pc + 4) & ~3; // выравнивание операндов по 4 байта
+                int low = readInt(code, base + 4);
+                int high = readInt(code, base + 8);
+                yield base - pc + 12 + 4 * (high - low + 1);
+            }
+            case LOOKUPSWITCH -> {
+                int base = (pc + 4) & ~3;
+                yield base - pc + 8 + 8 * readInt(code, base + 4);
+            }
+            default -> opcode >= IFEQ && opcode <= JSR ? 3 : 1;
+        };
+    }
+
+    private static int readInt(byte[] code, int offset) {
+        return ((code[offset] & 0xFF) << 24) | ((code[offset + 1] & 0xFF) << 16)
+                | ((code[offset + 2] & 0xFF) << 8) | (code[offset + 3] & 0xFF);
+    }
+
+    private static void skipAttributes(DataInputStream in) throws IOException {
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            in.skipBytes(2);
+            in.skipBytes(in.readInt());
+        }
+    }
+
+    private static void addClassName(Set<String> references, String name) {
+        if (name == null) {
+            return;
+        }
+        if (name.startsWith("[")) {
+            addDescriptorTypes(references, name);
+        } else {
+            references.add(name);
+        }
+    }
+
+    private static void addDescriptorTypes(Set<String> references, String value) {
+        if (value != null && value.indexOf('L') >= 0) {
+            Matcher matcher = DESCRIPTOR_TYPE.matcher(value);
+            while (matcher.find()) {
+                references.add(matcher.group(1));
+            }
+        }
+    }
+
+    private static boolean isShippable(String name) {
+        for (String workerPackage : WORKER_PACKAGES) {
+            if (name.startsWith(workerPackage)) {
+                return false;
+            }
+        }
+        // Классы JDK доступны через platform ClassLoader на любом worker-е
+        return ClassLoader.getPlatformClassLoader().getResource(name + ".class") == null;
+    }
+
+    private static byte[] readClass(ClassLoader classLoader, String name) {
+        try (InputStream in = classLoader.getResourceAsStream(name + ".class")) {
+            return in != null ? in.readAllBytes() : null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read bytecode of " + name, e);
+        }
+    }
+
+    /**
+     * Constant pool class-файла: для каждой записи её тег и индексы, на которые она ссылается.
+     */
+    private static final class ConstantPool {
+        private final int[] tags;
+        private final String[] utf8;
+        /**
+         * Первый индекс записи: имя класса, класс поля или метода, дескриптор типа метода.
+         */
+        private final int[] first;
+        /**
+         * Второй индекс записи: NameAndType поля или метода, дескриптор NameAndType.
+         */
+        private final int[] second;
+
+        private ConstantPool(int count) {
+            tags = new int[count];
+            utf8 = new String[count];
+            first = new int[count];
+            second = new int[count];
+        }
+
+        /**
+         * Читает заголовок class-файла и constant pool, оставляя поток на access_flags.
+         */
+        static ConstantPool read(DataInputStream in) throws IOException {
+            in.readInt(); // magic
+            in.readUnsignedShort(); // minor_version
+            in.readUnsignedShort(); // major_version
+            ConstantPool pool = new ConstantPool(in.readUnsignedShort());
+            for (int i = 1; i < pool.tags.length; i++) {
+                int tag = in.readUnsignedByte();
+                pool.tags[i] = tag;
+                switch (tag) {
+                    case CONSTANT_UTF8 -> pool.utf8[i] = in.readUTF();
+                    case CONSTANT_CLASS, CONSTANT_METHOD_TYPE -> pool.first[i] = in.readUnsignedShort();
+                    case CONSTANT_STRING, CONSTANT_MODULE, CONSTANT_PACKAGE -> in.skipBytes(2);
+                    case CONSTANT_METHOD_HANDLE -> in.skipBytes(3);
+                    case CONSTANT_FIELDREF, CONSTANT_METHODREF, CONSTANT_INTERFACE_METHODREF,
+                         CONSTANT_NAME_AND_TYPE, CONSTANT_DYNAMIC, CONSTANT_INVOKE_DYNAMIC -> {
+                        pool.first[i] = in.readUnsignedShort();
+                        pool.second[i] = in.readUnsignedShort();
+                    }
+                    case CONSTANT_INTEGER, CONSTANT_FLOAT -> in.skipBytes(4);
+                    case CONSTANT_LONG, CONSTANT_DOUBLE -> {
+                        // 8-байтовые константы занимают две записи
+                        in.skipBytes(8);
+                        i++;
+                    }
+                    default -> throw new IOException("Unknown constant pool tag " + tag + " at index " + i);
+                }
+            }
+            return pool;
+        }
+
+        /**
+         * Добавляет классы, которые использует инструкция со ссылкой на запись.
+         */
+        void addReferences(Set<String> references, int index) {
+            switch (tags[index]) {
+                case CONSTANT_CLASS -> addClassName(references, utf8[first[index]]);
+                case CONSTANT_METHOD_TYPE -> addDescriptorTypes(references, utf8[first[index]]);
+                case CONSTANT_FIELDREF, CONSTANT_METHODREF, CONSTANT_INTERFACE_METHODREF -> {
+                    addClassName(references, utf8[first[first[index]]]);
+                    addDescriptorTypes(references, utf8[second[second[index]]]);
+                }
+                case CONSTANT_DYNAMIC, CONSTANT_INVOKE_DYNAMIC ->
+                        addDescriptorTypes(references, utf8[second[second[index]]]);
+                default -> {
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package ru.nsu.client;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import ru.nsu.common.codec.JavaSerializationCodec;
+
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * Настройки клиента кластера.
+ */
+@Getter
+@AllArgsConstructor
+public class ClientConfig {
+    /**
+     * Адрес dispatcher-а.
+     */
+    private final URI dispatcherUrl;
+
+    /**
+     * Максимальное число одновременно выполняющихся задач. Остальные ждут в очереди клиента.
+     */
+    private final int maxInFlight;
+
+    /**
+     * Таймаут одного HTTP-запроса к dispatcher-у.
+     */
+    private final Duration requestTimeout;
+
+    /**
+     * Таймаут задачи от вызова до получения результата, null - без ограничения.
+     */
+    private final Duration taskTimeout;
+
+    /**
+     * Сколько dispatcher держит запрос за результатами, если готовых результатов нет.
+     */
+    private final Duration pollWait;
+
+    /**
+     * Максимальное число результатов в одном ответе dispatcher-а.
+     */
+    private final int pollBatchSize;
+
+    /**
+     * Формат сериализации аргументов задач, создаваемых через {@link Remote}-прокси.
+     */
+    private final String codec;
+
+    /**
+     * Доля задач, для которых узлы записывают хронологию выполнения (см. {@link RemoteExecutor#trace}).
+     */
+    private final double traceSampleRate;
+
+    /**
+     * Арендатор, от имени которого отправляются задачи, null - каждый {@link RemoteExecutor} считается отдельным
+     * арендатором. Dispatcher делит worker-ы между арендаторами поровну, а не в порядке поступления задач.
+     */
+    private final String tenantId;
+
+    public static ClientConfig defaults(URI dispatcherUrl) {
+        return new ClientConfig(dispatcherUrl, 256, Duration.ofSeconds(30), null, Duration.ofSeconds(10), 256,
+                JavaSerializationCodec.NAME, 0.01, null);
+    }
+
+    public ClientConfig withMaxInFlight(int maxInFlight) {
+        return new ClientConfig(dispatcherUrl, maxInFlight, requestTimeout, taskTimeout, pollWait, pollBatchSize,
+                codec, traceSampleRate, tenantId);
+    }
+
+    public ClientConfig withRequestTimeout(Duration requestTimeout) {
+        return new ClientConfig(dispatcherUrl, maxInFlight, requestTimeout, taskTimeout, pollWait, pollBatchSize,
+                codec, traceSampleRate, tenantId);
+    }
+
+    public ClientConfig withTaskTimeout(Duration taskTimeout) {
+        return new ClientConfig(dispatcherUrl, maxInFlight, requestTimeout, taskTimeout, pollWait, pollBatchSize,
+                codec, traceSampleRate, tenantId);
+    }
+
+    public ClientConfig withPollWait(Duration pollWait) {
+        return new ClientConfig(dispatcherUrl, maxInFlight, requestTimeout, taskTimeout, pollWait, pollBatchSize,
+                codec, traceSampleRate, tenantId);
+    }
+
+    public ClientConfig withPollBatchSize(int pollBatchSize) {
+        return new ClientConfig(dispatcherUrl, maxInFlight, requestTimeout, taskTimeout, pollWait, pollBatchSize,
+                codec, traceSampleRate, tenantId);
+    }
+
+    public ClientConfig withCodec(String codec) {
+        return new ClientConfig(dispatcherUrl, maxInFlight, requestTimeout, taskTimeout, pollWait, pollBatchSize,
+                codec, traceSampleRate, tenantId);
+    }
+
+    public ClientConfig withTraceSampleRate(double traceSampleRate) {
+        return new ClientConfig(dispatcherUrl, maxInFlight, requestTimeout, taskTimeout, pollWait, pollBatchSize,
+                codec, traceSampleRate, tenantId);
+    }
+
+    public ClientConfig withTenantId(String tenantId) {
+        return new ClientConfig(dispatcherUrl, maxInFlight, requestTimeout, taskTimeout, pollWait, pollBatchSize,
+                codec, traceSampleRate, tenantId);
+    }
+}
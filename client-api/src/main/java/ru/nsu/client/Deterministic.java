@@ -0,0 +1,20 @@
+package ru.nsu.client;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Отмечает метод {@link Remote}-интерфейса, результат которого зависит только от аргументов.
+ * Dispatcher запоминает результаты таких вызовов: повторный вызов с теми же аргументами получает сохранённый
+ * результат без выполнения на worker-е, а одновременные одинаковые вызовы ждут одного выполнения.
+ * <p>
+ * Метод не должен иметь побочных эффектов и зависеть от времени, случайных чисел или состояния worker-а.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Deterministic {
+}
@@ -0,0 +1,69 @@
+package ru.nsu.client;
+
+import ru.nsu.model.RemoteReducer;
+import ru.nsu.model.Task;
+import ru.nsu.model.TaskResult;
+import ru.nsu.model.TaskType;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Распределённый map-reduce. Каждый worker сворачивает результаты своих чанков в одно частичное значение
+ * и хранит его у себя, после последнего чанка клиент забирает частичные значения задачами COLLECT
+ * и сворачивает их. Объём возвращаемых данных зависит от числа worker-ов, а не от числа элементов.
+ */
+class MapReduce<T, R> extends ChunkedJob<T, R> {
+    private final RemoteReducer<T, R> reducer;
+    private final String jobId = UUID.randomUUID().toString();
+    /**
+     * Worker-ы, на которых накоплены частичные значения задания.
+     */
+    private final Set<String> partialHolders = ConcurrentHashMap.newKeySet();
+
+    MapReduce(RemoteExecutor executor, List<T> input, RemoteReducer<T, R> reducer, int workers) {
+        super(executor, input, reducer, workers);
+        this.reducer = reducer;
+    }
+
+    @Override
+    protected Task chunkTask(List<T> chunk) throws IOException {
+        return newTask(TaskType.REDUCE, new Object[]{chunk}, jobId, null);
+    }
+
+    @Override
+    protected void acceptChunk(int from, TaskResult result) {
+        partialHolders.add(result.getWorkerId());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected CompletableFuture<R> complete() {
+        List<CompletableFuture<Object>> partials = new ArrayList<>();
+        for (String workerId : partialHolders) {
+            try {
+                partials.add(executor.submit(newTask(TaskType.COLLECT, new Object[0], jobId, workerId))
+                        .thenApply(result -> RemoteExecutor.decodeResult(result, classLoader)));
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(
+                        new RemoteExecutionException("Failed to encode collect task for " + workerId, e));
+            }
+        }
+
+        // Ошибка COLLECT (значение вытеснено, worker перезапущен) завершает ошибкой всё задание:
+        // без одного из частичных значений итог был бы неполным
+        return CompletableFuture.allOf(partials.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            R total = null;
+            for (CompletableFuture<Object> partial : partials) {
+                R value = (R) partial.join();
+                total = total == null ? value : reducer.combine(total, value);
+            }
+            return total;
+        });
+    }
+}
@@ -0,0 +1,44 @@
+package ru.nsu.client;
+
+import ru.nsu.model.RemoteFunction;
+import ru.nsu.model.Task;
+import ru.nsu.model.TaskResult;
+import ru.nsu.model.TaskType;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Распределённый map. Результаты чанков записываются на свои места по мере завершения,
+ * итоговый список сохраняет порядок входа.
+ */
+class ParallelMap<T, R> extends ChunkedJob<T, List<R>> {
+    private final Object[] results;
+
+    ParallelMap(RemoteExecutor executor, List<T> input, RemoteFunction<T, R> function, int workers) {
+        super(executor, input, function, workers);
+        this.results = new Object[input.size()];
+    }
+
+    @Override
+    protected Task chunkTask(List<T> chunk) throws IOException {
+        return newTask(TaskType.MAP, new Object[]{chunk}, null, null);
+    }
+
+    @Override
+    protected void acceptChunk(int from, TaskResult result) {
+        List<?> chunk = (List<?>) RemoteExecutor.decodeResult(result, classLoader);
+        for (int i = 0; i < chunk.size(); i++) {
+            results[from + i] = chunk.get(i);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected CompletableFuture<List<R>> complete() {
+        return CompletableFuture.completedFuture(Collections.unmodifiableList((List<R>) Arrays.asList(results)));
+    }
+}
@@ -0,0 +1,30 @@
+package ru.nsu.client;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Объявляет интерфейс удалённо исполняемым.
+ * Вызов метода прокси, созданного через {@link RemoteExecutor#proxy(Class)}, выполняется на worker-е как
+ * одноимённый метод класса {@link #value()} с теми же аргументами. Метод класса может быть статическим или
+ * методом экземпляра, созданного конструктором без параметров.
+ * <p>
+ * Метод интерфейса, возвращающий {@link java.util.concurrent.CompletableFuture}, вызывается асинхронно,
+ * остальные блокируют вызывающий поток до получения результата. Результаты методов, отмеченных
+ * {@link Deterministic}, dispatcher переиспользует для одинаковых вызовов.
+ * <p>
+ * На worker передаётся байткод класса {@link #value()} вместе со всеми пользовательскими классами,
+ * на которые он ссылается.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Remote {
+    /**
+     * Класс, методы которого выполняются на worker-ах.
+     */
+    Class<?> value();
+}
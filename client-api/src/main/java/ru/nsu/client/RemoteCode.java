@@ -0,0 +1,100 @@
+package ru.nsu.client;
+
+import ru.nsu.common.HashUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.SerializedLambda;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Код, отправляемый на worker-ы, и его хэш.
+ * Если класс ссылается на другие пользовательские классы, код - jar-архив со всем замыканием зависимостей,
+ * иначе - байткод самого класса. Замыкание собирается и хэшируется один раз на класс.
+ */
+record RemoteCode(String className, byte[] classBytes, String codeHash) {
+
+    private static final ClassValue<RemoteCode> CACHE = new ClassValue<>() {
+        @Override
+        protected RemoteCode computeValue(Class<?> type) {
+            Map<String, byte[]> classes = ClassDependencies.closure(type);
+            byte[] code = classes.size() == 1 ? classes.values().iterator().next() : bundle(classes);
+            return new RemoteCode(type.getName(), code, HashUtils.sha256Hex(code));
+        }
+    };
+
+    /**
+     * Клиентские классы, которые worker загрузил бы при восстановлении лямбды, объявленной в классе.
+     */
+    private static final ClassValue<Set<String>> LAMBDA_CLIENT_CLASSES = new ClassValue<>() {
+        @Override
+        protected Set<String> computeValue(Class<?> type) {
+            return ClassDependencies.clientClassesForLambdas(type);
+        }
+    };
+
+    /**
+     * @throws UncheckedIOException если байткод класса недоступен через его ClassLoader
+     */
+    static RemoteCode of(Class<?> type) {
+        return CACHE.get(type);
+    }
+
+    /**
+     * Возвращает код, необходимый worker-у для восстановления функции. Для сериализуемой лямбды это код
+     * класса, в котором она объявлена: при десериализации {@link SerializedLambda} вызывается его метод
+     * $deserializeLambda$, а тело лямбды - его синтетический метод. Поиск метода разрешает сигнатуры всех
+     * методов класса, а вызов инициализирует класс на worker-е, где клиентской библиотеки нет.
+     * @throws IllegalArgumentException если функция - несериализуемая лямбда или класс, в котором она объявлена,
+     *                                  использует клиентскую библиотеку в сигнатурах методов или статическом
+     *                                  инициализаторе
+     */
+    static RemoteCode ofFunction(Object function) {
+        Class<?> type = function.getClass();
+        if (!type.isHidden()) {
+            return of(type);
+        }
+        Class<?> capturingClass;
+        try {
+            Method writeReplace = type.getDeclaredMethod("writeReplace");
+            writeReplace.setAccessible(true);
+            SerializedLambda lambda = (SerializedLambda) writeReplace.invoke(function);
+            capturingClass = Class.forName(lambda.getCapturingClass().replace('/', '.'), false,
+                    type.getClassLoader());
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalArgumentException("Function is not a serializable lambda: " + type.getName(), e);
+        }
+        Set<String> clientClasses = LAMBDA_CLIENT_CLASSES.get(capturingClass);
+        if (!clientClasses.isEmpty()) {
+            throw new IllegalArgumentException("Lambda is declared in " + capturingClass.getName()
+                    + ", whose method signatures or static initializer use " + String.join(", ", clientClasses)
+                    + " unavailable on workers; declare the lambda in another class or pass a named function class");
+        }
+        return of(capturingClass);
+    }
+
+    /**
+     * Упаковывает классы в jar. Порядок записей и их время фиксированы, поэтому одинаковый код даёт одинаковый
+     * хэш у всех клиентов, и worker-ы переиспользуют уже загруженный пакет.
+     */
+    private static byte[] bundle(Map<String, byte[]> classes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JarOutputStream jar = new JarOutputStream(out)) {
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                JarEntry jarEntry = new JarEntry(entry.getKey() + ".class");
+                jarEntry.setTime(0);
+                jar.putNextEntry(jarEntry);
+                jar.write(entry.getValue());
+                jar.closeEntry();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to bundle classes", e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,26 @@
+package ru.nsu.client;
+
+import lombok.Getter;
+
+/**
+ * Ошибка удалённого выполнения: отказ dispatcher-а или ошибка внутри задачи на worker-е.
+ */
+@Getter
+public class RemoteExecutionException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * HTTP статус ответа dispatcher-а, 0 - если задача была принята, но завершилась с ошибкой.
+     */
+    private final int statusCode;
+
+    public RemoteExecutionException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public RemoteExecutionException(String message, Throwable cause) {
+        super(message, cause);
+        this.statusCode = 0;
+    }
+}
@@ -0,0 +1,487 @@
+package ru.nsu.client;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import ru.nsu.common.JacksonConfig;
+import ru.nsu.common.PayloadCompressor;
+import ru.nsu.common.TaskFrames;
+import ru.nsu.common.codec.Codecs;
+import ru.nsu.common.metrics.MetricsRegistry;
+import ru.nsu.common.trace.TraceBuffer;
+import ru.nsu.model.RemoteFunction;
+import ru.nsu.model.RemoteReducer;
+import ru.nsu.model.Task;
+import ru.nsu.model.TaskMetadata;
+import ru.nsu.model.TaskResult;
+import ru.nsu.model.TraceEvent;
+import ru.nsu.model.WorkerStatus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Асинхронный клиент кластера.
+ * Каждая задача возвращает CompletableFuture, который завершается при получении результата.
+ * Результаты всех задач забирает один поток через long polling dispatcher-а, поэтому ожидающие вызовы
+ * не занимают отдельных потоков. Число одновременно выполняющихся задач ограничено, лишние задачи ждут
+ * в очереди клиента и отправляются по мере освобождения мест.
+ */
+@Slf4j
+public class RemoteExecutor implements AutoCloseable {
+    private static final String CLIENT_ID_HEADER = "X-Client-Id";
+    private static final int TRACE_BUFFER_SIZE = 4096;
+
+    @Getter
+    private final ClientConfig config;
+    @Getter
+    private final String clientId;
+    @Getter
+    private final MetricsRegistry metrics;
+    private final ObjectMapper objectMapper;
+    private final HttpClient httpClient;
+    private final PayloadCompressor compressor;
+    private final Map<UUID, CompletableFuture<TaskResult>> pending = new ConcurrentHashMap<>();
+    private final Queue<Submission> waiting = new ConcurrentLinkedQueue<>();
+    private final Semaphore permits;
+    /**
+     * Хэши байткода, который, по ответу dispatcher-а, хранится на worker-ах.
+     */
+    private final Set<String> knownCode = ConcurrentHashMap.newKeySet();
+    /**
+     * Трассы отправленных и ещё не завершённых трассируемых задач.
+     */
+    private final Map<UUID, String> traced = new ConcurrentHashMap<>();
+    private final TraceBuffer trace = new TraceBuffer("client", TRACE_BUFFER_SIZE);
+    private final Object pollLock = new Object();
+    private final Thread poller;
+    private volatile boolean running = true;
+
+    public RemoteExecutor(URI dispatcherUrl) {
+        this(ClientConfig.defaults(dispatcherUrl));
+    }
+
+    public RemoteExecutor(ClientConfig config) {
+        this.config = config;
+        this.clientId = UUID.randomUUID().toString();
+        this.metrics = new MetricsRegistry();
+        this.objectMapper = JacksonConfig.createObjectMapper();
+        // HTTP/2 мультиплексирует запросы в одном соединении, с HTTP/1.1 сервером клиент переиспользует пул соединений
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        this.compressor = new PayloadCompressor(metrics);
+        this.permits = new Semaphore(config.getMaxInFlight());
+        this.poller = Thread.ofPlatform().daemon().name("remote-executor-poller-" + clientId).start(this::pollLoop);
+    }
+
+    /**
+     * Отправляет задачу на выполнение.
+     * @return future с результатом выполнения (успешным или с ошибкой задачи)
+     */
+    public CompletableFuture<TaskResult> submit(Task task) {
+        if (!running) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Executor is closed"));
+        }
+
+        Task submitted = traceIfSampled(withTenant(task));
+        CompletableFuture<TaskResult> future = new CompletableFuture<>();
+        if (config.getTaskTimeout() != null) {
+            future.orTimeout(config.getTaskTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        }
+        future.whenComplete((result, error) -> {
+            traced.remove(task.getTaskId());
+            // Место освобождается ровно один раз: тем, кто удалил задачу из pending
+            if (pending.remove(task.getTaskId(), future)) {
+                permits.release();
+                drain();
+            }
+        });
+
+        waiting.add(new Submission(submitted, future));
+        drain();
+        return future;
+    }
+
+    /**
+     * Отправляет задачу и десериализует её результат.
+     * Пользовательские типы результата разрешаются через context ClassLoader вызывающего потока.
+     * @return future с результатом метода; при ошибке задачи завершается {@link RemoteExecutionException}
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> call(Task task) {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        return submit(task).thenApply(result -> (T) decodeResult(result, classLoader));
+    }
+
+    /**
+     * Создаёт прокси {@link Remote}-интерфейса, вызовы которого выполняются на worker-ах через этот клиент.
+     * @throws IllegalArgumentException если тип не является интерфейсом с аннотацией {@link Remote}
+     */
+    public <T> T proxy(Class<T> remoteInterface) {
+        return RemoteProxy.create(this, remoteInterface);
+    }
+
+    /**
+     * Создаёт граф задач, промежуточные результаты которого остаются на worker-ах.
+     */
+    public TaskGraph graph() {
+        return new TaskGraph(this);
+    }
+
+    /**
+     * Выполняет задачи из итератора потоком, не держащим в памяти больше окна задач и результатов.
+     * Задачи отправляются по мере чтения результатов; окно равно {@link ClientConfig#getMaxInFlight()}.
+     */
+    public <R> ResultStream<R> stream(Iterator<Task> tasks, ResultStream.Order order) {
+        return stream(tasks, order, config.getMaxInFlight());
+    }
+
+    /**
+     * Выполняет задачи из итератора потоком, не держащим в памяти больше window задач и результатов.
+     * Пользовательские типы результатов разрешаются через context ClassLoader вызывающего потока.
+     * @param window максимальное число отправленных, но ещё не прочитанных задач
+     */
+    public <R> ResultStream<R> stream(Iterator<Task> tasks, ResultStream.Order order, int window) {
+        return new ResultStream<>(this, tasks, order, window);
+    }
+
+    /**
+     * Применяет функцию к каждому элементу коллекции на worker-ах кластера.
+     * Коллекция делится на чанки, размер которых подбирается по измеренной стоимости элемента и числу worker-ов.
+     * Функция может быть именованным классом или лямбдой.
+     * @return future со списком результатов в порядке элементов коллекции
+     */
+    public <T, R> CompletableFuture<List<R>> parallelMap(Collection<T> input, RemoteFunction<T, R> function) {
+        int workers;
+        try {
+            workers = countAliveWorkers();
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new RemoteExecutionException("Failed to query workers", e));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+        return new ParallelMap<>(this, new ArrayList<>(input), function, workers).start();
+    }
+
+    /**
+     * Применяет map к каждому элементу коллекции и сворачивает результаты на worker-ах кластера.
+     * Каждый worker возвращает одно частичное значение, окончательная свёртка выполняется на клиенте.
+     * @return future с результатом свёртки, null для пустой коллекции
+     */
+    public <T, R> CompletableFuture<R> mapReduce(Collection<T> input, RemoteReducer<T, R> reducer) {
+        int workers;
+        try {
+            workers = countAliveWorkers();
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new RemoteExecutionException("Failed to query workers", e));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+        return new MapReduce<>(this, new ArrayList<>(input), reducer, workers).start();
+    }
+
+    /**
+     * Запрашивает у dispatcher-а число доступных worker-ов.
+     */
+    public int countAliveWorkers() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(config.getDispatcherUrl().resolve("/api/workers"))
+                .GET()
+                .timeout(config.getRequestTimeout())
+                .build();
+        HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IOException("Dispatcher returned status " + response.statusCode());
+        }
+
+        int alive = 0;
+        for (JsonNode worker : objectMapper.readTree(response.body())) {
+            if (WorkerStatus.ALIVE.name().equals(worker.path("status").asText())) {
+                alive++;
+            }
+        }
+        return alive;
+    }
+
+    /**
+     * Возвращает хронологию трассируемой задачи: события клиента, dispatcher-а и worker-а в порядке времени.
+     * Трассируется доля задач {@link ClientConfig#getTraceSampleRate()}; для остальных список пуст.
+     * Узлы хранят события последних задач, поэтому хронологию стоит запрашивать вскоре после выполнения.
+     */
+    public List<TraceEvent> trace(UUID taskId) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(config.getDispatcherUrl().resolve("/api/traces?taskId=" + taskId))
+                .GET()
+                .timeout(config.getRequestTimeout())
+                .build();
+        HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IOException("Dispatcher returned status " + response.statusCode());
+        }
+
+        List<TraceEvent> events = new ArrayList<>(objectMapper.readValue(response.body(),
+                new TypeReference<List<TraceEvent>>() {
+                }));
+        events.addAll(trace.forTask(taskId));
+        events.sort(Comparator.comparingLong(TraceEvent::getTimestampMicros));
+        return events;
+    }
+
+    /**
+     * Решает, трассировать ли задачу или граф задач.
+     */
+    boolean sampleTrace() {
+        return TraceBuffer.sample(config.getTraceSampleRate());
+    }
+
+    /**
+     * Количество задач, отправленных и ещё не завершённых.
+     */
+    public int getInFlight() {
+        return pending.size();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        wakePoller();
+        poller.interrupt();
+
+        RemoteExecutionException closed = new RemoteExecutionException(0, "Executor is closed");
+        Submission submission;
+        while ((submission = waiting.poll()) != null) {
+            submission.future().completeExceptionally(closed);
+        }
+        pending.values().forEach(future -> future.completeExceptionally(closed));
+    }
+
+    static Object decodeResult(TaskResult result, ClassLoader classLoader) {
+        if (!result.isSuccess()) {
+            throw new RemoteExecutionException(0, result.getErrorMessage());
+        }
+        try {
+            return Codecs.forName(result.getCodec()).decode(result.getResult(), classLoader);
+        } catch (IOException | ClassNotFoundException e) {
+            throw new RemoteExecutionException("Failed to decode result of task " + result.getTaskId(), e);
+        }
+    }
+
+    /**
+     * Назначает задаче трассу, если она попала в выборку. Задачи, трасса которых задана заранее (например,
+     * задачи графа), не перевыбираются.
+     */
+    private Task traceIfSampled(Task task) {
+        String traceId = TraceBuffer.traceId(task);
+        if (traceId == null && sampleTrace()) {
+            traceId = task.getTaskId().toString();
+            task = task.withMetadata(metadataOf(task).withTraceId(traceId));
+        }
+        if (traceId != null) {
+            traced.put(task.getTaskId(), traceId);
+        }
+        return task;
+    }
+
+    /**
+     * Проставляет задаче арендатора из настроек клиента, если задача не указывает своего.
+     */
+    private Task withTenant(Task task) {
+        if (config.getTenantId() == null
+                || (task.getMetadata() != null && task.getMetadata().getTenantId() != null)) {
+            return task;
+        }
+        return task.withMetadata(metadataOf(task).withTenantId(config.getTenantId()));
+    }
+
+    private static TaskMetadata metadataOf(Task task) {
+        return task.getMetadata() != null ? task.getMetadata()
+                : new TaskMetadata(null, 0, 0L, null, null, null, 0, false, false, null, null);
+    }
+
+    /**
+     * Отправляет задачи из очереди, пока есть свободные места.
+     */
+    private void drain() {
+        while (!waiting.isEmpty() && permits.tryAcquire()) {
+            Submission next = waiting.poll();
+            if (next == null) {
+                permits.release();
+                break;
+            }
+            CompletableFuture<TaskResult> future = next.future();
+            if (future.isDone()) {
+                permits.release();
+                continue;
+            }
+            pending.put(next.task().getTaskId(), future);
+            if (future.isDone() && pending.remove(next.task().getTaskId(), future)) {
+                // Таймаут сработал до регистрации, whenComplete место не освободил
+                permits.release();
+                continue;
+            }
+            wakePoller();
+            send(next.task(), future);
+        }
+    }
+
+    /**
+     * Отправляет задачу dispatcher-у. Байткод, который по ответу dispatcher-а уже хранится на worker-ах,
+     * не пересылается: в задаче остаётся только его хэш.
+     */
+    private void send(Task task, CompletableFuture<TaskResult> future) {
+        boolean shipsCode = task.getCodeHash() != null && task.getClassBytes() != null;
+        send(task, future, shipsCode && knownCode.contains(task.getCodeHash()));
+    }
+
+    private void send(Task task, CompletableFuture<TaskResult> future, boolean omitCode) {
+        Task payload = omitCode ? task.withBlobs(null, task.getArguments(), task.getBlobSources()) : task;
+        trace.record(task, "client.submitted");
+        try {
+            PayloadCompressor.Body body = compressor.prepare(TaskFrames.encodeTask(objectMapper, payload),
+                    "client->dispatcher", true);
+
+            HttpRequest.Builder builder = HttpRequest.newBuilder()
+                    .uri(config.getDispatcherUrl().resolve("/api/tasks/submit"))
+                    .header("Content-Type", TaskFrames.CONTENT_TYPE)
+                    .header(CLIENT_ID_HEADER, clientId)
+                    .POST(HttpRequest.BodyPublishers.ofByteArrays(body.segments()))
+                    .timeout(config.getRequestTimeout());
+            if (body.encoding() != null) {
+                builder.header("Content-Encoding", body.encoding());
+            }
+
+            httpClient.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofString())
+                    .whenComplete((response, error) -> {
+                        if (error != null) {
+                            future.completeExceptionally(
+                                    new RemoteExecutionException("Failed to submit task " + task.getTaskId(), error));
+                        } else if (response.statusCode() == 200) {
+                            trace.record(task, "client.accepted");
+                            if (task.getCodeHash() != null && task.getClassBytes() != null
+                                    && isCodeStored(response.body())) {
+                                knownCode.add(task.getCodeHash());
+                            }
+                        } else if (response.statusCode() == 409 && omitCode) {
+                            // Worker-ы, хранившие код, отключились: повторяем с байткодом
+                            knownCode.remove(task.getCodeHash());
+                            send(task, future, false);
+                        } else {
+                            future.completeExceptionally(
+                                    new RemoteExecutionException(response.statusCode(), response.body()));
+                        }
+                    });
+        } catch (IOException e) {
+            future.completeExceptionally(new RemoteExecutionException("Failed to encode task " + task.getTaskId(), e));
+        }
+    }
+
+    /**
+     * Проверяет, подтвердил ли dispatcher, что код задачи хранится на worker-ах. Задачу, ответ на которую взят
+     * из кэша или которая ждёт в очереди, worker ещё не получал.
+     */
+    private boolean isCodeStored(String responseBody) {
+        try {
+            return objectMapper.readTree(responseBody).path("codeStored").asBoolean(false);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void pollLoop() {
+        while (running) {
+            try {
+                awaitPending();
+                if (!running) {
+                    return;
+                }
+                for (TaskResult result : fetchResults()) {
+                    CompletableFuture<TaskResult> future = pending.get(result.getTaskId());
+                    if (future != null) {
+                        trace.record(traced.get(result.getTaskId()), result.getTaskId(), "client.resultReceived", null);
+                        // Колбэки пользователя не должны задерживать получение следующих результатов
+                        future.completeAsync(() -> result);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.warn("Failed to poll task results: {}", e.getMessage());
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private List<TaskResult> fetchResults() throws IOException, InterruptedException {
+        URI uri = config.getDispatcherUrl().resolve("/api/tasks/results?clientId="
+                + URLEncoder.encode(clientId, StandardCharsets.UTF_8)
+                + "&max=" + config.getPollBatchSize()
+                + "&waitMs=" + config.getPollWait().toMillis());
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(uri)
+                .header("Accept-Encoding", PayloadCompressor.ENCODING)
+                .GET()
+                .timeout(config.getRequestTimeout().plus(config.getPollWait()))
+                .build();
+
+        HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 200) {
+                throw new IOException("Dispatcher returned status " + response.statusCode());
+            }
+            InputStream decoded = compressor.decode(body,
+                    response.headers().firstValue("Content-Encoding").orElse(null), "dispatcher->client");
+            return TaskFrames.decodeResults(objectMapper, decoded);
+        }
+    }
+
+    private void awaitPending() throws InterruptedException {
+        synchronized (pollLock) {
+            while (running && pending.isEmpty()) {
+                pollLock.wait();
+            }
+        }
+    }
+
+    private void wakePoller() {
+        synchronized (pollLock) {
+            pollLock.notifyAll();
+        }
+    }
+
+    private record Submission(Task task, CompletableFuture<TaskResult> future) {
+    }
+}
@@ -0,0 +1,94 @@
+package ru.nsu.client;
+
+import ru.nsu.common.codec.Codec;
+import ru.nsu.common.codec.Codecs;
+import ru.nsu.model.BroadcastRef;
+import ru.nsu.model.Task;
+import ru.nsu.model.TaskMetadata;
+import ru.nsu.model.TaskType;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Обработчик вызовов {@link Remote}-интерфейса: превращает вызов метода в задачу и отправляет её через
+ * {@link RemoteExecutor}.
+ */
+class RemoteProxy implements InvocationHandler {
+    private final RemoteExecutor executor;
+    private final Class<?> remoteInterface;
+    private final Class<?> implementation;
+
+    private RemoteProxy(RemoteExecutor executor, Class<?> remoteInterface, Class<?> implementation) {
+        this.executor = executor;
+        this.remoteInterface = remoteInterface;
+        this.implementation = implementation;
+    }
+
+    static <T> T create(RemoteExecutor executor, Class<T> remoteInterface) {
+        if (!remoteInterface.isInterface()) {
+            throw new IllegalArgumentException(remoteInterface.getName() + " is not an interface");
+        }
+        Remote remote = remoteInterface.getAnnotation(Remote.class);
+        if (remote == null) {
+            throw new IllegalArgumentException(remoteInterface.getName() + " is not annotated with @Remote");
+        }
+        // Байткод читается и хэшируется сразу, чтобы ошибка проявилась при создании прокси, а не при вызове
+        RemoteCode.of(remote.value());
+
+        Object proxy = Proxy.newProxyInstance(remoteInterface.getClassLoader(), new Class<?>[]{remoteInterface},
+                new RemoteProxy(executor, remoteInterface, remote.value()));
+        return remoteInterface.cast(proxy);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return switch (method.getName()) {
+                case "equals" -> proxy == args[0];
+                case "hashCode" -> System.identityHashCode(proxy);
+                default -> "RemoteProxy[" + remoteInterface.getName() + " -> " + implementation.getName() + "]";
+            };
+        }
+        if (method.isDefault()) {
+            return InvocationHandler.invokeDefault(proxy, method, args);
+        }
+
+        CompletableFuture<Object> future = executor.call(toTask(method, args == null ? new Object[0] : args));
+        if (method.getReturnType() == CompletableFuture.class) {
+            return future;
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause();
+        }
+    }
+
+    private Task toTask(Method method, Object[] args) throws IOException {
+        RemoteCode code = RemoteCode.of(implementation);
+        Codec codec = Codecs.forName(executor.getConfig().getCodec());
+
+        List<String> broadcastIds = null;
+        for (Object arg : args) {
+            if (arg instanceof BroadcastRef ref) {
+                if (broadcastIds == null) {
+                    broadcastIds = new ArrayList<>();
+                }
+                broadcastIds.add(ref.getBroadcastId());
+            }
+        }
+
+        return new Task(UUID.randomUUID(), TaskType.CALL, code.className(), method.getName(), code.classBytes(),
+                codec.encode(args), null, code.codeHash(), broadcastIds, null, null,
+                new TaskMetadata(null, 0, 0L, codec.getName(), null, null, 0, false,
+                        method.isAnnotationPresent(Deterministic.class), null, null));
+    }
+}
@@ -0,0 +1,168 @@
+package ru.nsu.client;
+
+import ru.nsu.model.Task;
+import ru.nsu.model.TaskResult;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Потоковое выполнение большого числа задач с ограниченной памятью клиента.
+ * <p>
+ * Задачи берутся из итератора лениво: отправленных, но ещё не прочитанных потребителем задач не больше окна.
+ * Если потребитель не успевает читать результаты, отправка новых задач приостанавливается, поэтому ни очередь
+ * результатов на клиенте, ни почтовый ящик клиента на dispatcher-е не растут с размером задания.
+ * <p>
+ * В режиме {@link Order#INPUT} результаты выдаются в порядке задач: готовые результаты, опередившие ещё не
+ * завершённую задачу, ждут в буфере, размер которого тоже ограничен окном.
+ *
+ * @param <R> тип результата задачи
+ */
+public class ResultStream<R> implements Iterator<R>, AutoCloseable {
+    private final RemoteExecutor executor;
+    private final Iterator<Task> tasks;
+    private final Order order;
+    private final int window;
+    private final ClassLoader classLoader;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition resultReady = lock.newCondition();
+    private final Map<Long, CompletableFuture<TaskResult>> inFlight = new HashMap<>();
+    private final Queue<Outcome> completed = new ArrayDeque<>();
+    private final Map<Long, Outcome> reorderBuffer = new HashMap<>();
+    private long submitted;
+    private long consumed;
+    private boolean closed;
+
+    ResultStream(RemoteExecutor executor, Iterator<Task> tasks, Order order, int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Window must be positive: " + window);
+        }
+        this.executor = executor;
+        this.tasks = tasks;
+        this.order = order;
+        this.window = window;
+        this.classLoader = Thread.currentThread().getContextClassLoader();
+    }
+
+    @Override
+    public boolean hasNext() {
+        lock.lock();
+        try {
+            fillWindow();
+            return !closed && consumed < submitted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Возвращает следующий результат, ожидая его завершения.
+     * @throws RemoteExecutionException если задача завершилась ошибкой; поток при этом можно читать дальше
+     */
+    @Override
+    public R next() {
+        Outcome outcome;
+        lock.lock();
+        try {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            while ((outcome = poll()) == null) {
+                resultReady.awaitUninterruptibly();
+                if (closed) {
+                    throw new NoSuchElementException("Stream is closed");
+                }
+            }
+            consumed++;
+            // Освободилось место в окне: отправляем следующую задачу до того, как потребитель займётся результатом
+            fillWindow();
+        } finally {
+            lock.unlock();
+        }
+        return decode(outcome);
+    }
+
+    /**
+     * Отменяет ожидание задач, которые ещё не завершились. Задачи, уже переданные worker-ам, выполнятся,
+     * но их результаты будут отброшены.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            inFlight.values().forEach(future -> future.cancel(false));
+            inFlight.clear();
+            completed.clear();
+            reorderBuffer.clear();
+            resultReady.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void fillWindow() {
+        while (!closed && submitted - consumed < window && tasks.hasNext()) {
+            long index = submitted++;
+            CompletableFuture<TaskResult> future = executor.submit(tasks.next());
+            inFlight.put(index, future);
+            future.whenComplete((result, error) -> onComplete(new Outcome(index, result, error)));
+        }
+    }
+
+    private void onComplete(Outcome outcome) {
+        lock.lock();
+        try {
+            if (inFlight.remove(outcome.index()) == null) {
+                return;
+            }
+            if (order == Order.COMPLETION) {
+                completed.add(outcome);
+            } else {
+                reorderBuffer.put(outcome.index(), outcome);
+            }
+            resultReady.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Outcome poll() {
+        return order == Order.COMPLETION ? completed.poll() : reorderBuffer.remove(consumed);
+    }
+
+    @SuppressWarnings("unchecked")
+    private R decode(Outcome outcome) {
+        if (outcome.error() != null) {
+            throw outcome.error() instanceof RemoteExecutionException e ? e
+                    : new RemoteExecutionException("Task #" + outcome.index() + " failed", outcome.error());
+        }
+        return (R) RemoteExecutor.decodeResult(outcome.result(), classLoader);
+    }
+
+    /**
+     * Порядок выдачи результатов.
+     */
+    public enum Order {
+        /**
+         * В порядке завершения задач.
+         */
+        COMPLETION,
+
+        /**
+         * В порядке задач во входном итераторе.
+         */
+        INPUT
+    }
+
+    private record Outcome(long index, TaskResult result, Throwable error) {
+    }
+}
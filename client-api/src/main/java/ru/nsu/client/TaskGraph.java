@@ -0,0 +1,185 @@
+package ru.nsu.client;
+
+import ru.nsu.common.codec.Codec;
+import ru.nsu.common.codec.Codecs;
+import ru.nsu.model.BroadcastRef;
+import ru.nsu.model.Task;
+import ru.nsu.model.TaskMetadata;
+import ru.nsu.model.TaskRef;
+import ru.nsu.model.TaskResult;
+import ru.nsu.model.TaskType;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Граф задач, в котором результат одной задачи передаётся в аргументы другой по ссылке {@link TaskRef}.
+ * <p>
+ * Промежуточные результаты не возвращаются клиенту. Worker держит их в памяти, а dispatcher отправляет зависимую
+ * задачу на worker, выполнивший её зависимости, и она получает результат без сериализации. Если зависимости
+ * выполнялись на разных worker-ах, недостающие результаты передаются между worker-ами напрямую. Клиент получает
+ * только результаты, отмеченные {@link #output(TaskRef)}.
+ * <pre>{@code
+ * TaskGraph graph = executor.graph();
+ * TaskRef text = graph.add(Loader.class, "load", "corpus-1");
+ * TaskRef words = graph.add(Tokenizer.class, "split", text);
+ * CompletableFuture<Map<String, Integer>> counts = graph.output(graph.add(Counter.class, "count", words));
+ * graph.submit();
+ * }</pre>
+ * Задачи графа - вызовы методов, как у {@link Remote}-интерфейсов: статических или экземпляра, созданного
+ * конструктором без параметров.
+ */
+public class TaskGraph {
+    private final RemoteExecutor executor;
+    private final Codec codec;
+    private final Map<UUID, Node> nodes = new LinkedHashMap<>();
+    private boolean submitted;
+
+    TaskGraph(RemoteExecutor executor) {
+        this.executor = executor;
+        this.codec = Codecs.forName(executor.getConfig().getCodec());
+    }
+
+    /**
+     * Добавляет в граф вызов метода. Аргументы могут содержать ссылки на уже добавленные задачи.
+     * @return ссылка на результат задачи для аргументов следующих задач
+     * @throws IllegalArgumentException если аргумент ссылается на задачу не из этого графа
+     * @throws UncheckedIOException если аргументы не удалось сериализовать
+     */
+    public synchronized TaskRef add(Class<?> type, String methodName, Object... args) {
+        checkNotSubmitted();
+        Set<UUID> dependencies = new LinkedHashSet<>();
+        List<String> broadcastIds = null;
+        for (Object arg : args) {
+            if (arg instanceof TaskRef ref) {
+                if (!nodes.containsKey(ref.getTaskId())) {
+                    throw new IllegalArgumentException("Task " + ref.getTaskId() + " does not belong to this graph");
+                }
+                dependencies.add(ref.getTaskId());
+            } else if (arg instanceof BroadcastRef ref) {
+                if (broadcastIds == null) {
+                    broadcastIds = new ArrayList<>();
+                }
+                broadcastIds.add(ref.getBroadcastId());
+            }
+        }
+
+        byte[] arguments;
+        try {
+            arguments = codec.encode(args);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialize arguments of " + type.getName() + "." + methodName, e);
+        }
+
+        UUID taskId = UUID.randomUUID();
+        nodes.put(taskId, new Node(RemoteCode.of(type), methodName, arguments, broadcastIds,
+                new ArrayList<>(dependencies)));
+        return new TaskRef(taskId);
+    }
+
+    /**
+     * Отмечает задачу как выходную: её результат будет передан клиенту.
+     * Пользовательские типы результата разрешаются через context ClassLoader вызывающего потока.
+     * @return future с результатом метода; при ошибке задачи или её зависимости завершается
+     * {@link RemoteExecutionException}
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> CompletableFuture<T> output(TaskRef ref) {
+        checkNotSubmitted();
+        Node node = nodes.get(ref.getTaskId());
+        if (node == null) {
+            throw new IllegalArgumentException("Task " + ref.getTaskId() + " does not belong to this graph");
+        }
+        if (node.output == null) {
+            node.output = new CompletableFuture<>();
+            node.classLoader = Thread.currentThread().getContextClassLoader();
+        }
+        return (CompletableFuture<T>) node.output;
+    }
+
+    /**
+     * Отправляет задачи графа. Задачи отправляются в порядке добавления, поэтому зависимость всегда занимает
+     * место в окне {@link ClientConfig#getMaxInFlight()} раньше зависимой задачи.
+     * @return future, который завершается после выполнения всех задач графа или ошибкой первой неуспешной задачи
+     */
+    public synchronized CompletableFuture<Void> submit() {
+        checkNotSubmitted();
+        submitted = true;
+
+        Map<UUID, Integer> consumers = new HashMap<>();
+        for (Node node : nodes.values()) {
+            node.dependencies.forEach(dependency -> consumers.merge(dependency, 1, Integer::sum));
+        }
+
+        // Задачи графа трассируются вместе, одной трассой
+        String traceId = executor.sampleTrace() ? UUID.randomUUID().toString() : null;
+        List<CompletableFuture<?>> completions = new ArrayList<>(nodes.size());
+        for (Map.Entry<UUID, Node> entry : nodes.entrySet()) {
+            Node node = entry.getValue();
+            Task task = new Task(entry.getKey(), TaskType.CALL, node.code.className(), node.methodName,
+                    node.code.classBytes(), node.arguments, null, node.code.codeHash(), node.broadcastIds,
+                    node.dependencies.isEmpty() ? null : node.dependencies, null,
+                    new TaskMetadata(null, 0, 0L, codec.getName(), null, null,
+                            consumers.getOrDefault(entry.getKey(), 0), node.output == null, false, traceId, null));
+
+            CompletableFuture<Object> completion = executor.submit(task).thenApply(result -> node.output != null
+                    ? RemoteExecutor.decodeResult(result, node.classLoader)
+                    : checkSuccess(result));
+            if (node.output != null) {
+                completion.whenComplete((value, error) -> {
+                    if (error instanceof CompletionException && error.getCause() != null) {
+                        node.output.completeExceptionally(error.getCause());
+                    } else if (error != null) {
+                        node.output.completeExceptionally(error);
+                    } else {
+                        node.output.complete(value);
+                    }
+                });
+            }
+            completions.add(completion);
+        }
+        return CompletableFuture.allOf(completions.toArray(CompletableFuture[]::new));
+    }
+
+    private static Object checkSuccess(TaskResult result) {
+        if (!result.isSuccess()) {
+            throw new RemoteExecutionException(0, result.getErrorMessage());
+        }
+        return null;
+    }
+
+    private void checkNotSubmitted() {
+        if (submitted) {
+            throw new IllegalStateException("Graph is already submitted");
+        }
+    }
+
+    private static final class Node {
+        private final RemoteCode code;
+        private final String methodName;
+        private final byte[] arguments;
+        private final List<String> broadcastIds;
+        private final List<UUID> dependencies;
+        private CompletableFuture<Object> output;
+        private ClassLoader classLoader;
+
+        private Node(RemoteCode code, String methodName, byte[] arguments, List<String> broadcastIds,
+                     List<UUID> dependencies) {
+            this.code = code;
+            this.methodName = methodName;
+            this.arguments = arguments;
+            this.broadcastIds = broadcastIds;
+            this.dependencies = dependencies;
+        }
+    }
+}
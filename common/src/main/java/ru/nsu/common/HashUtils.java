@@ -0,0 +1,32 @@
+package ru.nsu.common;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Вычисление content-address хэшей для кода и данных.
+ */
+public class HashUtils {
+
+    private HashUtils() {
+    }
+
+    /**
+     * Возвращает SHA-256 от переданных байт в виде hex-строки.
+     */
+    public static String sha256Hex(byte[] data) {
+        return HexFormat.of().formatHex(sha256().digest(data));
+    }
+
+    /**
+     * Создаёт новый экземпляр SHA-256 для потокового хэширования.
+     */
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by this JVM", e);
+        }
+    }
+}
@@ -1,15 +1,38 @@
 package ru.nsu.common;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
 import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
 
+import java.io.IOException;
+import java.time.Instant;
+
 public class JacksonConfig {
 
     public static ObjectMapper createObjectMapper() {
         ObjectMapper mapper = new ObjectMapper();
         mapper.registerModule(new ParameterNamesModule());
+        mapper.registerModule(instantModule());
         return mapper;
     }
 
-}
+    /**
+     * Instant в формате ISO-8601 (время heartbeat-ов и создания задач).
+     */
+    private static SimpleModule instantModule() {
+        SimpleModule module = new SimpleModule("InstantModule");
+        module.addSerializer(Instant.class, ToStringSerializer.instance);
+        module.addDeserializer(Instant.class, new StdScalarDeserializer<>(Instant.class) {
+            @Override
+            public Instant deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+                return Instant.parse(parser.getValueAsString());
+            }
+        });
+        return module;
+    }
 
+}
@@ -0,0 +1,268 @@
+package ru.nsu.common;
+
+import ru.nsu.common.metrics.Counter;
+import ru.nsu.common.metrics.MetricsRegistry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Адаптивное сжатие тел HTTP-запросов с задачами и результатами (Content-Encoding: deflate).
+ * Маленькие тела не сжимаются. Для остальных по нескольким выборкам оценивается степень сжатия:
+ * несжимаемые данные (уже сжатые, случайные) передаются как есть. Уровень сжатия выбирается по размеру:
+ * чем больше тело, тем быстрее уровень.
+ * Настройки: -Dpayload.compression=adaptive|off, -Dpayload.compression.minBytes, -Dpayload.compression.level,
+ * -Dpayload.maxInflatedBytes (предел размера распакованного тела, по умолчанию 1/8 heap).
+ * Для каждого канала (link) учитываются исходный и переданный объём и процессорное время на сжатие.
+ */
+public class PayloadCompressor {
+    public static final String ENCODING = "deflate";
+
+    private static final int SAMPLE_SIZE = 4096;
+    private static final int SAMPLE_COUNT = 4;
+    private static final double MAX_SAMPLE_RATIO = 0.9;
+    /**
+     * Наибольший размер массива байт в JVM.
+     */
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private final boolean enabled;
+    private final int minBytes;
+    private final int fixedLevel;
+    private final long maxInflatedBytes;
+    private final MetricsRegistry metrics;
+    private final Map<String, LinkStats> links = new ConcurrentHashMap<>();
+    private final Map<String, Counter> decompressNanos = new ConcurrentHashMap<>();
+
+    public PayloadCompressor(MetricsRegistry metrics) {
+        this(!"off".equals(System.getProperty("payload.compression", "adaptive")),
+                Integer.getInteger("payload.compression.minBytes", 4096),
+                Integer.getInteger("payload.compression.level", -1),
+                // Распаковка с ростом буфера и итоговым копированием занимает до трёх размеров тела
+                Long.getLong("payload.maxInflatedBytes", Runtime.getRuntime().maxMemory() / 8),
+                metrics);
+    }
+
+    public PayloadCompressor(boolean enabled, int minBytes, int fixedLevel, long maxInflatedBytes,
+                             MetricsRegistry metrics) {
+        this.enabled = enabled;
+        this.minBytes = minBytes;
+        this.fixedLevel = fixedLevel;
+        this.maxInflatedBytes = Math.min(maxInflatedBytes, MAX_ARRAY_SIZE);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Тело запроса: сегменты для отправки и Content-Encoding (null, если тело не сжато).
+     */
+    public record Body(List<byte[]> segments, String encoding) {
+    }
+
+    /**
+     * Готовит тело к отправке по каналу link, сжимая его, если получатель поддерживает deflate и это выгодно.
+     */
+    public Body prepare(List<byte[]> segments, String link, boolean peerAcceptsDeflate) {
+        long size = 0;
+        for (byte[] segment : segments) {
+            size += segment.length;
+        }
+        LinkStats stats = stats(link);
+        stats.rawBytes.add(size);
+
+        String skipReason = null;
+        if (!enabled || !peerAcceptsDeflate) {
+            skipReason = "disabled";
+        } else if (size < minBytes) {
+            skipReason = "small";
+        } else if (size > MAX_ARRAY_SIZE) {
+            skipReason = "large";
+        } else if (sampleRatio(segments) > MAX_SAMPLE_RATIO) {
+            skipReason = "incompressible";
+        }
+        if (skipReason != null) {
+            metrics.counter("payload_compression_skipped_total", "Payloads sent uncompressed",
+                    "link", link, "reason", skipReason).inc();
+            stats.wireBytes.add(size);
+            return new Body(segments, null);
+        }
+
+        long start = System.nanoTime();
+        byte[] compressed = deflate(segments, (int) size, levelFor(size));
+        stats.compressNanos.add(System.nanoTime() - start);
+        stats.wireBytes.add(compressed.length);
+        return new Body(List.of(compressed), ENCODING);
+    }
+
+    /**
+     * Возвращает поток с распакованным телом запроса в соответствии с его Content-Encoding.
+     * @throws PayloadTooLargeException если распакованное тело больше -Dpayload.maxInflatedBytes
+     * @throws IOException если кодировка не поддерживается или данные повреждены
+     */
+    public InputStream decode(InputStream body, String contentEncoding, String link) throws IOException {
+        return decode(body, contentEncoding, link, maxInflatedBytes);
+    }
+
+    /**
+     * Как {@link #decode(InputStream, String, String)}, но с собственным пределом размера распакованного тела,
+     * например бюджетом памяти worker-а: распаковка не должна выделить больше, чем получатель сможет принять.
+     */
+    public InputStream decode(InputStream body, String contentEncoding, String link, long maxBytes)
+            throws IOException {
+        if (contentEncoding == null || contentEncoding.isEmpty() || "identity".equals(contentEncoding)) {
+            return body;
+        }
+        if (!ENCODING.equals(contentEncoding)) {
+            throw new IOException("Unsupported Content-Encoding: " + contentEncoding);
+        }
+
+        byte[] compressed = body.readAllBytes();
+        long start = System.nanoTime();
+        byte[] data = inflate(compressed, Math.min(maxBytes, maxInflatedBytes));
+        decompressNanos.computeIfAbsent(link, l -> metrics.counter("payload_decompression_cpu_nanoseconds_total",
+                "Time spent decompressing payloads", "link", l)).add(System.nanoTime() - start);
+        return new ByteArrayInputStream(data);
+    }
+
+    private LinkStats stats(String link) {
+        return links.computeIfAbsent(link, l -> new LinkStats(metrics, l));
+    }
+
+    private int levelFor(long size) {
+        if (fixedLevel >= 0) {
+            return fixedLevel;
+        }
+        if (size <= 64 * 1024) {
+            return Deflater.DEFAULT_COMPRESSION;
+        }
+        if (size <= 1024 * 1024) {
+            return 3;
+        }
+        return Deflater.BEST_SPEED;
+    }
+
+    /**
+     * Оценивает степень сжатия по нескольким выборкам из самого большого сегмента.
+     */
+    private static double sampleRatio(List<byte[]> segments) {
+        byte[] largest = segments.get(0);
+        for (byte[] segment : segments) {
+            if (segment.length > largest.length) {
+                largest = segment;
+            }
+        }
+        if (largest.length <= SAMPLE_SIZE * SAMPLE_COUNT) {
+            return ratio(largest, 0, largest.length);
+        }
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            long compressed = 0;
+            long step = (largest.length - SAMPLE_SIZE) / (SAMPLE_COUNT - 1);
+            byte[] buffer = new byte[SAMPLE_SIZE + 64];
+            for (int i = 0; i < SAMPLE_COUNT; i++) {
+                deflater.reset();
+                deflater.setInput(largest, (int) (i * step), SAMPLE_SIZE);
+                deflater.finish();
+                while (!deflater.finished()) {
+                    compressed += deflater.deflate(buffer);
+                }
+            }
+            return (double) compressed / (SAMPLE_SIZE * SAMPLE_COUNT);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static double ratio(byte[] data, int offset, int length) {
+        if (length == 0) {
+            return 1.0;
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data, offset, length);
+            deflater.finish();
+            byte[] buffer = new byte[length + 64];
+            long compressed = 0;
+            while (!deflater.finished()) {
+                compressed += deflater.deflate(buffer);
+            }
+            return (double) compressed / length;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] deflate(List<byte[]> segments, int size, int level) {
+        Deflater deflater = new Deflater(level);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, size / 2));
+            byte[] buffer = new byte[64 * 1024];
+            for (byte[] segment : segments) {
+                deflater.setInput(segment);
+                while (!deflater.needsInput()) {
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed, long maxBytes) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(
+                    (int) Math.min(Math.max(64, compressed.length * 3L), maxBytes));
+            byte[] buffer = new byte[64 * 1024];
+            long size = 0;
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated deflate payload");
+                }
+                size += n;
+                if (size > maxBytes) {
+                    throw new PayloadTooLargeException("Inflated payload exceeds " + maxBytes + " bytes");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid deflate payload", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Счётчики одного канала, регистрируются при первой передаче по нему.
+     */
+    private static final class LinkStats {
+        private final Counter rawBytes;
+        private final Counter wireBytes;
+        private final Counter compressNanos;
+
+        private LinkStats(MetricsRegistry metrics, String link) {
+            this.rawBytes = metrics.counter("payload_raw_bytes_total",
+                    "Payload bytes before compression", "link", link);
+            this.wireBytes = metrics.counter("payload_wire_bytes_total",
+                    "Payload bytes sent on the wire", "link", link);
+            this.compressNanos = metrics.counter("payload_compression_cpu_nanoseconds_total",
+                    "Time spent compressing payloads", "link", link);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package ru.nsu.common;
+
+import java.io.IOException;
+
+/**
+ * Тело запроса больше, чем получатель готов распаковать. HTTP-обработчики отвечают на него статусом 413.
+ */
+public class PayloadTooLargeException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public PayloadTooLargeException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,124 @@
+package ru.nsu.common;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ru.nsu.model.Task;
+import ru.nsu.model.TaskResult;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Бинарный формат передачи задач и результатов по HTTP.
+ * В JSON массивы байт кодируются в base64, поэтому байткод, аргументы и результат передаются
+ * отдельными сырыми секциями после JSON-заголовка: [длина][JSON][длина][байты]..., длина -1 означает null.
+ */
+public class TaskFrames {
+    public static final String CONTENT_TYPE = "application/x-task-frame";
+
+    private TaskFrames() {
+    }
+
+    public static boolean isFrame(String contentType) {
+        return contentType != null && contentType.startsWith(CONTENT_TYPE);
+    }
+
+    /**
+     * Кодирует задачу в список сегментов, пригодный для HttpRequest.BodyPublishers.ofByteArrays без склейки.
+     */
+    public static List<byte[]> encodeTask(ObjectMapper mapper, Task task) throws IOException {
+        byte[] header = mapper.writeValueAsBytes(task.withBlobs(null, null, task.getBlobSources()));
+        return encode(header, task.getClassBytes(), task.getArguments());
+    }
+
+    public static Task decodeTask(ObjectMapper mapper, InputStream body) throws IOException {
+        DataInputStream in = new DataInputStream(body);
+        Task header = mapper.readValue(readHeader(in), Task.class);
+        byte[] classBytes = readSection(in);
+        byte[] arguments = readSection(in);
+        return header.withBlobs(classBytes, arguments, header.getBlobSources());
+    }
+
+    public static List<byte[]> encodeResult(ObjectMapper mapper, TaskResult result) throws IOException {
+        byte[] header = mapper.writeValueAsBytes(result.withResult(null));
+        return encode(header, result.getResult());
+    }
+
+    public static TaskResult decodeResult(ObjectMapper mapper, InputStream body) throws IOException {
+        DataInputStream in = new DataInputStream(body);
+        TaskResult header = mapper.readValue(readHeader(in), TaskResult.class);
+        return header.withResult(readSection(in));
+    }
+
+    /**
+     * Кодирует пачку результатов: [количество][результат 1][результат 2]...
+     */
+    public static List<byte[]> encodeResults(ObjectMapper mapper, List<TaskResult> results) throws IOException {
+        List<byte[]> segments = new ArrayList<>();
+        segments.add(length(results.size()));
+        for (TaskResult result : results) {
+            segments.addAll(encodeResult(mapper, result));
+        }
+        return segments;
+    }
+
+    public static List<TaskResult> decodeResults(ObjectMapper mapper, InputStream body) throws IOException {
+        DataInputStream in = new DataInputStream(body);
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid result count: " + count);
+        }
+        List<TaskResult> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            results.add(decodeResult(mapper, in));
+        }
+        return results;
+    }
+
+    private static List<byte[]> encode(byte[] header, byte[]... sections) throws IOException {
+        List<byte[]> segments = new ArrayList<>(sections.length * 2 + 2);
+        segments.add(length(header.length));
+        segments.add(header);
+        for (byte[] section : sections) {
+            segments.add(length(section != null ? section.length : -1));
+            if (section != null) {
+                segments.add(section);
+            }
+        }
+        return segments;
+    }
+
+    private static byte[] length(int length) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(Integer.BYTES);
+        new DataOutputStream(baos).writeInt(length);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Читает JSON-заголовок, который в отличие от остальных секций не может быть null.
+     */
+    private static byte[] readHeader(DataInputStream in) throws IOException {
+        byte[] header = readSection(in);
+        if (header == null) {
+            throw new IOException("Missing frame header");
+        }
+        return header;
+    }
+
+    private static byte[] readSection(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] section = in.readNBytes(length);
+        if (section.length != length) {
+            throw new EOFException("Truncated frame section: expected " + length + " bytes, got " + section.length);
+        }
+        return section;
+    }
+}
@@ -0,0 +1,22 @@
+package ru.nsu.common.codec;
+
+import java.io.IOException;
+
+/**
+ * Формат сериализации аргументов и результатов задач.
+ * Реализации регистрируются в {@link Codecs}, в том числе через {@link java.util.ServiceLoader}.
+ */
+public interface Codec {
+
+    /**
+     * Имя формата, которое указывается в метаданных задачи.
+     */
+    String getName();
+
+    byte[] encode(Object value) throws IOException;
+
+    /**
+     * Восстанавливает объект, разрешая пользовательские классы через указанный ClassLoader.
+     */
+    Object decode(byte[] data, ClassLoader classLoader) throws IOException, ClassNotFoundException;
+}
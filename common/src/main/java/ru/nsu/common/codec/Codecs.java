@@ -0,0 +1,41 @@
+package ru.nsu.common.codec;
+
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Реестр форматов сериализации.
+ * Содержит встроенные форматы и реализации {@link Codec}, найденные через {@link ServiceLoader}.
+ */
+public class Codecs {
+    private static final Map<String, Codec> CODECS = new ConcurrentHashMap<>();
+
+    static {
+        register(new JavaSerializationCodec());
+        register(new CompactCodec());
+        ServiceLoader.load(Codec.class).forEach(Codecs::register);
+    }
+
+    private Codecs() {
+    }
+
+    public static void register(Codec codec) {
+        CODECS.put(codec.getName(), codec);
+    }
+
+    /**
+     * Возвращает формат по имени. Если имя не указано, используется Java Serialization.
+     * @throws IllegalArgumentException если формат неизвестен
+     */
+    public static Codec forName(String name) {
+        if (name == null) {
+            return CODECS.get(JavaSerializationCodec.NAME);
+        }
+        Codec codec = CODECS.get(name);
+        if (codec == null) {
+            throw new IllegalArgumentException("Unknown codec: " + name);
+        }
+        return codec;
+    }
+}
@@ -0,0 +1,534 @@
+package ru.nsu.common.codec;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.RecordComponent;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Компактный бинарный формат для распространённых типов: примитивы и их обёртки, строки, массивы,
+ * списки, множества, словари, enum-ы и record-ы. Остальные объекты кодируются Java Serialization.
+ * Массивы int/long/float/double пишутся как сырые little-endian данные и читаются блочным копированием,
+ * буферы IntBuffer/LongBuffer/FloatBuffer/DoubleBuffer восстанавливаются как direct буферы вне heap.
+ * Пользовательские классы (record-ы, enum-ы, типы элементов массивов) разрешаются через ClassLoader задачи.
+ */
+public class CompactCodec implements Codec {
+    public static final String NAME = "compact";
+
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte BYTE = 3;
+    private static final byte SHORT = 4;
+    private static final byte CHAR = 5;
+    private static final byte INT = 6;
+    private static final byte LONG = 7;
+    private static final byte FLOAT = 8;
+    private static final byte DOUBLE = 9;
+    private static final byte STRING = 10;
+    private static final byte BYTE_ARRAY = 11;
+    private static final byte INT_ARRAY = 12;
+    private static final byte LONG_ARRAY = 13;
+    private static final byte DOUBLE_ARRAY = 14;
+    private static final byte OBJECT_ARRAY = 15;
+    private static final byte LIST = 16;
+    private static final byte SET = 17;
+    private static final byte MAP = 18;
+    private static final byte ENUM = 19;
+    private static final byte RECORD = 20;
+    private static final byte JAVA = 21;
+    private static final byte FLOAT_ARRAY = 22;
+    private static final byte INT_BUFFER = 23;
+    private static final byte LONG_BUFFER = 24;
+    private static final byte FLOAT_BUFFER = 25;
+    private static final byte DOUBLE_BUFFER = 26;
+
+    private static final JavaSerializationCodec FALLBACK = new JavaSerializationCodec();
+
+    /**
+     * Коллекции, которые кодируются как LIST/SET/MAP и восстанавливаются как ArrayList, LinkedHashSet
+     * и LinkedHashMap. Классы неизменяемых List.of/Set.of/Map.of берутся у экземпляров разных размеров.
+     * Остальные (отсортированные, синхронизированные, представления, с особой семантикой вроде
+     * IdentityHashMap или EnumMap) идут через Java Serialization и сохраняют свой тип.
+     */
+    private static final Set<Class<?>> COLLECTIONS = Set.copyOf(List.of(
+            ArrayList.class, HashSet.class, LinkedHashSet.class, HashMap.class, LinkedHashMap.class,
+            List.of().getClass(), List.of(1).getClass(), List.of(1, 2, 3).getClass(),
+            Set.of().getClass(), Set.of(1).getClass(), Set.of(1, 2, 3).getClass(),
+            Map.of().getClass(), Map.of(1, 1).getClass(), Map.of(1, 1, 2, 2).getClass()));
+
+    private static final ClassValue<RecordInfo> RECORDS = new ClassValue<>() {
+        @Override
+        protected RecordInfo computeValue(Class<?> type) {
+            return RecordInfo.of(type);
+        }
+    };
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] encode(Object value) throws IOException {
+        Output out = new Output();
+        write(out, value);
+        return out.toByteArray();
+    }
+
+    @Override
+    public Object decode(byte[] data, ClassLoader classLoader) throws IOException, ClassNotFoundException {
+        Input in = new Input(data, classLoader);
+        try {
+            return read(in);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated compact payload", e);
+        }
+    }
+
+    private void write(Output out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Boolean b) {
+            out.writeByte(b ? TRUE : FALSE);
+        } else if (value instanceof Byte b) {
+            out.writeByte(BYTE);
+            out.writeByte(b);
+        } else if (value instanceof Short s) {
+            out.writeByte(SHORT);
+            out.writeVarLong(zigZag(s));
+        } else if (value instanceof Character c) {
+            out.writeByte(CHAR);
+            out.writeVarLong(c);
+        } else if (value instanceof Integer i) {
+            out.writeByte(INT);
+            out.writeVarLong(zigZag(i));
+        } else if (value instanceof Long l) {
+            out.writeByte(LONG);
+            out.writeVarLong(zigZag(l));
+        } else if (value instanceof Float f) {
+            out.writeByte(FLOAT);
+            out.ensure(Float.BYTES).putFloat(f);
+        } else if (value instanceof Double d) {
+            out.writeByte(DOUBLE);
+            out.ensure(Double.BYTES).putDouble(d);
+        } else if (value instanceof String s) {
+            out.writeByte(STRING);
+            out.writeString(s);
+        } else if (value instanceof byte[] bytes) {
+            out.writeByte(BYTE_ARRAY);
+            out.writeVarLong(bytes.length);
+            out.ensure(bytes.length).put(bytes);
+        } else if (value instanceof int[] ints) {
+            out.writeByte(INT_ARRAY);
+            out.writeVarLong(ints.length);
+            out.ensure(ints.length * Integer.BYTES).asIntBuffer().put(ints);
+            out.skip(ints.length * Integer.BYTES);
+        } else if (value instanceof long[] longs) {
+            out.writeByte(LONG_ARRAY);
+            out.writeVarLong(longs.length);
+            out.ensure(longs.length * Long.BYTES).asLongBuffer().put(longs);
+            out.skip(longs.length * Long.BYTES);
+        } else if (value instanceof float[] floats) {
+            out.writeByte(FLOAT_ARRAY);
+            out.writeVarLong(floats.length);
+            out.ensure(floats.length * Float.BYTES).asFloatBuffer().put(floats);
+            out.skip(floats.length * Float.BYTES);
+        } else if (value instanceof double[] doubles) {
+            out.writeByte(DOUBLE_ARRAY);
+            out.writeVarLong(doubles.length);
+            out.ensure(doubles.length * Double.BYTES).asDoubleBuffer().put(doubles);
+            out.skip(doubles.length * Double.BYTES);
+        } else if (value instanceof IntBuffer ints) {
+            out.writeByte(INT_BUFFER);
+            out.writeVarLong(ints.remaining());
+            out.ensure(ints.remaining() * Integer.BYTES).asIntBuffer().put(ints.duplicate());
+            out.skip(ints.remaining() * Integer.BYTES);
+        } else if (value instanceof LongBuffer longs) {
+            out.writeByte(LONG_BUFFER);
+            out.writeVarLong(longs.remaining());
+            out.ensure(longs.remaining() * Long.BYTES).asLongBuffer().put(longs.duplicate());
+            out.skip(longs.remaining() * Long.BYTES);
+        } else if (value instanceof FloatBuffer floats) {
+            out.writeByte(FLOAT_BUFFER);
+            out.writeVarLong(floats.remaining());
+            out.ensure(floats.remaining() * Float.BYTES).asFloatBuffer().put(floats.duplicate());
+            out.skip(floats.remaining() * Float.BYTES);
+        } else if (value instanceof DoubleBuffer doubles) {
+            out.writeByte(DOUBLE_BUFFER);
+            out.writeVarLong(doubles.remaining());
+            out.ensure(doubles.remaining() * Double.BYTES).asDoubleBuffer().put(doubles.duplicate());
+            out.skip(doubles.remaining() * Double.BYTES);
+        } else if (value instanceof Object[] array) {
+            out.writeByte(OBJECT_ARRAY);
+            out.writeClass(array.getClass().getComponentType());
+            out.writeVarLong(array.length);
+            for (Object element : array) {
+                write(out, element);
+            }
+        } else if (value instanceof Enum<?> e) {
+            out.writeByte(ENUM);
+            out.writeClass(e.getDeclaringClass());
+            out.writeString(e.name());
+        } else if (value instanceof Record record) {
+            out.writeByte(RECORD);
+            out.writeClass(record.getClass());
+            for (Method accessor : RECORDS.get(record.getClass()).accessors()) {
+                write(out, invoke(accessor, record));
+            }
+        } else if (value instanceof List<?> list && COLLECTIONS.contains(list.getClass())) {
+            out.writeByte(LIST);
+            out.writeVarLong(list.size());
+            for (Object element : list) {
+                write(out, element);
+            }
+        } else if (value instanceof Set<?> set && COLLECTIONS.contains(set.getClass())) {
+            out.writeByte(SET);
+            out.writeVarLong(set.size());
+            for (Object element : set) {
+                write(out, element);
+            }
+        } else if (value instanceof Map<?, ?> map && COLLECTIONS.contains(map.getClass())) {
+            out.writeByte(MAP);
+            out.writeVarLong(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                write(out, entry.getKey());
+                write(out, entry.getValue());
+            }
+        } else {
+            byte[] serialized = FALLBACK.encode(value);
+            out.writeByte(JAVA);
+            out.writeVarLong(serialized.length);
+            out.ensure(serialized.length).put(serialized);
+        }
+    }
+
+    private Object read(Input in) throws IOException, ClassNotFoundException {
+        byte tag = in.buffer.get();
+        switch (tag) {
+            case NULL:
+                return null;
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case BYTE:
+                return in.buffer.get();
+            case SHORT:
+                return (short) unZigZag(in.readVarLong());
+            case CHAR:
+                return (char) in.readVarLong();
+            case INT:
+                return (int) unZigZag(in.readVarLong());
+            case LONG:
+                return unZigZag(in.readVarLong());
+            case FLOAT:
+                return in.buffer.getFloat();
+            case DOUBLE:
+                return in.buffer.getDouble();
+            case STRING:
+                return in.readString();
+            case BYTE_ARRAY: {
+                byte[] bytes = new byte[in.readLength()];
+                in.buffer.get(bytes);
+                return bytes;
+            }
+            case INT_ARRAY: {
+                int[] ints = new int[in.readLength(Integer.BYTES)];
+                in.bulk(ints.length * Integer.BYTES).asIntBuffer().get(ints);
+                return ints;
+            }
+            case LONG_ARRAY: {
+                long[] longs = new long[in.readLength(Long.BYTES)];
+                in.bulk(longs.length * Long.BYTES).asLongBuffer().get(longs);
+                return longs;
+            }
+            case FLOAT_ARRAY: {
+                float[] floats = new float[in.readLength(Float.BYTES)];
+                in.bulk(floats.length * Float.BYTES).asFloatBuffer().get(floats);
+                return floats;
+            }
+            case DOUBLE_ARRAY: {
+                double[] doubles = new double[in.readLength(Double.BYTES)];
+                in.bulk(doubles.length * Double.BYTES).asDoubleBuffer().get(doubles);
+                return doubles;
+            }
+            case INT_BUFFER:
+                return in.offHeap(in.readLength(Integer.BYTES) * Integer.BYTES).asIntBuffer();
+            case LONG_BUFFER:
+                return in.offHeap(in.readLength(Long.BYTES) * Long.BYTES).asLongBuffer();
+            case FLOAT_BUFFER:
+                return in.offHeap(in.readLength(Float.BYTES) * Float.BYTES).asFloatBuffer();
+            case DOUBLE_BUFFER:
+                return in.offHeap(in.readLength(Double.BYTES) * Double.BYTES).asDoubleBuffer();
+            case OBJECT_ARRAY: {
+                Class<?> componentType = in.readClass();
+                Object[] array = (Object[]) Array.newInstance(componentType, in.readLength());
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = read(in);
+                }
+                return array;
+            }
+            case ENUM:
+                return readEnum(in.readClass(), in.readString());
+            case RECORD: {
+                RecordInfo info = RECORDS.get(in.readClass());
+                Object[] components = new Object[info.accessors().length];
+                for (int i = 0; i < components.length; i++) {
+                    components[i] = read(in);
+                }
+                return info.newInstance(components);
+            }
+            case LIST: {
+                int size = in.readLength();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(read(in));
+                }
+                return list;
+            }
+            case SET: {
+                int size = in.readLength();
+                Set<Object> set = LinkedHashSet.newLinkedHashSet(size);
+                for (int i = 0; i < size; i++) {
+                    set.add(read(in));
+                }
+                return set;
+            }
+            case MAP: {
+                int size = in.readLength();
+                Map<Object, Object> map = LinkedHashMap.newLinkedHashMap(size);
+                for (int i = 0; i < size; i++) {
+                    map.put(read(in), read(in));
+                }
+                return map;
+            }
+            case JAVA: {
+                byte[] serialized = new byte[in.readLength()];
+                in.buffer.get(serialized);
+                return FALLBACK.decode(serialized, in.classLoader);
+            }
+            default:
+                throw new IOException("Unknown compact codec tag: " + tag);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object readEnum(Class<?> type, String name) {
+        return Enum.valueOf((Class) type, name);
+    }
+
+    private static Object invoke(Method accessor, Object target) throws IOException {
+        try {
+            return accessor.invoke(target);
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Failed to read record component " + accessor.getName(), e);
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Компоненты и канонический конструктор record-а.
+     */
+    private record RecordInfo(Method[] accessors, Constructor<?> constructor) {
+
+        static RecordInfo of(Class<?> type) {
+            RecordComponent[] components = type.getRecordComponents();
+            Method[] accessors = new Method[components.length];
+            Class<?>[] types = new Class<?>[components.length];
+            for (int i = 0; i < components.length; i++) {
+                accessors[i] = components[i].getAccessor();
+                accessors[i].setAccessible(true);
+                types[i] = components[i].getType();
+            }
+            try {
+                Constructor<?> constructor = type.getDeclaredConstructor(types);
+                constructor.setAccessible(true);
+                return new RecordInfo(accessors, constructor);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException("Record " + type.getName() + " has no canonical constructor", e);
+            }
+        }
+
+        Object newInstance(Object[] components) throws IOException {
+            try {
+                return constructor.newInstance(components);
+            } catch (ReflectiveOperationException e) {
+                throw new IOException("Failed to create record " + constructor.getDeclaringClass().getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Растущий little-endian буфер. Классы пишутся по имени один раз, далее по номеру.
+     */
+    private static final class Output {
+        private ByteBuffer buffer = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+        private final Map<Class<?>, Integer> classIds = new HashMap<>();
+
+        ByteBuffer ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                // Для больших блоков (массивов) выделяем ровно нужный объём с небольшим запасом под хвост,
+                // чтобы не удваивать многомегабайтный буфер ради нескольких байт
+                int capacity = Math.max(buffer.capacity() * 2, buffer.position() + bytes + 256);
+                ByteBuffer grown = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+                grown.put(buffer.flip());
+                buffer = grown;
+            }
+            return buffer;
+        }
+
+        /**
+         * Сдвигает позицию после записи в буфер через view (asIntBuffer() и т.п.), не меняющий позицию.
+         */
+        void skip(int bytes) {
+            buffer.position(buffer.position() + bytes);
+        }
+
+        void writeByte(int value) {
+            ensure(1).put((byte) value);
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            ensure(bytes.length).put(bytes);
+        }
+
+        void writeClass(Class<?> type) {
+            Integer id = classIds.get(type);
+            if (id != null) {
+                writeVarLong(id + 1);
+                return;
+            }
+            writeVarLong(0);
+            writeString(type.getName());
+            classIds.put(type, classIds.size());
+        }
+
+        byte[] toByteArray() {
+            if (buffer.position() == buffer.capacity()) {
+                return buffer.array();
+            }
+            return Arrays.copyOf(buffer.array(), buffer.position());
+        }
+    }
+
+    private static final class Input {
+        private final ByteBuffer buffer;
+        private final ClassLoader classLoader;
+        private final List<Class<?>> classes = new ArrayList<>();
+
+        Input(byte[] data, ClassLoader classLoader) {
+            this.buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+            this.classLoader = classLoader;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        /**
+         * Читает число элементов, каждый из которых занимает не меньше байта.
+         */
+        int readLength() throws IOException {
+            return readLength(1);
+        }
+
+        /**
+         * Читает число элементов и проверяет, что они помещаются в оставшиеся данные, до выделения памяти под них.
+         * @param elementBytes наименьший размер одного элемента
+         */
+        int readLength(int elementBytes) throws IOException {
+            long length = readVarLong();
+            if (length < 0 || length > (long) buffer.remaining() / elementBytes) {
+                throw new IOException("Invalid length " + length + " with " + buffer.remaining() + " bytes left");
+            }
+            return (int) length;
+        }
+
+        /**
+         * Возвращает little-endian срез следующих bytes байт и сдвигает позицию за него.
+         */
+        ByteBuffer bulk(int bytes) {
+            if (bytes > buffer.remaining()) {
+                throw new BufferUnderflowException();
+            }
+            ByteBuffer slice = buffer.slice(buffer.position(), bytes).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.position(buffer.position() + bytes);
+            return slice;
+        }
+
+        /**
+         * Копирует следующие bytes байт в direct буфер вне heap одним блочным копированием.
+         */
+        ByteBuffer offHeap(int bytes) {
+            ByteBuffer direct = ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            direct.put(bulk(bytes)).flip();
+            return direct;
+        }
+
+        String readString() throws IOException {
+            int length = readLength();
+            String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                    StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+
+        Class<?> readClass() throws IOException, ClassNotFoundException {
+            long ref = readVarLong();
+            if (ref < 0 || ref > classes.size()) {
+                throw new IOException("Invalid class reference: " + ref);
+            }
+            if (ref > 0) {
+                return classes.get((int) ref - 1);
+            }
+            Class<?> type = Class.forName(readString(), false, classLoader);
+            classes.add(type);
+            return type;
+        }
+    }
+}
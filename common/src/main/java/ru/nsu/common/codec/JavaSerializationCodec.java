@@ -0,0 +1,58 @@
+package ru.nsu.common.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+
+/**
+ * Стандартная Java Serialization. Используется по умолчанию и как запасной вариант для произвольных типов.
+ */
+public class JavaSerializationCodec implements Codec {
+    public static final String NAME = "java";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] encode(Object value) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(value);
+        }
+        return baos.toByteArray();
+    }
+
+    @Override
+    public Object decode(byte[] data, ClassLoader classLoader) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ClassLoaderObjectInputStream(new ByteArrayInputStream(data), classLoader)) {
+            return ois.readObject();
+        }
+    }
+
+    /**
+     * ObjectInputStream, который ищет классы в заданном ClassLoader, а не в загрузчике вызывающего кода.
+     */
+    static class ClassLoaderObjectInputStream extends ObjectInputStream {
+        private final ClassLoader classLoader;
+
+        ClassLoaderObjectInputStream(InputStream in, ClassLoader classLoader) throws IOException {
+            super(in);
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            try {
+                return Class.forName(desc.getName(), false, classLoader);
+            } catch (ClassNotFoundException e) {
+                return super.resolveClass(desc);
+            }
+        }
+    }
+}
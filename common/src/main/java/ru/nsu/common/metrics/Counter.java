@@ -0,0 +1,27 @@
+package ru.nsu.common.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Монотонно растущий счётчик без блокировок.
+ */
+public class Counter implements Metric {
+    private final LongAdder value = new LongAdder();
+
+    public void inc() {
+        value.increment();
+    }
+
+    public void add(long delta) {
+        value.add(delta);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+
+    @Override
+    public void render(StringBuilder out, String name, String labels) {
+        out.append(name).append(labels).append(' ').append(value.sum()).append('\n');
+    }
+}
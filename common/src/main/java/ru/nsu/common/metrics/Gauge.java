@@ -0,0 +1,19 @@
+package ru.nsu.common.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Текущее значение, которое вычисляется при выводе метрик (размер очереди, число активных задач).
+ */
+public class Gauge implements Metric {
+    private final LongSupplier value;
+
+    public Gauge(LongSupplier value) {
+        this.value = value;
+    }
+
+    @Override
+    public void render(StringBuilder out, String name, String labels) {
+        out.append(name).append(labels).append(' ').append(value.getAsLong()).append('\n');
+    }
+}
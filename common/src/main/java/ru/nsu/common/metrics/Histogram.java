@@ -0,0 +1,126 @@
+package ru.nsu.common.metrics;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гистограмма значений с логарифмически-линейными корзинами, как в HdrHistogram: каждая степень двойки
+ * делится на {@value #SUB_BUCKETS} корзин равной ширины, поэтому относительная погрешность границ не больше 12,5%
+ * во всём диапазоне long. Запись - вычисление индекса сдвигами и атомарный инкремент, без блокировок и выделения
+ * памяти.
+ * <p>
+ * Значения записываются в целых базовых единицах (наносекунды, байты) и выводятся умноженными на scale
+ * (например, 1e-9 для секунд). В выводе Prometheus всегда перечисляются одни и те же корзины - от содержащей lowest
+ * до содержащей highest, независимо от записанных значений: набор границ le не меняется между опросами и совпадает
+ * у всех серий метрики, иначе histogram_quantile и агрегация по сериям дают неверный результат. Меньшие значения
+ * попадают в первую выводимую корзину, большие - только в +Inf.
+ */
+public class Histogram implements Metric {
+    /**
+     * Масштаб гистограмм длительностей: записываются наносекунды, выводятся секунды.
+     */
+    public static final double NANOS_TO_SECONDS = 1e-9;
+    /**
+     * Выводимый диапазон гистограмм длительностей: от микросекунды до минуты.
+     */
+    public static final long MIN_DURATION_NANOS = 1_000L;
+    public static final long MAX_DURATION_NANOS = 60_000_000_000L;
+    /**
+     * Выводимый диапазон гистограмм размеров: от 64 байт до 1 ГиБ.
+     */
+    public static final long MIN_SIZE_BYTES = 64L;
+    public static final long MAX_SIZE_BYTES = 1L << 30;
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final BigDecimal scale;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final int firstExported;
+    private final int lastExported;
+
+    /**
+     * @param lowest наименьшее значение, для которого выводится отдельная корзина
+     * @param highest наибольшее значение, для которого выводится отдельная корзина
+     */
+    public Histogram(double scale, long lowest, long highest) {
+        if (lowest < 0 || highest < lowest) {
+            throw new IllegalArgumentException("Invalid histogram range " + lowest + ".." + highest);
+        }
+        this.scale = BigDecimal.valueOf(scale);
+        this.firstExported = index(lowest);
+        this.lastExported = index(highest);
+    }
+
+    /**
+     * Записывает значение; отрицательные значения считаются нулём.
+     */
+    public void record(long value) {
+        long v = Math.max(value, 0);
+        counts.incrementAndGet(index(v));
+        sum.add(v);
+    }
+
+    /**
+     * Записывает время, прошедшее с момента startNanos по {@link System#nanoTime()}.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    @Override
+    public void render(StringBuilder out, String name, String labels) {
+        String prefix = labels.isEmpty() ? "{" : labels.substring(0, labels.length() - 1) + ",";
+        long cumulative = 0;
+        for (int i = 0; i < firstExported; i++) {
+            cumulative += counts.get(i);
+        }
+        for (int i = firstExported; i <= lastExported; i++) {
+            cumulative += counts.get(i);
+            out.append(name).append("_bucket").append(prefix).append("le=\"")
+                    .append(format(upperBound(i))).append("\"} ").append(cumulative).append('\n');
+        }
+        for (int i = lastExported + 1; i < BUCKETS; i++) {
+            cumulative += counts.get(i);
+        }
+        out.append(name).append("_bucket").append(prefix).append("le=\"+Inf\"} ").append(cumulative).append('\n');
+        out.append(name).append("_sum").append(labels).append(' ').append(format(sum.sum())).append('\n');
+        out.append(name).append("_count").append(labels).append(' ').append(cumulative).append('\n');
+    }
+
+    /**
+     * Переводит значение в единицы метрики без погрешностей двоичной арифметики в выводе.
+     */
+    private String format(double value) {
+        return new BigDecimal(value).multiply(scale).stripTrailingZeros().toPlainString();
+    }
+
+    /**
+     * Индекс корзины: значения меньше {@value #SUB_BUCKETS} имеют собственные корзины, остальные - по старшему биту
+     * и следующим за ним {@value #SUB_BUCKET_BITS} битам.
+     */
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Наибольшее значение, попадающее в корзину.
+     */
+    static double upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        // Граница вычисляется в double: у последней корзины она выходит за пределы long
+        return (double) (SUB_BUCKETS + subBucket + 1) * Math.pow(2, exponent - SUB_BUCKET_BITS) - 1;
+    }
+}
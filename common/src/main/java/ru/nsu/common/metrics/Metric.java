@@ -0,0 +1,12 @@
+package ru.nsu.common.metrics;
+
+/**
+ * Метрика, которую можно вывести в текстовом формате Prometheus.
+ */
+public interface Metric {
+
+    /**
+     * Дописывает строки метрики с указанным именем и метками (уже в виде {@code {k="v",...}} или пустой строки).
+     */
+    void render(StringBuilder out, String name, String labels);
+}
@@ -0,0 +1,92 @@
+package ru.nsu.common.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Реестр метрик сервиса, отдаваемых в текстовом формате Prometheus.
+ * Метрики регистрируются один раз и далее обновляются без обращения к реестру.
+ */
+public class MetricsRegistry {
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    /**
+     * Возвращает счётчик с указанным именем и парами меток key, value, создавая его при первом обращении.
+     */
+    public Counter counter(String name, String help, String... labels) {
+        return register(name, help, "counter", labels, Counter::new);
+    }
+
+    /**
+     * Возвращает гистограмму с указанным именем и метками, создавая её при первом обращении.
+     * @param scale множитель, переводящий записываемые значения в единицы метрики (например, 1e-9 для секунд)
+     * @param lowest наименьшее значение с отдельной корзиной в выводе
+     * @param highest наибольшее значение с отдельной корзиной в выводе
+     */
+    public Histogram histogram(String name, String help, double scale, long lowest, long highest, String... labels) {
+        return register(name, help, "histogram", labels, () -> new Histogram(scale, lowest, highest));
+    }
+
+    /**
+     * Регистрирует показатель, значение которого вычисляется при каждом выводе метрик.
+     * Повторная регистрация с теми же метками оставляет первый показатель.
+     */
+    public void gauge(String name, String help, LongSupplier value, String... labels) {
+        register(name, help, "gauge", labels, () -> new Gauge(value));
+    }
+
+    /**
+     * Выводит все метрики в текстовом формате Prometheus.
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder();
+        families.forEach((name, family) -> {
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+            family.series.forEach((labels, metric) -> metric.render(out, name, labels));
+        });
+        return out.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    protected <T extends Metric> T register(String name, String help, String type, String[] labels,
+                                            Supplier<T> factory) {
+        Family family = families.computeIfAbsent(name, n -> new Family(help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as " + family.type);
+        }
+        return (T) family.series.computeIfAbsent(formatLabels(labels), l -> factory.get());
+    }
+
+    private static String formatLabels(String[] labels) {
+        if (labels.length == 0) {
+            return "";
+        }
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be key-value pairs");
+        }
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    private static final class Family {
+        private final String help;
+        private final String type;
+        private final Map<String, Metric> series = new ConcurrentSkipListMap<>();
+
+        private Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package ru.nsu.common.trace;
+
+import ru.nsu.model.Task;
+import ru.nsu.model.TraceEvent;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+
+/**
+ * Кольцевой буфер последних событий трассировки узла.
+ * Запись не блокирует: поток занимает ячейку атомарным счётчиком и перезаписывает самое старое событие.
+ * События пишутся только для задач с traceId, для остальных запись сводится к проверке метаданных.
+ */
+public class TraceBuffer {
+    private final String node;
+    private final AtomicReferenceArray<TraceEvent> slots;
+    private final int mask;
+    private final AtomicLong next = new AtomicLong();
+    /**
+     * Время событий отсчитывается по System.nanoTime от момента создания буфера: это дешевле, чем Instant.now()
+     * на каждое событие, и время внутри узла не идёт назад при коррекции системных часов.
+     */
+    private final long startMicros;
+    private final long startNanos;
+
+    /**
+     * @param node имя узла в событиях
+     * @param capacity число хранимых событий, округляется вверх до степени двойки
+     */
+    public TraceBuffer(String node, int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.node = node;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        Instant now = Instant.now();
+        this.startNanos = System.nanoTime();
+        this.startMicros = now.getEpochSecond() * 1_000_000 + now.getNano() / 1_000;
+    }
+
+    /**
+     * Решает, трассировать ли новую задачу.
+     * @param rate доля трассируемых задач от 0 до 1
+     */
+    public static boolean sample(double rate) {
+        return rate > 0 && (rate >= 1 || ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    /**
+     * Возвращает идентификатор трассы задачи, null - задача не трассируется.
+     */
+    public static String traceId(Task task) {
+        return task.getMetadata() != null ? task.getMetadata().getTraceId() : null;
+    }
+
+    public void record(Task task, String phase) {
+        record(traceId(task), task.getTaskId(), phase, null);
+    }
+
+    public void record(Task task, String phase, String detail) {
+        record(traceId(task), task.getTaskId(), phase, detail);
+    }
+
+    /**
+     * Записывает событие этапа, если задача трассируется.
+     */
+    public void record(String traceId, UUID taskId, String phase, String detail) {
+        if (traceId == null) {
+            return;
+        }
+        add(new TraceEvent(traceId, taskId, node, phase, detail,
+                startMicros + (System.nanoTime() - startNanos) / 1_000));
+    }
+
+    /**
+     * Добавляет событие, записанное другим узлом.
+     */
+    public void add(TraceEvent event) {
+        slots.set((int) (next.getAndIncrement() & mask), event);
+    }
+
+    /**
+     * События задачи в порядке времени.
+     */
+    public List<TraceEvent> forTask(UUID taskId) {
+        return find(event -> taskId.equals(event.getTaskId()));
+    }
+
+    /**
+     * События всех задач трассы в порядке времени.
+     */
+    public List<TraceEvent> forTrace(String traceId) {
+        return find(event -> traceId.equals(event.getTraceId()));
+    }
+
+    /**
+     * Идентификаторы последних трасс, начиная с самой свежей.
+     */
+    public List<String> recentTraces(int limit) {
+        Set<String> traces = new LinkedHashSet<>();
+        long last = next.get() - 1;
+        for (long i = last; i >= 0 && i > last - slots.length() && traces.size() < limit; i--) {
+            TraceEvent event = slots.get((int) (i & mask));
+            if (event != null) {
+                traces.add(event.getTraceId());
+            }
+        }
+        return new ArrayList<>(traces);
+    }
+
+    private List<TraceEvent> find(Predicate<TraceEvent> filter) {
+        List<TraceEvent> events = new ArrayList<>();
+        for (int i = 0; i < slots.length(); i++) {
+            TraceEvent event = slots.get(i);
+            if (event != null && filter.test(event)) {
+                events.add(event);
+            }
+        }
+        events.sort(Comparator.comparingLong(TraceEvent::getTimestampMicros));
+        return events;
+    }
+}
@@ -0,0 +1,64 @@
+package ru.nsu.dispatcher;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Реестр расположения blob-ов (байткода, broadcast-переменных и результатов задач) на worker-ах.
+ * Dispatcher хранит только адреса, сами байты передаются между worker-ами напрямую.
+ * Аргументы задач здесь не учитываются: они всегда приходят worker-у в теле задачи.
+ */
+public class BlobLocations {
+    private final Map<String, Set<String>> holders = new ConcurrentHashMap<>(); // hash -> workerIds
+
+    /**
+     * Запоминает, что worker получил blob с указанным хэшем.
+     */
+    public void recordHolder(String hash, String workerId) {
+        if (hash == null) {
+            return;
+        }
+        holders.computeIfAbsent(hash, h -> ConcurrentHashMap.newKeySet()).add(workerId);
+    }
+
+    /**
+     * Забывает blob, который worker вытеснил из своего хранилища.
+     */
+    public void removeHolder(String hash, String workerId) {
+        holders.computeIfPresent(hash, (h, workerIds) -> {
+            workerIds.remove(workerId);
+            return workerIds.isEmpty() ? null : workerIds;
+        });
+    }
+
+    public boolean isHeldBy(String hash, String workerId) {
+        Set<String> workerIds = holders.get(hash);
+        return workerIds != null && workerIds.contains(workerId);
+    }
+
+    /**
+     * Возвращает worker-ы, у которых есть blob с указанным хэшем.
+     */
+    public Set<String> getHolders(String hash) {
+        return holders.getOrDefault(hash, Set.of());
+    }
+
+    /**
+     * Возвращает blob-ы, которые есть только у указанного worker-а.
+     */
+    public List<String> heldOnlyBy(String workerId) {
+        return holders.entrySet().stream()
+                .filter(entry -> entry.getValue().size() == 1 && entry.getValue().contains(workerId))
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    /**
+     * Забывает все blob-ы worker-а, например после его повторной регистрации.
+     */
+    public void removeWorker(String workerId) {
+        holders.values().forEach(workerIds -> workerIds.remove(workerId));
+    }
+}
@@ -1,34 +1,58 @@
 package ru.nsu.dispatcher;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 import lombok.extern.slf4j.Slf4j;
+import ru.nsu.common.HashUtils;
 import ru.nsu.common.JacksonConfig;
+import ru.nsu.common.PayloadCompressor;
+import ru.nsu.common.PayloadTooLargeException;
+import ru.nsu.common.TaskFrames;
+import ru.nsu.common.codec.Codec;
+import ru.nsu.common.codec.Codecs;
+import ru.nsu.common.metrics.Histogram;
+import ru.nsu.common.metrics.MetricsRegistry;
+import ru.nsu.common.trace.TraceBuffer;
 import ru.nsu.model.Task;
 import ru.nsu.model.TaskResult;
+import ru.nsu.model.TaskType;
 import ru.nsu.model.WorkerInfo;
 import ru.nsu.model.WorkerRegistrationRequest;
 import ru.nsu.model.WorkerStatus;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.URI;
+import java.net.URLDecoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Центральный REST сервис для управления распределённым выполнением задач.
@@ -36,10 +60,82 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 @Slf4j
 public class DispatcherServer {
+    public static final String CLIENT_ID_HEADER = "X-Client-Id";
+    private static final Duration MAILBOX_IDLE_TIMEOUT = Duration.ofMinutes(10);
+    private static final Duration MAX_POLL_WAIT = Duration.ofSeconds(30);
+    /**
+     * Сколько задача графа может ждать зависимость, которую клиент так и не отправил.
+     */
+    private static final Duration DEPENDENCY_IDLE_TIMEOUT = Duration.ofMinutes(10);
+    /**
+     * Арендатор задач клиентов, которые не указали ни арендатора, ни свой идентификатор.
+     */
+    private static final String DEFAULT_TENANT = "default";
+    /**
+     * Сколько назначенная задача может отсутствовать в heartbeat-е worker-а, прежде чем будет считаться
+     * потерянной. Больше периода heartbeat-ов, чтобы учесть heartbeat, собранный до приёма задачи.
+     */
+    private static final Duration LOST_TASK_GRACE = Duration.ofSeconds(30);
+
     private final int port;
     private final ObjectMapper objectMapper;
     private final Map<String, WorkerInfo> workers;
     private final Map<UUID, String> taskToWorker; // Маппинг taskId -> workerId
+    private final BlobLocations blobLocations;
+    private final TaskDependencies dependencies;
+    private final ResultMemo memo;
+    private final MetricsRegistry metrics;
+    private final PayloadCompressor compressor;
+    private final ResultMailboxes mailboxes;
+    private final TraceBuffer trace;
+    private final Histogram dispatchLatency;
+    private final Histogram taskPayloadBytes;
+    private final Histogram resultPayloadBytes;
+    private final Histogram queueWait;
+    /**
+     * Задачи, ожидающие свободного места на worker-ах.
+     */
+    private final FairQueue queue;
+    /**
+     * Сколько задач сверх числа потоков worker-а можно отправить ему заранее, чтобы поток не простаивал,
+     * пока следующая задача идёт по сети. Эти задачи ждут в очереди worker-а вне честного разделения.
+     */
+    private final int prefetch;
+    /**
+     * Время назначения выполняющихся задач по {@link System#nanoTime()}.
+     */
+    private final Map<UUID, Long> assignedAt;
+    /**
+     * Worker-ы, которые могут хранить частичные значения map-reduce заданий, и время последнего признака этого
+     * по {@link System#nanoTime()}: назначения задачи REDUCE или heartbeat-а с непустым CombinerStore.
+     * Такие значения есть только на worker-е, поэтому пул не останавливает его, пока клиент их не заберёт.
+     */
+    private final Map<String, Long> combinerHolders = new ConcurrentHashMap<>();
+    /**
+     * Blob-ы, которые worker заберёт у peer-ов, выполняя задачу. Держателем он записывается, когда задача
+     * успешно завершится: до этого blob-а у него может ещё не быть.
+     */
+    private final Map<UUID, List<String>> fetchedBlobs;
+    private final Map<String, WorkerMetrics> workerMetrics;
+    /**
+     * Идентификаторы загруженных broadcast-переменных. Клиент не присылает их повторно, поэтому dispatcher хранит
+     * копию каждой в {@link #broadcastDir} и заново загружает её на worker, если держателей не осталось.
+     */
+    private final Set<String> broadcasts;
+    /**
+     * Каталог с копиями broadcast-переменных, создаётся при первой загрузке.
+     */
+    private Path broadcastDir;
+    /**
+     * Наибольший размер broadcast-переменной. Worker отображает её в память одним буфером, поэтому больше
+     * Integer.MAX_VALUE байт она быть не может.
+     */
+    private final long maxBroadcastBytes;
+    /**
+     * Пул локальных worker-процессов, null - пул выключен.
+     */
+    private final WorkerPool pool;
+    private final ScheduledExecutorService scheduler;
     private final HttpClient httpClient;
     private HttpServer httpServer;
 
@@ -48,6 +144,48 @@ public class DispatcherServer {
         this.objectMapper = JacksonConfig.createObjectMapper();
         this.workers = new ConcurrentHashMap<>();
         this.taskToWorker = new ConcurrentHashMap<>();
+        this.blobLocations = new BlobLocations();
+        this.dependencies = new TaskDependencies();
+        this.metrics = new MetricsRegistry();
+        this.compressor = new PayloadCompressor(metrics);
+        // Кэш результатов детерминированных задач
+        this.memo = new ResultMemo(Integer.getInteger("dispatcher.memo.maxEntries", 10_000),
+                Long.getLong("dispatcher.memo.maxBytes", 64L * 1024 * 1024),
+                Duration.ofSeconds(Long.getLong("dispatcher.memo.ttlSeconds", 600)), metrics);
+        this.mailboxes = new ResultMailboxes();
+        // События трассируемых задач, включая присланные worker-ами вместе с результатами
+        this.trace = new TraceBuffer("dispatcher", Integer.getInteger("dispatcher.trace.bufferSize", 16_384));
+        this.dispatchLatency = metrics.histogram("dispatcher_dispatch_seconds",
+                "Time to send a task to its worker", Histogram.NANOS_TO_SECONDS,
+                Histogram.MIN_DURATION_NANOS, Histogram.MAX_DURATION_NANOS);
+        this.taskPayloadBytes = metrics.histogram("dispatcher_task_payload_bytes",
+                "Size of task requests sent to workers",
+                1, Histogram.MIN_SIZE_BYTES, Histogram.MAX_SIZE_BYTES);
+        this.resultPayloadBytes = metrics.histogram("dispatcher_result_payload_bytes",
+                "Size of task results received from workers",
+                1, Histogram.MIN_SIZE_BYTES, Histogram.MAX_SIZE_BYTES);
+        this.queueWait = metrics.histogram("dispatcher_queue_wait_seconds",
+                "Time a task waited in the dispatcher queue for a free worker slot", Histogram.NANOS_TO_SECONDS,
+                Histogram.MIN_DURATION_NANOS, Histogram.MAX_DURATION_NANOS);
+        // Веса и ограничения арендаторов задаются списками вида tenantA:4,tenantB:1
+        this.queue = new FairQueue(FairQueue.parseTenantValues(System.getProperty("dispatcher.tenants.weights")),
+                FairQueue.parseTenantValues(System.getProperty("dispatcher.tenants.maxRunning")),
+                Integer.getInteger("dispatcher.tenants.defaultMaxRunning", 0));
+        this.prefetch = Integer.getInteger("dispatcher.queue.prefetch", 0);
+        this.maxBroadcastBytes = Math.min(Integer.MAX_VALUE,
+                Long.getLong("dispatcher.broadcast.maxBytes", Integer.MAX_VALUE));
+        this.assignedAt = new ConcurrentHashMap<>();
+        this.fetchedBlobs = new ConcurrentHashMap<>();
+        this.workerMetrics = new ConcurrentHashMap<>();
+        metrics.gauge("dispatcher_tasks_running", "Tasks sent to workers and not yet completed", taskToWorker::size);
+        metrics.gauge("dispatcher_tasks_waiting", "Tasks waiting for their dependencies", dependencies::waitingCount);
+        metrics.gauge("dispatcher_tasks_queued", "Tasks waiting for a free worker slot", queue::size);
+        metrics.gauge("dispatcher_results_undelivered", "Results not yet polled by clients", mailboxes::undelivered);
+        this.broadcasts = ConcurrentHashMap.newKeySet();
+        WorkerPool.Settings poolSettings = WorkerPool.Settings.fromSystemProperties();
+        this.pool = poolSettings != null ? new WorkerPool(poolSettings, URI.create("http://localhost:" + port),
+                workers, queue::size, workerId -> !holdsOnlyCopy(workerId) && !combinerHolders.containsKey(workerId), this::removeWorker, metrics) : null;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor();
         this.httpClient = HttpClient.newBuilder()
                 .connectTimeout(Duration.ofSeconds(5))
                 .build();
@@ -69,13 +207,39 @@ public class DispatcherServer {
         httpServer.createContext("/api/workers", this::handleGetWorkers);
 
         // Отправка задачи на выполнение
-        httpServer.createContext("/api/tasks/submit", this::handleTaskSubmit);
+        httpServer.createContext("/api/tasks/submit", timed("dispatcher_submit_seconds",
+                "Time to accept a submitted task", this::handleTaskSubmit));
+
+        // Загрузка broadcast-переменной
+        httpServer.createContext("/api/broadcasts", this::handleBroadcastUpload);
 
         // Отправка результата выполнения (от worker-а)
-        httpServer.createContext("/api/tasks/result", this::handleTaskResult);
+        httpServer.createContext("/api/tasks/result", timed("dispatcher_result_handling_seconds",
+                "Time to process a task result from a worker", this::handleTaskResult));
+
+        // Получение готовых результатов клиентом (long polling)
+        httpServer.createContext("/api/tasks/results", this::handlePollResults);
+
+        // Хронология трассируемых задач
+        httpServer.createContext("/api/traces", this::handleTraces);
 
-        httpServer.setExecutor(null); // Используем дефолтный executor
+        // Метрики в формате Prometheus
+        httpServer.createContext("/api/metrics", this::handleMetrics);
+
+        // Long polling держит поток до появления результатов, поэтому обработчики работают в виртуальных потоках
+        httpServer.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
         httpServer.start();
+        scheduler.scheduleAtFixedRate(() -> mailboxes.evictIdle(MAILBOX_IDLE_TIMEOUT), 1, 1, TimeUnit.MINUTES);
+        scheduler.scheduleAtFixedRate(() -> dependencies.evictIdle(DEPENDENCY_IDLE_TIMEOUT)
+                .forEach(task -> fail(task, "Dependencies of task were never submitted")), 1, 1, TimeUnit.MINUTES);
+        scheduler.scheduleAtFixedRate(memo::evictExpired, 1, 1, TimeUnit.MINUTES);
+        // Места освобождаются при получении результатов и регистрации worker-ов, периодический проход
+        // подбирает остальные случаи, например возврат worker-а в работу
+        scheduler.scheduleWithFixedDelay(this::drainQueue, 1, 1, TimeUnit.SECONDS);
+        if (pool != null) {
+            scheduler.scheduleWithFixedDelay(pool::check, 0, WorkerPool.CHECK_INTERVAL.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
         log.info("Dispatcher server started on port {}", port);
     }
 
@@ -85,6 +249,10 @@ public class DispatcherServer {
     public void stop() {
         if (httpServer != null) {
             httpServer.stop(0);
+            scheduler.shutdown();
+            if (pool != null) {
+                pool.shutdown();
+            }
             log.info("Dispatcher server stopped");
         }
     }
@@ -103,19 +271,89 @@ public class DispatcherServer {
                     request.getWorkerId(),
                     request.getAddress(),
                     WorkerStatus.ALIVE,
-                    Instant.now()
+                    Instant.now(),
+                    request.getAcceptEncodings(),
+                    request.getSlots(),
+                    request.getMemoryBudget() > 0 ? request.getMemoryBudget() : -1
             );
 
-            workers.put(request.getWorkerId(), workerInfo);
+            registerWorker(workerInfo);
             log.info("Worker registered: {} at {}", request.getWorkerId(), request.getAddress());
 
-            sendSuccessResponse(exchange, "{\"status\":\"registered\"}");
+            Map<String, Object> response = new HashMap<>();
+            response.put("status", "registered");
+            response.put("acceptEncodings", List.of(PayloadCompressor.ENCODING));
+            sendSuccessResponse(exchange, objectMapper.writeValueAsString(response));
+            drainQueue();
         } catch (Exception e) {
             log.error("Error registering worker", e);
             sendError(exchange, 400, "Invalid request: " + e.getMessage());
         }
     }
 
+    /**
+     * Добавляет worker в кластер или заменяет запись о нём. Доступен пакету для бенчмарков.
+     */
+    void registerWorker(WorkerInfo workerInfo) {
+        String workerId = workerInfo.getWorkerId();
+        if (workers.put(workerId, workerInfo) != null) {
+            // Worker перезапустился: задачи прежнего процесса не завершатся
+            failTasksOf(workerId, "Worker " + workerId + " restarted");
+        }
+        workerMetrics.computeIfAbsent(workerId, id -> new WorkerMetrics(metrics, id));
+        metrics.gauge("dispatcher_worker_active_tasks", "Tasks running on a worker", () -> {
+            WorkerInfo worker = workers.get(workerId);
+            return worker != null ? worker.getActiveTasks() : 0;
+        }, "worker", workerId);
+        // Заново зарегистрированный worker стартует с пустыми хранилищами blob-ов и частичных значений
+        blobLocations.removeWorker(workerInfo.getWorkerId());
+        combinerHolders.remove(workerInfo.getWorkerId());
+    }
+
+    /**
+     * Удаляет остановленный worker из кластера и завершает ошибкой задачи, которые на нём выполнялись.
+     */
+    private void removeWorker(String workerId) {
+        if (workers.remove(workerId) != null) {
+            blobLocations.removeWorker(workerId);
+            combinerHolders.remove(workerId);
+            log.info("Worker removed: {}", workerId);
+        }
+        failTasksOf(workerId, "Worker " + workerId + " stopped");
+    }
+
+    /**
+     * Завершает ошибкой все задачи, назначенные worker-у, как если бы он прислал их неудачные результаты:
+     * освобождаются места в очереди, ошибку получают клиент, ждавшие задачи и зависимые задачи.
+     */
+    private void failTasksOf(String workerId, String errorMessage) {
+        List<UUID> assigned = taskToWorker.entrySet().stream()
+                .filter(entry -> entry.getValue().equals(workerId))
+                .map(Map.Entry::getKey)
+                .toList();
+        assigned.forEach(taskId -> completeTask(TaskResult.failure(taskId, errorMessage)));
+        if (!assigned.isEmpty()) {
+            log.warn("Failed {} tasks of worker {}: {}", assigned.size(), workerId, errorMessage);
+        }
+    }
+
+    /**
+     * Проверяет, хранит ли worker единственную копию данных, которые нельзя получить заново: результата задачи,
+     * который ещё не прочитали зависимые задачи. Код и аргументы клиент пришлёт повторно, broadcast-переменные
+     * dispatcher загрузит из своей копии.
+     */
+    private boolean holdsOnlyCopy(String workerId) {
+        return blobLocations.heldOnlyBy(workerId).stream().anyMatch(this::isRetainedResult);
+    }
+
+    private boolean isRetainedResult(String blobId) {
+        try {
+            return dependencies.isProducer(UUID.fromString(blobId));
+        } catch (IllegalArgumentException e) {
+            return false; // хэш, а не идентификатор задачи
+        }
+    }
+
     private void handleHeartbeat(HttpExchange exchange) throws IOException {
         if (!"POST".equals(exchange.getRequestMethod())) {
             sendError(exchange, 405, "Method not allowed");
@@ -123,24 +361,75 @@ public class DispatcherServer {
         }
 
         try {
-            Map<String, String> request = objectMapper.readValue(
+            Map<String, Object> request = objectMapper.readValue(
                     exchange.getRequestBody(), Map.class);
-            String workerId = request.get("workerId");
+            String workerId = (String) request.get("workerId");
+            Object memoryAvailable = request.get("memoryAvailable");
 
-            WorkerInfo worker = workers.get(workerId);
-            if (worker != null) {
-                workers.put(workerId, worker
-                        .withLastHeartbeat(Instant.now())
-                        .withStatus(WorkerStatus.ALIVE));
-            }
+            // Выводимый из работы worker остаётся в этом статусе, пока пул его не остановит
+            workers.computeIfPresent(workerId, (id, worker) -> worker
+                    .withLastHeartbeat(Instant.now())
+                    .withStatus(worker.getStatus() == WorkerStatus.DRAINING
+                            ? WorkerStatus.DRAINING : WorkerStatus.ALIVE)
+                    .withMemoryAvailable(memoryAvailable != null
+                            ? Long.parseLong(memoryAvailable.toString()) : worker.getMemoryAvailable()));
 
             sendSuccessResponse(exchange, "{\"status\":\"ok\"}");
+            if (request.get("evictedBlobs") instanceof List<?> evicted) {
+                evicted.forEach(hash -> blobLocations.removeHolder(hash.toString(), workerId));
+            }
+            if (request.get("combinerJobs") != null) {
+                updateCombinerHolder(workerId, Integer.parseInt(request.get("combinerJobs").toString()));
+            }
+            if (request.get("taskIds") instanceof List<?> taskIds) {
+                failLostTasks(workerId, taskIds.stream().map(id -> UUID.fromString(id.toString())).toList());
+            }
         } catch (Exception e) {
             log.error("Error processing heartbeat", e);
             sendError(exchange, 400, "Invalid request: " + e.getMessage());
         }
     }
 
+    /**
+     * Завершает ошибкой задачи, которые dispatcher считает выполняющимися на worker-е, но которых нет среди
+     * присланных worker-ом: их результат потерялся, например, не дошёл после всех повторов или остался
+     * в перезапущенном процессе worker-а с тем же идентификатором. Задачи, назначенные
+     * позже чем {@link #LOST_TASK_GRACE} назад, не проверяются: heartbeat мог быть собран до их приёма.
+     * @param reported задачи, результат которых worker ещё не доставил
+     */
+    private void failLostTasks(String workerId, Collection<UUID> reported) {
+        Set<UUID> known = new HashSet<>(reported);
+        long assignedBefore = System.nanoTime() - LOST_TASK_GRACE.toNanos();
+        List<UUID> lost = taskToWorker.entrySet().stream()
+                .filter(entry -> entry.getValue().equals(workerId) && !known.contains(entry.getKey()))
+                .map(Map.Entry::getKey)
+                .filter(taskId -> {
+                    Long assigned = assignedAt.get(taskId);
+                    return assigned != null && assigned - assignedBefore < 0;
+                })
+                .toList();
+        lost.forEach(taskId -> completeTask(
+                TaskResult.failure(taskId, "Result of the task was lost by worker " + workerId)));
+        if (!lost.isEmpty()) {
+            drainQueue();
+        }
+    }
+
+    /**
+     * Обновляет признак хранения частичных значений по heartbeat-у. Пустой CombinerStore не снимает признак,
+     * если задача REDUCE назначена позже чем {@link #LOST_TASK_GRACE} назад: heartbeat мог быть собран до того,
+     * как она свернула свой чанк.
+     */
+    private void updateCombinerHolder(String workerId, int combinerJobs) {
+        long now = System.nanoTime();
+        if (combinerJobs > 0) {
+            combinerHolders.put(workerId, now);
+        } else {
+            combinerHolders.computeIfPresent(workerId,
+                    (id, since) -> now - since > LOST_TASK_GRACE.toNanos() ? null : since);
+        }
+    }
+
     private void handleGetWorkers(HttpExchange exchange) throws IOException {
         if (!"GET".equals(exchange.getRequestMethod())) {
             sendError(exchange, 405, "Method not allowed");
@@ -159,67 +448,572 @@ public class DispatcherServer {
         }
 
         try {
-            Task task = objectMapper.readValue(exchange.getRequestBody(), Task.class);
+            Task task = readTask(exchange);
+            trace.record(task, "dispatcher.received");
+
+            String clientId = exchange.getRequestHeaders().getFirst(CLIENT_ID_HEADER);
+            if (task.getDependencies() != null && !task.getDependencies().isEmpty()) {
+                String cycle = dependencies.findCycle(task);
+                if (cycle != null) {
+                    // Задачи цикла, уже ждущие эту, завершаются ошибкой вместе с ней
+                    dependencies.complete(TaskResult.failure(task.getTaskId(), cycle))
+                            .forEach(this::dispatchDependent);
+                    sendError(exchange, 400, cycle);
+                    return;
+                }
+                // Зависимая задача отправляется на worker, когда завершатся все её зависимости
+                if (clientId != null) {
+                    mailboxes.register(task.getTaskId(), clientId);
+                }
+                expectConsumers(task);
+                boolean ready = dependencies.park(task);
+                if (ready) {
+                    dispatchDependent(task);
+                } else {
+                    trace.record(task, "dispatcher.waiting");
+                }
+                sendSuccessResponse(exchange, submitResponse(task, ready ? "assigned" : "waiting", null));
+                return;
+            }
+
+            String memoKey = ResultMemo.key(task);
+            if (memoKey != null) {
+                TaskResult cached = memo.cached(memoKey, task.getTaskId());
+                if (cached != null) {
+                    if (clientId != null) {
+                        mailboxes.register(task.getTaskId(), clientId);
+                        mailboxes.deliver(cached);
+                    }
+                    trace.record(task, "dispatcher.cached");
+                    log.debug("Task {} answered from memo cache", task.getTaskId());
+                    sendSuccessResponse(exchange, submitResponse(task, "cached", null));
+                    return;
+                }
+            }
 
             // Выбираем worker для выполнения задачи
-            WorkerInfo selectedWorker = selectWorker();
+            WorkerInfo selectedWorker = selectWorker(task);
             if (selectedWorker == null) {
-                sendError(exchange, 503, "No available workers");
+                if (pool != null && requiredWorkerId(task) == null) {
+                    pool.recordRejected();
+                }
+                sendError(exchange, 503, requiredWorkerId(task) != null
+                        ? "Worker " + requiredWorkerId(task) + " is not available"
+                        : "No available workers");
                 return;
             }
 
-            log.info("Task {} assigned to worker {}", task.getTaskId(), selectedWorker.getWorkerId());
+            Task payload;
+            try {
+                // Для задачи из очереди это только проверка, что её blob-ы доступны: место выберет очередь
+                payload = prepareForWorker(task, selectedWorker);
+            } catch (IllegalStateException e) {
+                sendError(exchange, 409, e.getMessage());
+                return;
+            }
+
+            // Результат может прийти раньше, чем закончится отправка, поэтому клиент регистрируется заранее
+            if (clientId != null) {
+                mailboxes.register(task.getTaskId(), clientId);
+            }
 
-            // Отправляем задачу worker-у напрямую
-            boolean sent = sendTaskToWorker(task, selectedWorker);
-            if (!sent) {
-                sendError(exchange, 500, "Failed to send task to worker");
+            if (memoKey != null && !memo.lead(memoKey, task.getTaskId())) {
+                // Такая же задача уже выполняется: эта получит копию её результата
+                trace.record(task, "dispatcher.coalesced");
+                log.debug("Task {} coalesced with an identical task in flight", task.getTaskId());
+                sendSuccessResponse(exchange, submitResponse(task, "coalesced", null));
                 return;
             }
 
-            selectedWorker.addTask(task.getTaskId());
-            taskToWorker.put(task.getTaskId(), selectedWorker.getWorkerId());
+            if (requiredWorkerId(task) == null) {
+                expectConsumers(task);
+                queue.add(tenantOf(task, clientId), task);
+                trace.record(task, "dispatcher.queued");
+                drainQueue();
+                String workerId = taskToWorker.get(task.getTaskId());
+                sendSuccessResponse(exchange, submitResponse(task, workerId != null ? "assigned" : "queued",
+                        workerId));
+                return;
+            }
 
-            Map<String, String> response = new HashMap<>();
-            response.put("taskId", task.getTaskId().toString());
-            response.put("workerId", selectedWorker.getWorkerId());
-            response.put("status", "assigned");
+            // Задача для конкретного worker-а (например, сбор частичных результатов) обходит очередь
+            log.debug("Task {} assigned to worker {}", task.getTaskId(), selectedWorker.getWorkerId());
+            String sendError = assign(task, payload, selectedWorker);
+            if (sendError != null) {
+                mailboxes.unregister(task.getTaskId());
+                memo.abandon(task.getTaskId()).forEach(follower -> mailboxes.deliver(
+                        TaskResult.failure(follower, sendError)));
+                // Зависимые задачи уже могли встать в ожидание этой задачи
+                dependencies.complete(TaskResult.failure(task.getTaskId(), sendError))
+                        .forEach(this::dispatchDependent);
+                sendError(exchange, 500, sendError);
+                return;
+            }
 
-            sendSuccessResponse(exchange, objectMapper.writeValueAsString(response));
+            sendSuccessResponse(exchange, submitResponse(task, "assigned", selectedWorker.getWorkerId()));
+        } catch (PayloadTooLargeException e) {
+            sendError(exchange, 413, e.getMessage());
         } catch (Exception e) {
             log.error("Error submitting task", e);
             sendError(exchange, 400, "Invalid request: " + e.getMessage());
         }
     }
 
+    /**
+     * Ответ на отправку задачи. Поле codeStored сообщает клиенту, что код задачи хранится хотя бы на одном worker-е
+     * и следующие задачи с ним можно отправлять без байткода. Принятая задача ещё не означает этого: её результат
+     * мог быть взят из кэша, задача могла быть объединена с такой же или ждать в очереди.
+     * @param workerId worker, которому отправлена задача, null - ещё не отправлена
+     */
+    private String submitResponse(Task task, String status, String workerId) throws IOException {
+        Map<String, Object> response = new HashMap<>();
+        response.put("taskId", task.getTaskId().toString());
+        response.put("status", status);
+        if (workerId != null) {
+            response.put("workerId", workerId);
+        }
+        if (task.getCodeHash() != null) {
+            response.put("codeStored", !blobLocations.getHolders(task.getCodeHash()).isEmpty());
+        }
+        return objectMapper.writeValueAsString(response);
+    }
+
+    /**
+     * Отправляет задачу worker-у и запоминает, какие blob-ы теперь у него есть: код из тела задачи worker
+     * сохраняет до ответа, а blob-ы от peer-ов получит позже, см. {@link #fetchedBlobs}.
+     * Задача регистрируется до отправки: её результат может прийти раньше, чем worker ответит на отправку.
+     * @param payload задача в том виде, в котором её получит worker
+     * @return причина, по которой worker не принял задачу, или null
+     */
+    private String assign(Task task, Task payload, WorkerInfo worker) {
+        expectConsumers(task);
+        worker.addTask(task.getTaskId());
+        taskToWorker.put(task.getTaskId(), worker.getWorkerId());
+        assignedAt.put(task.getTaskId(), System.nanoTime());
+        List<String> fetched = fetchedByWorker(task, payload);
+        if (!fetched.isEmpty()) {
+            fetchedBlobs.put(task.getTaskId(), fetched);
+        }
+        trace.record(task, "dispatcher.assigned", worker.getWorkerId());
+        long start = System.nanoTime();
+        String sendError = sendTaskToWorker(payload, worker);
+        dispatchLatency.recordSince(start);
+        if (sendError != null) {
+            worker.removeTask(task.getTaskId());
+            taskToWorker.remove(task.getTaskId());
+            assignedAt.remove(task.getTaskId());
+            fetchedBlobs.remove(task.getTaskId());
+            return sendError;
+        }
+        trace.record(task, "dispatcher.sent", worker.getWorkerId());
+        if (task.getType() == TaskType.REDUCE) {
+            combinerHolders.put(worker.getWorkerId(), System.nanoTime());
+        }
+
+        if (payload.getClassBytes() != null) {
+            blobLocations.recordHolder(task.getCodeHash(), worker.getWorkerId());
+        }
+        return null;
+    }
+
+    /**
+     * Регистрирует принятую задачу как производителя, если её результат прочитают зависимые задачи.
+     */
+    private void expectConsumers(Task task) {
+        int consumers = task.getMetadata() != null ? task.getMetadata().getConsumers() : 0;
+        if (consumers > 0) {
+            dependencies.expect(task.getTaskId(), consumers);
+        }
+    }
+
+    /**
+     * Код и broadcast-переменные, которые worker заберёт у peer-ов. Результаты зависимостей worker не хранит.
+     */
+    private static List<String> fetchedByWorker(Task task, Task payload) {
+        Map<String, URI> sources = payload.getBlobSources();
+        if (sources == null || sources.isEmpty()) {
+            return List.of();
+        }
+        List<String> fetched = new ArrayList<>();
+        if (task.getCodeHash() != null && sources.containsKey(task.getCodeHash())) {
+            fetched.add(task.getCodeHash());
+        }
+        if (task.getBroadcastIds() != null) {
+            task.getBroadcastIds().stream().filter(sources::containsKey).forEach(fetched::add);
+        }
+        return fetched;
+    }
+
+    /**
+     * Отправляет задачу, все зависимости которой завершились. Задача выполняется на worker-е, который хранит
+     * результаты зависимостей, и получает их в памяти. Результаты, оставшиеся на других worker-ах, она
+     * забирает у них напрямую.
+     */
+    private void dispatchDependent(Task task) {
+        String failure = dependencies.claimInputs(task);
+        if (failure != null) {
+            fail(task, failure);
+            return;
+        }
+
+        WorkerInfo worker = requiredWorkerId(task) != null ? selectWorker(task) : selectWorkerNearInputs(task);
+        if (worker == null) {
+            if (pool != null) {
+                pool.recordRejected();
+            }
+            fail(task, "No available workers");
+            return;
+        }
+
+        Task payload;
+        try {
+            payload = prepareForWorker(task, worker);
+        } catch (IllegalStateException e) {
+            // Worker, хранивший результат зависимости, отключился или перезапустился
+            fail(task, "Result of a dependency is no longer available: " + e.getMessage());
+            return;
+        }
+
+        log.debug("Task {} assigned to worker {} after its dependencies", task.getTaskId(), worker.getWorkerId());
+        String sendError = assign(task, payload, worker);
+        if (sendError != null) {
+            fail(task, sendError);
+        }
+    }
+
+    /**
+     * Отправляет задачи из очереди, пока на worker-ах есть свободные места.
+     */
+    private void drainQueue() {
+        try {
+            FairQueue.Placement next;
+            while ((next = queue.poll(this::reserveSlot)) != null) {
+                queueWait.record(next.queuedNanos());
+                Task task = next.task();
+                WorkerInfo worker = next.worker();
+                Task payload;
+                try {
+                    payload = prepareForWorker(task, worker);
+                } catch (IllegalStateException e) {
+                    // Worker-ы, хранившие код или аргументы, отключились, пока задача ждала
+                    worker.removeTask(task.getTaskId());
+                    queue.finished(task.getTaskId());
+                    fail(task, "Task data is no longer available: " + e.getMessage());
+                    continue;
+                }
+
+                log.debug("Task {} assigned to worker {} after {} us in queue",
+                        task.getTaskId(), worker.getWorkerId(), next.queuedNanos() / 1000);
+                String sendError = assign(task, payload, worker);
+                if (sendError != null) {
+                    queue.finished(task.getTaskId());
+                    fail(task, sendError);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error dispatching queued tasks", e);
+        }
+    }
+
+    /**
+     * Занимает место для задачи на наименее загруженном worker-е, у которого выполняется меньше задач,
+     * чем у него потоков (с учётом {@link #prefetch}). Предпочитаются worker-ы, у которых свободной памяти
+     * не меньше payload задачи; если таких нет, выбирается worker с наибольшим запасом памяти, где задача
+     * подождёт, пока память освободится.
+     * Место занимается атомарно с проверкой числа задач: задачи на worker отправляют и проход очереди,
+     * и обработчики отправки в обход очереди. Если место успели занять, worker выбирается заново.
+     * @return null, если свободных мест нет
+     */
+    private WorkerInfo reserveSlot(Task task) {
+        long payloadSize = length(task.getArguments()) + length(task.getFunction());
+        while (true) {
+            List<WorkerInfo> free = workers.values().stream()
+                    .filter(w -> w.getStatus() == WorkerStatus.ALIVE && w.getActiveTasks() < slotLimit(w))
+                    .toList();
+            WorkerInfo worker = free.stream()
+                    .filter(w -> w.getMemoryAvailable() < 0 || w.getMemoryAvailable() >= payloadSize)
+                    .min(Comparator.comparingInt(WorkerInfo::getActiveTasks))
+                    .orElseGet(() -> free.stream()
+                            .max(Comparator.comparingLong(WorkerInfo::getMemoryAvailable))
+                            .orElse(null));
+            if (worker == null || worker.tryAddTask(task.getTaskId(), slotLimit(worker))) {
+                return worker;
+            }
+        }
+    }
+
+    /**
+     * Сколько задач из очереди можно назначить worker-у одновременно.
+     */
+    private int slotLimit(WorkerInfo worker) {
+        return Math.max(1, worker.getSlots()) + prefetch;
+    }
+
+    private static long length(byte[] bytes) {
+        return bytes != null ? bytes.length : 0;
+    }
+
+    /**
+     * Арендатор задачи: указанный в метаданных, иначе отправивший её клиент.
+     */
+    private static String tenantOf(Task task, String clientId) {
+        if (task.getMetadata() != null && task.getMetadata().getTenantId() != null) {
+            return task.getMetadata().getTenantId();
+        }
+        return clientId != null ? clientId : DEFAULT_TENANT;
+    }
+
+    /**
+     * Завершает ошибкой задачу, которая не будет выполнена, и все задачи, ожидающие её результат.
+     */
+    private void fail(Task task, String errorMessage) {
+        log.warn("Task {} failed: {}", task.getTaskId(), errorMessage);
+        trace.record(task, "dispatcher.failed", errorMessage);
+        TaskResult failure = TaskResult.failure(task.getTaskId(), errorMessage);
+        mailboxes.deliver(failure);
+        // Одинаковые задачи, ожидавшие результата этой
+        memo.abandon(task.getTaskId()).forEach(follower -> mailboxes.deliver(
+                TaskResult.failure(follower, errorMessage)));
+        dependencies.complete(failure).forEach(this::dispatchDependent);
+    }
+
+    /**
+     * Читает задачу из тела запроса в бинарном формате или в JSON.
+     */
+    private Task readTask(HttpExchange exchange) throws IOException {
+        InputStream body = compressor.decode(exchange.getRequestBody(),
+                exchange.getRequestHeaders().getFirst("Content-Encoding"), "client->dispatcher");
+        if (TaskFrames.isFrame(exchange.getRequestHeaders().getFirst("Content-Type"))) {
+            return TaskFrames.decodeTask(objectMapper, body);
+        }
+        return objectMapper.readValue(body, Task.class);
+    }
+
+    /**
+     * Готовит задачу к отправке на worker: код, которого нет в задаче, broadcast-переменные и результаты
+     * зависимостей worker забирает у себя или у доступного peer-а, вместо байт он получает адрес peer-а.
+     * Аргументы всегда передаются в теле задачи, общие для многих задач большие данные - через broadcast-переменные.
+     * @throws IllegalStateException если blob не передан в задаче и не найден ни у одного worker-а
+     */
+    private Task prepareForWorker(Task task, WorkerInfo worker) {
+        Map<String, URI> blobSources = new HashMap<>();
+        byte[] classBytes = resolveBlob(task.getCodeHash(), task.getClassBytes(), worker, blobSources);
+        if (task.getBroadcastIds() != null) {
+            // Broadcast-переменные никогда не передаются в теле задачи, только через peer-ов
+            task.getBroadcastIds().forEach(id -> resolveBroadcast(id, worker, blobSources));
+        }
+        if (task.getDependencies() != null) {
+            // Результаты зависимостей хранятся на worker-ах под идентификатором задачи
+            task.getDependencies().forEach(id -> resolveBlob(id.toString(), null, worker, blobSources));
+        }
+        return task.withBlobs(classBytes, task.getArguments(), blobSources);
+    }
+
+    /**
+     * Возвращает байты blob-а, если их нужно передать worker-у в теле задачи, иначе null.
+     * Имеющиеся у dispatcher-а байты передаются всегда: так worker не зависит от того, успел ли держатель
+     * сохранить blob. Без байтов blob берётся у самого worker-а или у peer-а.
+     */
+    private byte[] resolveBlob(String hash, byte[] bytes, WorkerInfo worker, Map<String, URI> blobSources) {
+        if (hash == null || bytes != null) {
+            return bytes;
+        }
+        WorkerInfo peer = findPeerHolding(hash, worker);
+        if (peer != null) {
+            // Адрес peer-а передаётся и worker-у, у которого есть blob: он мог вытеснить blob до heartbeat-а
+            blobSources.put(hash, peer.getAddress());
+            return null;
+        }
+        if (blobLocations.isHeldBy(hash, worker.getWorkerId())) {
+            return null;
+        }
+        throw new IllegalStateException("Unknown blob: " + hash);
+    }
+
+    /**
+     * Находит broadcast-переменную у worker-а или peer-а. Если все её держатели отключились или перезапустились,
+     * загружает её на worker заново из копии dispatcher-а.
+     * @throws IllegalStateException если broadcast-переменная неизвестна или её не удалось загрузить
+     */
+    private void resolveBroadcast(String broadcastId, WorkerInfo worker, Map<String, URI> blobSources) {
+        if (blobLocations.isHeldBy(broadcastId, worker.getWorkerId())) {
+            return;
+        }
+        WorkerInfo peer = findPeerHolding(broadcastId, worker);
+        if (peer != null) {
+            blobSources.put(broadcastId, peer.getAddress());
+            return;
+        }
+        if (!broadcasts.contains(broadcastId)) {
+            throw new IllegalStateException("Unknown broadcast: " + broadcastId);
+        }
+        if (!sendBroadcastToWorker(broadcastId, broadcastDir.resolve(broadcastId), worker)) {
+            throw new IllegalStateException("Failed to restore broadcast " + broadcastId);
+        }
+        blobLocations.recordHolder(broadcastId, worker.getWorkerId());
+        log.info("Broadcast {} restored on worker {}", broadcastId, worker.getWorkerId());
+    }
+
+    /**
+     * Выбирает peer, у которого есть blob. Выводимые из работы worker-ы новых задач не получают,
+     * но продолжают отдавать свои blob-ы.
+     */
+    private WorkerInfo findPeerHolding(String hash, WorkerInfo exclude) {
+        return blobLocations.getHolders(hash).stream()
+                .filter(workerId -> !workerId.equals(exclude.getWorkerId()))
+                .map(workers::get)
+                .filter(w -> w != null && w.getStatus() != WorkerStatus.UNAVAILABLE)
+                .min(Comparator.comparingInt(WorkerInfo::getActiveTasks))
+                .orElse(null);
+    }
+
+    /**
+     * Принимает broadcast-переменную, сохраняет её копию и загружает её на один worker. Остальные worker-ы
+     * получат её у peer-ов при первой задаче, которая на неё ссылается.
+     */
+    private void handleBroadcastUpload(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            sendError(exchange, 405, "Method not allowed");
+            return;
+        }
+
+        try {
+            String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+            if (contentLength != null && Long.parseLong(contentLength) > maxBroadcastBytes) {
+                sendError(exchange, 413, "Broadcast is larger than " + maxBroadcastBytes + " bytes");
+                return;
+            }
+            Path file = storeBroadcast(exchange.getRequestBody());
+            String broadcastId = file.getFileName().toString();
+
+            if (blobLocations.getHolders(broadcastId).isEmpty()) {
+                WorkerInfo seed = selectWorker();
+                if (seed == null) {
+                    sendError(exchange, 503, "No available workers");
+                    return;
+                }
+                if (!sendBroadcastToWorker(broadcastId, file, seed)) {
+                    sendError(exchange, 500, "Failed to send broadcast to worker");
+                    return;
+                }
+                blobLocations.recordHolder(broadcastId, seed.getWorkerId());
+                broadcasts.add(broadcastId);
+                log.info("Broadcast {} ({} bytes) stored on worker {}", broadcastId, Files.size(file),
+                        seed.getWorkerId());
+            }
+
+            sendSuccessResponse(exchange, objectMapper.writeValueAsString(Map.of("broadcastId", broadcastId)));
+        } catch (PayloadTooLargeException e) {
+            sendError(exchange, 413, e.getMessage());
+        } catch (Exception e) {
+            log.error("Error uploading broadcast", e);
+            sendError(exchange, 400, "Invalid request: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Сохраняет копию broadcast-переменной, если её ещё нет.
+     */
+    private Path storeBroadcast(InputStream body) throws IOException {
+        Path directory = broadcastDir();
+        Path tmp = Files.createTempFile(directory, "upload", ".tmp");
+        try {
+            MessageDigest digest = HashUtils.sha256();
+            long size = 0;
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = body.read(buffer)) != -1) {
+                    size += read;
+                    if (size > maxBroadcastBytes) {
+                        throw new PayloadTooLargeException("Broadcast is larger than " + maxBroadcastBytes + " bytes");
+                    }
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                }
+            }
+            Path file = directory.resolve(HexFormat.of().formatHex(digest.digest()));
+            if (!Files.exists(file)) {
+                // Одновременная загрузка тех же данных переименует такой же файл: содержимое совпадает
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+            }
+            return file;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private synchronized Path broadcastDir() throws IOException {
+        if (broadcastDir == null) {
+            broadcastDir = Files.createTempDirectory("dispatcher-broadcast");
+        }
+        return broadcastDir;
+    }
+
+    private boolean sendBroadcastToWorker(String broadcastId, Path file, WorkerInfo worker) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(worker.getAddress().resolve("/api/broadcasts/" + broadcastId))
+                    .header("Content-Type", "application/octet-stream")
+                    .POST(HttpRequest.BodyPublishers.ofFile(file))
+                    .timeout(Duration.ofSeconds(60))
+                    .build();
+
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            return response.statusCode() == 200;
+        } catch (Exception e) {
+            log.error("Error sending broadcast {} to worker {}", broadcastId, worker.getWorkerId(), e);
+            return false;
+        }
+    }
+
     /**
      * Отправляет задачу worker-у напрямую через HTTP POST.
+     * @return причина, по которой worker не принял задачу, или null
      */
-    private boolean sendTaskToWorker(Task task, WorkerInfo worker) {
+    private String sendTaskToWorker(Task task, WorkerInfo worker) {
         try {
-            String taskJson = objectMapper.writeValueAsString(task);
             URI workerTaskUrl = worker.getAddress().resolve("/api/tasks/execute");
+            PayloadCompressor.Body body = compressor.prepare(TaskFrames.encodeTask(objectMapper, task),
+                    "dispatcher->" + worker.getWorkerId(), worker.acceptsEncoding(PayloadCompressor.ENCODING));
+            long size = 0;
+            for (byte[] segment : body.segments()) {
+                size += segment.length;
+            }
+            taskPayloadBytes.record(size);
 
-            HttpRequest request = HttpRequest.newBuilder()
+            HttpRequest.Builder builder = HttpRequest.newBuilder()
                     .uri(workerTaskUrl)
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(taskJson))
-                    .timeout(Duration.ofSeconds(10))
-                    .build();
+                    .header("Content-Type", TaskFrames.CONTENT_TYPE)
+                    .POST(HttpRequest.BodyPublishers.ofByteArrays(body.segments()))
+                    .timeout(Duration.ofSeconds(10));
+            if (body.encoding() != null) {
+                builder.header("Content-Encoding", body.encoding());
+            }
+            HttpRequest request = builder.build();
 
             HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
 
             if (response.statusCode() == 200) {
                 log.debug("Task {} sent to worker {} successfully", task.getTaskId(), worker.getWorkerId());
-                return true;
+                // Worker сообщает, сколько памяти осталось после приёма задачи
+                JsonNode memoryAvailable = objectMapper.readTree(response.body()).path("memoryAvailable");
+                if (memoryAvailable.isNumber()) {
+                    workers.computeIfPresent(worker.getWorkerId(),
+                            (id, current) -> current.withMemoryAvailable(memoryAvailable.asLong()));
+                }
+                return null;
+            } else if (response.statusCode() == 507 || response.statusCode() == 413) {
+                log.warn("Worker {} rejected task {}: {}", worker.getWorkerId(), task.getTaskId(), response.body());
+                return objectMapper.readTree(response.body()).path("error").asText("Task does not fit worker memory");
             } else {
                 log.warn("Failed to send task {} to worker {}: status {}",
                         task.getTaskId(), worker.getWorkerId(), response.statusCode());
-                return false;
+                return "Failed to send task to worker";
             }
         } catch (Exception e) {
             log.error("Error sending task {} to worker {}", task.getTaskId(), worker.getWorkerId(), e);
-            return false;
+            return "Failed to send task to worker";
         }
     }
 
@@ -230,38 +1024,245 @@ public class DispatcherServer {
         }
 
         try {
-            TaskResult result = objectMapper.readValue(exchange.getRequestBody(), TaskResult.class);
+            InputStream body = compressor.decode(exchange.getRequestBody(),
+                    exchange.getRequestHeaders().getFirst("Content-Encoding"), "worker->dispatcher");
+            TaskResult received = TaskFrames.isFrame(exchange.getRequestHeaders().getFirst("Content-Type"))
+                    ? TaskFrames.decodeResult(objectMapper, body)
+                    : objectMapper.readValue(body, TaskResult.class);
+            if (received.getTrace() != null && !received.getTrace().isEmpty()) {
+                // События worker-а добавляются к хронологии задачи, клиенту результат передаётся без них
+                received.getTrace().forEach(trace::add);
+                trace.record(received.getTrace().get(0).getTraceId(), received.getTaskId(),
+                        "dispatcher.resultReceived", null);
+            }
+            completeTask(received.withTrace(null));
 
-            String workerId = taskToWorker.remove(result.getTaskId());
-            if (workerId != null) {
-                WorkerInfo worker = workers.get(workerId);
-                if (worker != null) {
-                    worker.removeTask(result.getTaskId());
-                }
+            sendSuccessResponse(exchange, "{\"status\":\"received\"}");
+            // Место на worker-е освободилось
+            drainQueue();
+        } catch (PayloadTooLargeException e) {
+            log.error("Task result rejected: {}", e.getMessage());
+            sendError(exchange, 413, e.getMessage());
+        } catch (Exception e) {
+            log.error("Error processing task result", e);
+            sendError(exchange, 400, "Invalid request: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Завершает выполнявшуюся на worker-е задачу: передаёт результат клиенту и ждавшим его задачам,
+     * освобождает место на worker-е. Результат задачи, которая уже не выполняется, игнорируется, поэтому
+     * worker может повторять отправку.
+     */
+    private void completeTask(TaskResult result) {
+        String workerId = taskToWorker.remove(result.getTaskId());
+        if (workerId == null) {
+            // Повтор уже принятого результата или результат задачи, завершённой как потерянная
+            log.debug("Ignoring result of task {}: the task is not running", result.getTaskId());
+            return;
+        }
+        Long assigned = assignedAt.remove(result.getTaskId());
+        List<String> fetched = fetchedBlobs.remove(result.getTaskId());
+        if (result.isSuccess() && fetched != null) {
+            fetched.forEach(hash -> blobLocations.recordHolder(hash, workerId));
+        }
+        WorkerInfo worker = workers.get(workerId);
+        if (worker != null) {
+            worker.removeTask(result.getTaskId());
+        }
+        WorkerMetrics perWorker = workerMetrics.get(workerId);
+        if (perWorker != null) {
+            perWorker.record(result.isSuccess(), assigned);
+        }
+        if (pool != null && assigned != null) {
+            pool.recordTurnaround(System.nanoTime() - assigned);
+        }
+        if (result.getResult() != null) {
+            resultPayloadBytes.record(result.getResult().length);
+        }
+
+        mailboxes.deliver(result);
+        memo.complete(result).forEach(mailboxes::deliver);
+
+        if (result.isSuccess() && dependencies.isProducer(result.getTaskId())) {
+            blobLocations.recordHolder(result.getTaskId().toString(), workerId);
+        }
+        dependencies.complete(result).forEach(this::dispatchDependent);
+        queue.finished(result.getTaskId());
+
+        if (result.isSuccess() && result.getResult() == null) {
+            log.debug("Task {} completed successfully. Result retained on worker {}", result.getTaskId(), workerId);
+        } else if (result.isSuccess()) {
+            if (log.isDebugEnabled()) {
+                log.debug("Task {} completed successfully. Result: {}",
+                        result.getTaskId(), describeResult(result));
+            }
+        } else {
+            log.warn("Task {} failed: {}", result.getTaskId(), result.getErrorMessage());
+        }
+    }
+
+    /**
+     * Возвращает строковое представление результата для лога. Пользовательские типы результата
+     * dispatcher-у недоступны, поэтому в этом случае выводится только размер.
+     */
+    private String describeResult(TaskResult result) {
+        try {
+            Codec codec = Codecs.forName(result.getCodec());
+            return String.valueOf(codec.decode(result.getResult(), getClass().getClassLoader()));
+        } catch (Exception e) {
+            return "<" + result.getResult().length + " bytes>";
+        }
+    }
+
+    /**
+     * Отдаёт клиенту пачку готовых результатов: GET /api/tasks/results?clientId=...&max=...&waitMs=...
+     * Если результатов нет, запрос ждёт их не дольше waitMs.
+     */
+    private void handlePollResults(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            sendError(exchange, 405, "Method not allowed");
+            return;
+        }
+
+        try {
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            String clientId = params.get("clientId");
+            if (clientId == null) {
+                sendError(exchange, 400, "clientId is required");
+                return;
             }
+            int maxResults = Math.max(1, Integer.parseInt(params.getOrDefault("max", "100")));
+            long waitMs = Math.min(Long.parseLong(params.getOrDefault("waitMs", "0")), MAX_POLL_WAIT.toMillis());
+
+            List<TaskResult> results = mailboxes.poll(clientId, maxResults, Duration.ofMillis(waitMs));
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            PayloadCompressor.Body body = compressor.prepare(TaskFrames.encodeResults(objectMapper, results),
+                    "dispatcher->client", acceptEncoding != null && acceptEncoding.contains(PayloadCompressor.ENCODING));
 
-            if (result.isSuccess()) {
-                Object deserializedResult;
-                try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(result.getResult()))) {
-                    deserializedResult = ois.readObject();
+            exchange.getResponseHeaders().set("Content-Type", TaskFrames.CONTENT_TYPE);
+            if (body.encoding() != null) {
+                exchange.getResponseHeaders().set("Content-Encoding", body.encoding());
+            }
+            long length = body.segments().stream().mapToLong(segment -> segment.length).sum();
+            exchange.sendResponseHeaders(200, length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                for (byte[] segment : body.segments()) {
+                    os.write(segment);
                 }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            sendError(exchange, 503, "Interrupted");
+        } catch (Exception e) {
+            log.error("Error polling task results", e);
+            sendError(exchange, 400, "Invalid request: " + e.getMessage());
+        }
+    }
 
-                log.info("Task {} completed successfully. Result: {}",
-                        result.getTaskId(), deserializedResult);
+    /**
+     * Отдаёт хронологию трассируемых задач: GET /api/traces?taskId=... или /api/traces?traceId=... -
+     * события в порядке времени, GET /api/traces?limit=... - идентификаторы последних трасс.
+     */
+    private void handleTraces(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            sendError(exchange, 405, "Method not allowed");
+            return;
+        }
+
+        try {
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            Object response;
+            if (params.containsKey("taskId")) {
+                response = trace.forTask(UUID.fromString(params.get("taskId")));
+            } else if (params.containsKey("traceId")) {
+                response = trace.forTrace(params.get("traceId"));
             } else {
-                log.warn("Task {} failed: {}", result.getTaskId(), result.getErrorMessage());
+                response = trace.recentTraces(Integer.parseInt(params.getOrDefault("limit", "50")));
             }
-
-            sendSuccessResponse(exchange, "{\"status\":\"received\"}");
+            sendSuccessResponse(exchange, objectMapper.writeValueAsString(response));
         } catch (Exception e) {
-            log.error("Error processing task result", e);
             sendError(exchange, 400, "Invalid request: " + e.getMessage());
         }
     }
 
     /**
-     * Выбирает worker для выполнения задачи по принципу минимальной загрузки.
+     * Оборачивает обработчик запросов, записывая время обработки в гистограмму.
+     */
+    private HttpHandler timed(String name, String help, HttpHandler handler) {
+        Histogram latency = metrics.histogram(name, help, Histogram.NANOS_TO_SECONDS,
+                Histogram.MIN_DURATION_NANOS, Histogram.MAX_DURATION_NANOS);
+        return exchange -> {
+            long start = System.nanoTime();
+            try {
+                handler.handle(exchange);
+            } finally {
+                latency.recordSince(start);
+            }
+        };
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            sendError(exchange, 405, "Method not allowed");
+            return;
+        }
+
+        byte[] response = metrics.scrape().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+        exchange.sendResponseHeaders(200, response.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(response);
+        }
+    }
+
+    /**
+     * Выбирает наименее загруженный доступный worker или worker, указанный в метаданных задачи.
+     * Доступен пакету для бенчмарков.
      */
+    WorkerInfo selectWorker(Task task) {
+        String requiredWorkerId = requiredWorkerId(task);
+        if (requiredWorkerId != null) {
+            // Выводимый из работы worker принимает задачи, адресованные ему, например сбор частичных значений
+            WorkerInfo worker = workers.get(requiredWorkerId);
+            return worker != null && worker.getStatus() != WorkerStatus.UNAVAILABLE ? worker : null;
+        }
+        return selectWorker();
+    }
+
+    /**
+     * Выбирает доступный worker, который хранит больше всего результатов зависимостей задачи, при равенстве -
+     * менее загруженный. Если таких нет, выбирает наименее загруженный worker.
+     */
+    private WorkerInfo selectWorkerNearInputs(Task task) {
+        Map<String, Integer> heldInputs = new HashMap<>();
+        for (UUID dependency : task.getDependencies()) {
+            blobLocations.getHolders(dependency.toString()).forEach(id -> heldInputs.merge(id, 1, Integer::sum));
+        }
+        return heldInputs.entrySet().stream()
+                .filter(entry -> workers.get(entry.getKey()) != null
+                        && workers.get(entry.getKey()).getStatus() == WorkerStatus.ALIVE)
+                .max(Comparator.<Map.Entry<String, Integer>>comparingInt(Map.Entry::getValue)
+                        .thenComparing(entry -> -workers.get(entry.getKey()).getActiveTasks()))
+                .map(entry -> workers.get(entry.getKey()))
+                .orElseGet(this::selectWorker);
+    }
+
     private WorkerInfo selectWorker() {
         return workers.values().stream()
                 .filter(w -> w.getStatus() == WorkerStatus.ALIVE)
@@ -269,6 +1270,10 @@ public class DispatcherServer {
                 .orElse(null);
     }
 
+    private static String requiredWorkerId(Task task) {
+        return task.getMetadata() != null ? task.getMetadata().getWorkerId() : null;
+    }
+
     private void sendSuccessResponse(HttpExchange exchange, String response) throws IOException {
         sendResponse(exchange, 200, response);
     }
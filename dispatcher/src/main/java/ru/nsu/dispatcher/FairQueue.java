@@ -0,0 +1,157 @@
+package ru.nsu.dispatcher;
+
+import ru.nsu.model.Task;
+import ru.nsu.model.WorkerInfo;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Задачи, ожидающие свободного места на worker-ах, с разделением worker-ов между арендаторами.
+ * У каждого арендатора своя очередь, очереди обслуживаются по кругу (deficit round robin): в свой ход арендатор
+ * отправляет столько задач, каков его вес. Время выполнения задачи заранее неизвестно, поэтому все задачи
+ * считаются одинаково дорогими. Задача арендатора ждёт не дольше одного круга, сколько бы задач ни поставили
+ * другие, а если остальные очереди пусты, один арендатор занимает все свободные места.
+ * Число выполняющихся задач арендатора можно ограничить.
+ */
+class FairQueue {
+    private final Map<String, Integer> weights;
+    private final Map<String, Integer> maxRunning;
+    private final int defaultMaxRunning;
+    private final Map<String, Tenant> tenants = new HashMap<>();
+    /**
+     * Арендаторы, у которых есть задачи в очереди, в порядке обхода.
+     */
+    private final Deque<Tenant> active = new ArrayDeque<>();
+    private final Map<UUID, Tenant> running = new HashMap<>();
+    private int size;
+
+    /**
+     * @param weights           веса арендаторов, по умолчанию 1
+     * @param maxRunning        ограничения числа выполняющихся задач арендаторов
+     * @param defaultMaxRunning ограничение для остальных арендаторов, 0 - без ограничения
+     */
+    FairQueue(Map<String, Integer> weights, Map<String, Integer> maxRunning, int defaultMaxRunning) {
+        this.weights = weights;
+        this.maxRunning = maxRunning;
+        this.defaultMaxRunning = defaultMaxRunning;
+    }
+
+    synchronized void add(String tenantId, Task task) {
+        Tenant tenant = tenants.computeIfAbsent(tenantId, Tenant::new);
+        if (tenant.queue.isEmpty()) {
+            active.addLast(tenant);
+        }
+        tenant.queue.addLast(new Entry(task, System.nanoTime()));
+        size++;
+    }
+
+    /**
+     * Выбирает следующую задачу и место для неё.
+     * @param reserve занимает место на worker-е для задачи, null - свободных мест нет
+     * @return null, если очередь пуста, мест нет или все арендаторы с задачами достигли ограничения
+     */
+    synchronized Placement poll(Function<Task, WorkerInfo> reserve) {
+        for (int i = 0, tenantsWithTasks = active.size(); i < tenantsWithTasks; i++) {
+            Tenant tenant = active.peekFirst();
+            if (tenant.running >= tenant.maxRunning) {
+                // Пропускает ход, сохраняя остаток кванта
+                active.addLast(active.pollFirst());
+                continue;
+            }
+            WorkerInfo worker = reserve.apply(tenant.queue.peekFirst().task());
+            if (worker == null) {
+                return null;
+            }
+
+            Entry entry = tenant.queue.pollFirst();
+            size--;
+            if (tenant.deficit == 0) {
+                tenant.deficit = tenant.weight;
+            }
+            tenant.deficit--;
+            tenant.running++;
+            running.put(entry.task().getTaskId(), tenant);
+            if (tenant.queue.isEmpty()) {
+                // Опустевшая очередь не копит квант
+                active.pollFirst();
+                tenant.deficit = 0;
+            } else if (tenant.deficit == 0) {
+                active.addLast(active.pollFirst());
+            }
+            return new Placement(entry.task(), worker, System.nanoTime() - entry.enqueuedAt());
+        }
+        return null;
+    }
+
+    /**
+     * Освобождает место арендатора, когда выданная задача завершилась или не была отправлена.
+     */
+    synchronized void finished(UUID taskId) {
+        Tenant tenant = running.remove(taskId);
+        if (tenant != null) {
+            tenant.running--;
+            if (tenant.running == 0 && tenant.queue.isEmpty()) {
+                tenants.remove(tenant.id);
+            }
+        }
+    }
+
+    /**
+     * Число задач в очереди.
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Разбирает список вида {@code tenantA:4,tenantB:1}.
+     */
+    static Map<String, Integer> parseTenantValues(String value) {
+        Map<String, Integer> values = new HashMap<>();
+        if (value == null || value.isBlank()) {
+            return values;
+        }
+        for (String pair : value.split(",")) {
+            int colon = pair.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Expected tenant:value, got '" + pair + "'");
+            }
+            values.put(pair.substring(0, colon).trim(), Integer.parseInt(pair.substring(colon + 1).trim()));
+        }
+        return values;
+    }
+
+    /**
+     * Задача, выданная очередью, и worker, на котором для неё занято место.
+     * @param queuedNanos сколько задача ждала в очереди
+     */
+    record Placement(Task task, WorkerInfo worker, long queuedNanos) {
+    }
+
+    private record Entry(Task task, long enqueuedAt) {
+    }
+
+    private class Tenant {
+        private final String id;
+        private final int weight;
+        private final int maxRunning;
+        private final Deque<Entry> queue = new ArrayDeque<>();
+        /**
+         * Сколько задач арендатор ещё может отправить в текущий ход.
+         */
+        private int deficit;
+        private int running;
+
+        private Tenant(String id) {
+            this.id = id;
+            this.weight = Math.max(1, weights.getOrDefault(id, 1));
+            int limit = FairQueue.this.maxRunning.getOrDefault(id, defaultMaxRunning);
+            this.maxRunning = limit > 0 ? limit : Integer.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package ru.nsu.dispatcher;
+
+import ru.nsu.model.TaskResult;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Очереди готовых результатов для клиентов.
+ * Клиент передаёт свой идентификатор при отправке задачи и забирает результаты пачками через long polling.
+ */
+public class ResultMailboxes {
+    private final Map<UUID, String> taskToClient = new ConcurrentHashMap<>();
+    private final Map<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+
+    /**
+     * Запоминает, какому клиенту доставить результат задачи.
+     */
+    public void register(UUID taskId, String clientId) {
+        taskToClient.put(taskId, clientId);
+        mailbox(clientId);
+    }
+
+    public void unregister(UUID taskId) {
+        taskToClient.remove(taskId);
+    }
+
+    /**
+     * Кладёт результат в очередь клиента, отправившего задачу.
+     * @return false, если задача была отправлена без идентификатора клиента
+     */
+    public boolean deliver(TaskResult result) {
+        String clientId = taskToClient.remove(result.getTaskId());
+        if (clientId == null) {
+            return false;
+        }
+        mailbox(clientId).results.add(result);
+        return true;
+    }
+
+    /**
+     * Возвращает до maxResults готовых результатов клиента, ожидая первый из них не дольше wait.
+     */
+    public List<TaskResult> poll(String clientId, int maxResults, Duration wait) throws InterruptedException {
+        Mailbox mailbox = mailbox(clientId);
+        List<TaskResult> results = new ArrayList<>();
+        TaskResult first = mailbox.results.poll(wait.toMillis(), TimeUnit.MILLISECONDS);
+        if (first != null) {
+            results.add(first);
+            mailbox.results.drainTo(results, maxResults - 1);
+        }
+        mailbox.lastAccess = System.nanoTime();
+        return results;
+    }
+
+    /**
+     * Число результатов, которые ещё не забрали клиенты.
+     */
+    public long undelivered() {
+        long count = 0;
+        for (Mailbox mailbox : mailboxes.values()) {
+            count += mailbox.results.size();
+        }
+        return count;
+    }
+
+    /**
+     * Удаляет очереди клиентов, которые не обращались за результатами дольше idleTimeout и не ждут задач.
+     */
+    public void evictIdle(Duration idleTimeout) {
+        long now = System.nanoTime();
+        mailboxes.entrySet().removeIf(entry -> now - entry.getValue().lastAccess > idleTimeout.toNanos()
+                && !taskToClient.containsValue(entry.getKey()));
+    }
+
+    private Mailbox mailbox(String clientId) {
+        return mailboxes.computeIfAbsent(clientId, id -> new Mailbox());
+    }
+
+    private static final class Mailbox {
+        private final BlockingQueue<TaskResult> results = new LinkedBlockingQueue<>();
+        private volatile long lastAccess = System.nanoTime();
+    }
+}
@@ -0,0 +1,210 @@
+package ru.nsu.dispatcher;
+
+import ru.nsu.common.HashUtils;
+import ru.nsu.common.metrics.Counter;
+import ru.nsu.common.metrics.MetricsRegistry;
+import ru.nsu.model.Task;
+import ru.nsu.model.TaskMetadata;
+import ru.nsu.model.TaskResult;
+import ru.nsu.model.TaskType;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Кэш результатов детерминированных задач ({@link TaskMetadata#isDeterministic()}).
+ * <p>
+ * Ключ - хэш кода, класса, метода, аргументов и формата сериализации задачи. Задача с ключом, результат которого
+ * уже сохранён, получает его без выполнения. Пока первая задача с таким ключом выполняется, одинаковые задачи
+ * не отправляются на worker-ы, а ждут её результат. Хранятся только успешные результаты: не дольше ttl, не больше
+ * maxEntries и maxBytes, при переполнении вытесняются давно не запрошенные.
+ */
+public class ResultMemo {
+    private final int maxEntries;
+    private final long maxBytes;
+    private final Duration ttl;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * Ключ выполняющейся задачи -> задачи, ожидающие её результат.
+     */
+    private final Map<String, List<UUID>> inFlight = new HashMap<>();
+    private final Map<UUID, String> leaders = new HashMap<>();
+    private long bytes;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter coalesced;
+    private final Counter savedNanos;
+    private final Counter expired;
+    private final Counter evicted;
+
+    public ResultMemo(int maxEntries, long maxBytes, Duration ttl, MetricsRegistry metrics) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.ttl = ttl;
+        String lookups = "memo_lookups_total";
+        String lookupsHelp = "Deterministic tasks by memo cache outcome";
+        this.hits = metrics.counter(lookups, lookupsHelp, "outcome", "hit");
+        this.misses = metrics.counter(lookups, lookupsHelp, "outcome", "miss");
+        this.coalesced = metrics.counter(lookups, lookupsHelp, "outcome", "coalesced");
+        this.savedNanos = metrics.counter("memo_saved_execution_nanoseconds_total",
+                "Worker execution time not spent thanks to cached and coalesced results");
+        this.expired = metrics.counter("memo_evictions_total", "Results removed from memo cache", "reason", "ttl");
+        this.evicted = metrics.counter("memo_evictions_total", "Results removed from memo cache", "reason", "size");
+    }
+
+    /**
+     * Возвращает ключ задачи или null, если её результат нельзя переиспользовать. Не кэшируются задачи графа
+     * и задачи, меняющие состояние worker-а (REDUCE, COLLECT).
+     */
+    public static String key(Task task) {
+        TaskMetadata metadata = task.getMetadata();
+        TaskType type = task.getType() != null ? task.getType() : TaskType.CALL;
+        if (metadata == null || !metadata.isDeterministic() || metadata.isIntermediate() || metadata.getConsumers() > 0
+                || (type != TaskType.CALL && type != TaskType.MAP)
+                || (task.getDependencies() != null && !task.getDependencies().isEmpty())
+                || task.getCodeHash() == null || task.getArguments() == null) {
+            return null;
+        }
+
+        // Аргументы хэшируются только здесь: для остальных задач dispatcher их не просматривает
+        String argumentsHash = HashUtils.sha256Hex(task.getArguments());
+        MessageDigest digest = HashUtils.sha256();
+        for (String part : new String[]{type.name(), task.getCodeHash(), task.getClassName(), task.getMethodName(),
+                argumentsHash, metadata.getCodec()}) {
+            digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        if (task.getFunction() != null) {
+            digest.update(task.getFunction());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Возвращает сохранённый результат задачи с ключом key, переадресованный задаче taskId.
+     * @return null, если результата нет
+     */
+    public synchronized TaskResult cached(String key, UUID taskId) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(ttl)) {
+            remove(key);
+            expired.inc();
+            return null;
+        }
+        hits.inc();
+        savedNanos.add(entry.result.getExecutionNanos());
+        return entry.result.withTaskId(taskId);
+    }
+
+    /**
+     * Регистрирует задачу перед отправкой на worker.
+     * @return true, если задачу нужно выполнить; false, если такая же задача уже выполняется и эта задача получит
+     * её результат из {@link #complete(TaskResult)}
+     */
+    public synchronized boolean lead(String key, UUID taskId) {
+        List<UUID> followers = inFlight.get(key);
+        if (followers != null) {
+            followers.add(taskId);
+            coalesced.inc();
+            return false;
+        }
+        inFlight.put(key, new ArrayList<>());
+        leaders.put(taskId, key);
+        misses.inc();
+        return true;
+    }
+
+    /**
+     * Сохраняет успешный результат выполненной задачи.
+     * @return копии результата для задач, ждавших её выполнения
+     */
+    public synchronized List<TaskResult> complete(TaskResult result) {
+        String key = leaders.remove(result.getTaskId());
+        if (key == null) {
+            return List.of();
+        }
+        List<UUID> followers = inFlight.remove(key);
+        if (result.isSuccess() && result.getResult() != null && result.getResult().length <= maxBytes) {
+            remove(key);
+            entries.put(key, new Entry(result));
+            bytes += result.getResult().length;
+            evictOverflow();
+        }
+
+        List<TaskResult> copies = new ArrayList<>(followers.size());
+        for (UUID follower : followers) {
+            copies.add(result.withTaskId(follower));
+        }
+        if (result.isSuccess()) {
+            savedNanos.add(result.getExecutionNanos() * followers.size());
+        }
+        return copies;
+    }
+
+    /**
+     * Снимает регистрацию задачи, которую не удалось отправить на worker.
+     * @return задачи, ждавшие её выполнения
+     */
+    public synchronized List<UUID> abandon(UUID taskId) {
+        String key = leaders.remove(taskId);
+        return key != null ? inFlight.remove(key) : List.of();
+    }
+
+    /**
+     * Удаляет результаты старше ttl.
+     */
+    public synchronized void evictExpired() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.isExpired(ttl)) {
+                iterator.remove();
+                bytes -= entry.result.getResult().length;
+                expired.inc();
+            }
+        }
+    }
+
+    private void evictOverflow() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            bytes -= eldest.result.getResult().length;
+            evicted.inc();
+        }
+    }
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            bytes -= entry.result.getResult().length;
+        }
+    }
+
+    private static final class Entry {
+        private final TaskResult result;
+        private final long storedAt = System.nanoTime();
+
+        private Entry(TaskResult result) {
+            this.result = result;
+        }
+
+        private boolean isExpired(Duration ttl) {
+            return System.nanoTime() - storedAt > ttl.toNanos();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package ru.nsu.dispatcher;
+
+import ru.nsu.model.Task;
+import ru.nsu.model.TaskResult;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Зависимости между задачами графа.
+ * Задача, зависящая от незавершённых задач, ждёт здесь, пока они не завершатся. Задача-производитель может прийти
+ * позже зависимой: клиент отправляет задачи параллельно, поэтому неизвестная зависимость тоже считается
+ * незавершённой, а если она так и не придёт, ожидающая задача завершается ошибкой по {@link #evictIdle}.
+ * Задача, замыкающая цикл зависимостей, не принимается ({@link #findCycle}): задачи цикла ждали бы друг друга вечно.
+ */
+public class TaskDependencies {
+    private final Map<UUID, Producer> producers = new HashMap<>();
+    /**
+     * Задачи, ожидающие незавершённые зависимости.
+     */
+    private final Map<UUID, Waiting> pending = new HashMap<>();
+
+    /**
+     * Регистрирует принятую задачу, результат которой прочитают consumers зависимых задач. Вызывается, как только
+     * задача принята (поставлена в ожидание, в очередь или отправлена), а не при отправке на worker: иначе долго
+     * ожидающий производитель выглядел бы не отправленным клиентом и вытеснялся бы по {@link #evictIdle}.
+     */
+    public synchronized void expect(UUID taskId, int consumers) {
+        Producer producer = producers.computeIfAbsent(taskId, id -> new Producer());
+        producer.expected = true;
+        producer.unclaimed = consumers;
+    }
+
+    /**
+     * Проверяет, ждут ли результат задачи зависимые задачи, то есть хранит ли его worker.
+     */
+    public synchronized boolean isProducer(UUID taskId) {
+        Producer producer = producers.get(taskId);
+        return producer != null && producer.expected;
+    }
+
+    /**
+     * Число задач, ожидающих завершения зависимостей.
+     */
+    public synchronized int waitingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Проверяет, не зависит ли какая-нибудь из ожидающих зависимостей задачи от неё самой.
+     * @return сообщение об ошибке, null - цикла нет
+     */
+    public synchronized String findCycle(Task task) {
+        Deque<UUID> unvisited = new ArrayDeque<>(distinct(task));
+        Set<UUID> visited = new HashSet<>();
+        while (!unvisited.isEmpty()) {
+            UUID dependency = unvisited.pop();
+            if (dependency.equals(task.getTaskId())) {
+                return "Dependencies of task " + task.getTaskId() + " form a cycle through " + visited;
+            }
+            Waiting waiting = pending.get(dependency);
+            if (waiting != null && visited.add(dependency)) {
+                unvisited.addAll(distinct(waiting.task));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Ставит задачу в ожидание её зависимостей.
+     * @return true, если все зависимости уже завершены и задачу можно отправлять на worker
+     */
+    public synchronized boolean park(Task task) {
+        int unfinished = 0;
+        for (UUID dependency : distinct(task)) {
+            Producer producer = producers.computeIfAbsent(dependency, id -> new Producer());
+            producer.consumers.add(task.getTaskId());
+            if (producer.outcome == null) {
+                producer.waiting.add(task);
+                unfinished++;
+            }
+        }
+        if (unfinished == 0) {
+            return true;
+        }
+        pending.put(task.getTaskId(), new Waiting(task, unfinished));
+        return false;
+    }
+
+    /**
+     * Запоминает результат задачи-производителя.
+     * @return ожидавшие задачи, у которых теперь завершены все зависимости
+     */
+    public synchronized List<Task> complete(TaskResult result) {
+        Producer producer = producers.get(result.getTaskId());
+        if (producer == null) {
+            return List.of();
+        }
+        producer.outcome = result.withResult(null);
+        producer.touch();
+
+        List<Task> ready = new ArrayList<>();
+        for (Task task : producer.waiting) {
+            Waiting waiting = pending.get(task.getTaskId());
+            if (waiting == null) {
+                continue;
+            }
+            if (--waiting.unfinished == 0) {
+                pending.remove(task.getTaskId());
+                ready.add(task);
+            }
+        }
+        producer.waiting.clear();
+        return ready;
+    }
+
+    /**
+     * Засчитывает чтение результатов зависимостей задачей, готовой к отправке.
+     * @return сообщение об ошибке первой неуспешной зависимости, null - все зависимости выполнены успешно
+     */
+    public synchronized String claimInputs(Task task) {
+        String failure = null;
+        for (UUID dependency : distinct(task)) {
+            Producer producer = producers.get(dependency);
+            if (producer == null || producer.outcome == null) {
+                failure = failure != null ? failure : "Dependency " + dependency + " is unknown";
+                continue;
+            }
+            if (!producer.outcome.isSuccess() && failure == null) {
+                failure = "Dependency " + dependency + " failed: " + producer.outcome.getErrorMessage();
+            }
+            producer.touch();
+            producer.consumers.remove(task.getTaskId());
+            if (--producer.unclaimed <= 0) {
+                producers.remove(dependency);
+            }
+        }
+        return failure;
+    }
+
+    /**
+     * Забывает завершённые задачи, результат которых дольше idleTimeout никто не читал, и задачи, которые столько же
+     * ждут так и не отправленную зависимость. Принятые, но ещё не завершённые производители не вытесняются, как и
+     * завершённые, результат которых прочитает задача, всё ещё ждущая другие зависимости.
+     * @return ожидавшие задачи, которые больше не будут отправлены
+     */
+    public synchronized List<Task> evictIdle(Duration idleTimeout) {
+        long now = System.nanoTime();
+        List<Task> abandoned = new ArrayList<>();
+        Iterator<Producer> iterator = producers.values().iterator();
+        while (iterator.hasNext()) {
+            Producer producer = iterator.next();
+            if (now - producer.updatedAt <= idleTimeout.toNanos() || producer.expected && producer.outcome == null
+                    || producer.outcome != null && producer.consumers.stream().anyMatch(pending::containsKey)) {
+                continue;
+            }
+            for (Task task : producer.waiting) {
+                if (pending.remove(task.getTaskId()) != null) {
+                    abandoned.add(task);
+                }
+            }
+            iterator.remove();
+        }
+        return abandoned;
+    }
+
+    private static Set<UUID> distinct(Task task) {
+        return task.getDependencies() != null ? new LinkedHashSet<>(task.getDependencies()) : Set.of();
+    }
+
+    private static final class Waiting {
+        private final Task task;
+        private int unfinished;
+
+        private Waiting(Task task, int unfinished) {
+            this.task = task;
+            this.unfinished = unfinished;
+        }
+    }
+
+    private static final class Producer {
+        private final List<Task> waiting = new ArrayList<>();
+        /**
+         * Зависимые задачи, которые ещё не прочитали результат.
+         */
+        private final Set<UUID> consumers = new HashSet<>();
+        private boolean expected;
+        private int unclaimed;
+        private TaskResult outcome;
+        private long updatedAt = System.nanoTime();
+
+        private void touch() {
+            updatedAt = System.nanoTime();
+        }
+    }
+}
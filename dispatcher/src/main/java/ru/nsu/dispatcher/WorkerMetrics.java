@@ -0,0 +1,35 @@
+package ru.nsu.dispatcher;
+
+import ru.nsu.common.metrics.Counter;
+import ru.nsu.common.metrics.Histogram;
+import ru.nsu.common.metrics.MetricsRegistry;
+
+/**
+ * Метрики одного worker-а: число завершённых задач и время от назначения задачи до получения её результата.
+ * Создаются при регистрации worker-а, чтобы при получении результата не искать их в реестре.
+ */
+class WorkerMetrics {
+    private final Counter succeeded;
+    private final Counter failed;
+    private final Histogram turnaround;
+
+    WorkerMetrics(MetricsRegistry metrics, String workerId) {
+        String results = "dispatcher_task_results_total";
+        String resultsHelp = "Task results received from a worker";
+        this.succeeded = metrics.counter(results, resultsHelp, "worker", workerId, "outcome", "success");
+        this.failed = metrics.counter(results, resultsHelp, "worker", workerId, "outcome", "failure");
+        this.turnaround = metrics.histogram("dispatcher_task_turnaround_seconds",
+                "Time from assigning a task to a worker to receiving its result", Histogram.NANOS_TO_SECONDS,
+                Histogram.MIN_DURATION_NANOS, Histogram.MAX_DURATION_NANOS, "worker", workerId);
+    }
+
+    /**
+     * @param assignedAt время назначения задачи по {@link System#nanoTime()}, null - неизвестно
+     */
+    void record(boolean success, Long assignedAt) {
+        (success ? succeeded : failed).inc();
+        if (assignedAt != null) {
+            turnaround.recordSince(assignedAt);
+        }
+    }
+}
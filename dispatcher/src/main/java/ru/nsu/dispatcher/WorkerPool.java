@@ -0,0 +1,336 @@
+package ru.nsu.dispatcher;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.nsu.common.metrics.Counter;
+import ru.nsu.common.metrics.MetricsRegistry;
+import ru.nsu.model.WorkerInfo;
+import ru.nsu.model.WorkerStatus;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Пул локальных worker-процессов, которыми управляет dispatcher.
+ * Пул запускает worker-ы, когда задачи копятся в очереди dispatcher-а и в очередях worker-ов, выполняются дольше
+ * порога или им не нашлось worker-а. Простаивающий worker сначала переводится в {@link WorkerStatus#DRAINING} и получает
+ * только адресованные ему задачи, а когда его задачи завершатся, процесс останавливается. Worker, который хранит данные, которых
+ * больше ни у кого нет (результаты для зависимых задач, частичные значения map-reduce), не выводится из работы,
+ * а уже выводимый не останавливается, пока эти данные не заберут. Число процессов держится в границах
+ * [minWorkers, maxWorkers], между изменениями размера пула проходит не меньше cooldown.
+ * Worker-ы, запущенные не пулом, он не останавливает.
+ */
+@Slf4j
+class WorkerPool {
+    /**
+     * Период проверки нагрузки.
+     */
+    static final Duration CHECK_INTERVAL = Duration.ofSeconds(2);
+    /**
+     * Сколько ждать регистрации запущенного worker-а, прежде чем остановить его процесс.
+     */
+    private static final Duration STARTUP_TIMEOUT = Duration.ofMinutes(1);
+
+    private final Settings settings;
+    private final URI dispatcherUrl;
+    private final Map<String, WorkerInfo> workers;
+    private final IntSupplier queuedOnDispatcher;
+    private final Predicate<String> canRetire;
+    private final Consumer<String> onRetired;
+    private final Map<String, Process> processes = new ConcurrentHashMap<>();
+    private final Map<String, Instant> launchedAt = new ConcurrentHashMap<>();
+    /**
+     * С какого момента worker пула простаивает. Используется только в {@link #check()}.
+     */
+    private final Map<String, Instant> idleSince = new HashMap<>();
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final LongAdder turnaroundNanos = new LongAdder();
+    private final LongAdder turnarounds = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final Counter scaledUp;
+    private final Counter scaledDown;
+    private Instant lastResize = Instant.EPOCH;
+
+    /**
+     * @param workers   реестр worker-ов dispatcher-а
+     * @param queuedOnDispatcher число задач, ожидающих места на worker-ах в очереди dispatcher-а
+     * @param canRetire можно ли остановить worker, не потеряв данные, которых больше ни у кого нет
+     * @param onRetired удаляет остановленный worker из реестра dispatcher-а и завершает ошибкой его задачи
+     */
+    WorkerPool(Settings settings, URI dispatcherUrl, Map<String, WorkerInfo> workers, IntSupplier queuedOnDispatcher,
+               Predicate<String> canRetire, Consumer<String> onRetired, MetricsRegistry metrics) {
+        this.settings = settings;
+        this.dispatcherUrl = dispatcherUrl;
+        this.workers = workers;
+        this.queuedOnDispatcher = queuedOnDispatcher;
+        this.canRetire = canRetire;
+        this.onRetired = onRetired;
+        String resizes = "dispatcher_pool_resizes_total";
+        String resizesHelp = "Worker processes started or retired by the pool";
+        this.scaledUp = metrics.counter(resizes, resizesHelp, "direction", "up");
+        this.scaledDown = metrics.counter(resizes, resizesHelp, "direction", "down");
+        metrics.gauge("dispatcher_pool_workers", "Worker processes managed by the pool", processes::size);
+    }
+
+    /**
+     * Учитывает время от назначения задачи до получения её результата.
+     */
+    void recordTurnaround(long nanos) {
+        turnaroundNanos.add(nanos);
+        turnarounds.increment();
+    }
+
+    /**
+     * Учитывает задачу, которую не удалось назначить: доступных worker-ов не было.
+     */
+    void recordRejected() {
+        rejected.increment();
+    }
+
+    /**
+     * Сравнивает нагрузку с порогами и запускает или выводит из работы worker-ы.
+     * Вызывается периодически из одного потока.
+     */
+    void check() {
+        try {
+            Instant now = Instant.now();
+            reapExited(now);
+
+            int alive = 0;
+            int queued = queuedOnDispatcher.getAsInt();
+            int slots = 0;
+            for (WorkerInfo worker : workers.values()) {
+                if (worker.getStatus() == WorkerStatus.ALIVE) {
+                    alive++;
+                    queued += worker.getQueuedTasks();
+                    slots += Math.max(1, worker.getSlots());
+                }
+            }
+            long count = turnarounds.sumThenReset();
+            long meanTurnaround = count > 0 ? turnaroundNanos.sumThenReset() / count : 0;
+            long rejectedTasks = rejected.sumThenReset();
+            boolean overloaded = rejectedTasks > 0
+                    || queued > settings.queuedPerWorker() * Math.max(1, alive)
+                    || (!settings.turnaroundThreshold().isZero()
+                    && meanTurnaround > settings.turnaroundThreshold().toNanos());
+
+            retireDrained();
+            trackIdle(now);
+
+            int running = countManaged(WorkerStatus.ALIVE) + countStarting();
+            if (running < settings.minWorkers()) {
+                for (int i = running; i < settings.minWorkers(); i++) {
+                    launch();
+                }
+                return;
+            }
+            if (now.isBefore(lastResize.plus(settings.cooldown()))) {
+                return;
+            }
+
+            if (overloaded) {
+                scaleUp(queued, alive > 0 ? slots / alive : 1);
+                lastResize = now;
+            } else if (queued == 0 && running > settings.minWorkers()) {
+                idleSince.entrySet().stream()
+                        .filter(entry -> !entry.getValue().plus(settings.idleTimeout()).isAfter(now))
+                        .map(Map.Entry::getKey)
+                        .filter(canRetire)
+                        .findFirst()
+                        .ifPresent(workerId -> {
+                            drain(workerId);
+                            lastResize = now;
+                        });
+            }
+        } catch (Exception e) {
+            log.error("Worker pool check failed", e);
+        }
+    }
+
+    /**
+     * Останавливает все процессы пула.
+     */
+    void shutdown() {
+        processes.values().forEach(Process::destroy);
+        processes.clear();
+        launchedAt.clear();
+    }
+
+    /**
+     * Добавляет мощность пулу: сначала возвращает в работу выводимые worker-ы, затем запускает новые,
+     * по одному на каждые slotsPerWorker задач в очередях.
+     */
+    private void scaleUp(int queued, int slotsPerWorker) {
+        // Пока запущенные процессы не зарегистрировались, их мощность ещё не видна в нагрузке
+        if (countStarting() > 0) {
+            return;
+        }
+        int wanted = Math.max(1, queued / Math.max(1, slotsPerWorker));
+        for (String workerId : List.copyOf(processes.keySet())) {
+            WorkerInfo worker = workers.get(workerId);
+            if (wanted > 0 && worker != null && worker.getStatus() == WorkerStatus.DRAINING) {
+                workers.computeIfPresent(workerId, (id, w) -> w.withStatus(WorkerStatus.ALIVE));
+                log.info("Pool worker {} returned to service", workerId);
+                wanted--;
+            }
+        }
+        int toStart = Math.min(wanted, settings.maxWorkers() - processes.size());
+        for (int i = 0; i < toStart; i++) {
+            launch();
+        }
+    }
+
+    private void launch() {
+        String workerId = "pool-worker-" + sequence.incrementAndGet();
+        try {
+            int port = freePort();
+            List<String> command = new ArrayList<>(settings.command());
+            command.addAll(List.of(String.valueOf(port), dispatcherUrl.toString(), workerId));
+            Process process = new ProcessBuilder(command).inheritIO().start();
+            processes.put(workerId, process);
+            launchedAt.put(workerId, Instant.now());
+            scaledUp.inc();
+            log.info("Started pool worker {} on port {} (pid {})", workerId, port, process.pid());
+        } catch (IOException e) {
+            log.error("Failed to start pool worker {}", workerId, e);
+        }
+    }
+
+    private void drain(String workerId) {
+        idleSince.remove(workerId);
+        workers.computeIfPresent(workerId, (id, worker) -> worker.withStatus(WorkerStatus.DRAINING));
+        log.info("Draining idle pool worker {}", workerId);
+    }
+
+    /**
+     * Останавливает выводимые worker-ы, у которых не осталось задач.
+     */
+    private void retireDrained() {
+        for (String workerId : List.copyOf(processes.keySet())) {
+            WorkerInfo worker = workers.get(workerId);
+            if (worker != null && worker.getStatus() == WorkerStatus.DRAINING && worker.getActiveTasks() == 0
+                    && canRetire.test(workerId)) {
+                onRetired.accept(workerId);
+                launchedAt.remove(workerId);
+                processes.remove(workerId).destroy();
+                scaledDown.inc();
+                log.info("Retired pool worker {}", workerId);
+            }
+        }
+    }
+
+    private void trackIdle(Instant now) {
+        idleSince.keySet().retainAll(processes.keySet());
+        for (String workerId : processes.keySet()) {
+            WorkerInfo worker = workers.get(workerId);
+            if (worker != null && worker.getStatus() == WorkerStatus.ALIVE && worker.getActiveTasks() == 0) {
+                idleSince.putIfAbsent(workerId, now);
+            } else {
+                idleSince.remove(workerId);
+            }
+        }
+    }
+
+    /**
+     * Убирает из пула процессы, завершившиеся сами, и останавливает те, что не зарегистрировались вовремя.
+     */
+    private void reapExited(Instant now) {
+        processes.entrySet().removeIf(entry -> {
+            String workerId = entry.getKey();
+            Process process = entry.getValue();
+            if (process.isAlive() && (workers.containsKey(workerId)
+                    || now.isBefore(launchedAt.get(workerId).plus(STARTUP_TIMEOUT)))) {
+                return false;
+            }
+            if (process.isAlive()) {
+                log.warn("Pool worker {} did not register in {}, stopping it", workerId, STARTUP_TIMEOUT);
+                process.destroy();
+            } else {
+                log.warn("Pool worker {} exited with code {}", workerId, process.exitValue());
+            }
+            launchedAt.remove(workerId);
+            onRetired.accept(workerId);
+            return true;
+        });
+    }
+
+    private int countManaged(WorkerStatus status) {
+        return (int) processes.keySet().stream()
+                .map(workers::get)
+                .filter(worker -> worker != null && worker.getStatus() == status)
+                .count();
+    }
+
+    /**
+     * Число запущенных процессов, которые ещё не зарегистрировались у dispatcher-а.
+     */
+    private int countStarting() {
+        return (int) processes.keySet().stream().filter(workerId -> !workers.containsKey(workerId)).count();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Параметры пула.
+     * @param command         команда запуска worker-а, к которой добавляются порт, адрес dispatcher-а и workerId
+     * @param queuedPerWorker сколько задач в среднем может ждать в очереди worker-а, прежде чем пул добавит worker
+     * @param turnaroundThreshold среднее время выполнения задач, выше которого пул добавляет worker, 0 - не учитывать
+     * @param idleTimeout     сколько worker должен простаивать, чтобы пул вывел его из работы
+     * @param cooldown        минимальный интервал между изменениями размера пула
+     */
+    record Settings(int minWorkers, int maxWorkers, List<String> command, int queuedPerWorker,
+                    Duration turnaroundThreshold, Duration idleTimeout, Duration cooldown) {
+
+        /**
+         * Читает параметры из системных свойств dispatcher.pool.*. Пул включается свойством
+         * dispatcher.pool.maxWorkers, classpath worker-а задаётся dispatcher.pool.workerClasspath.
+         * @return null, если пул выключен
+         */
+        static Settings fromSystemProperties() {
+            int maxWorkers = Integer.getInteger("dispatcher.pool.maxWorkers", 0);
+            if (maxWorkers <= 0) {
+                return null;
+            }
+            String classpath = System.getProperty("dispatcher.pool.workerClasspath");
+            if (classpath == null) {
+                throw new IllegalArgumentException(
+                        "dispatcher.pool.workerClasspath is required when dispatcher.pool.maxWorkers is set");
+            }
+            List<String> command = new ArrayList<>();
+            command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+            String jvmOptions = System.getProperty("dispatcher.pool.jvmOptions", "").trim();
+            if (!jvmOptions.isEmpty()) {
+                command.addAll(Arrays.asList(jvmOptions.split("\\s+")));
+            }
+            command.addAll(List.of("-cp", classpath,
+                    System.getProperty("dispatcher.pool.workerMainClass", "ru.nsu.Main")));
+
+            return new Settings(
+                    Math.min(Integer.getInteger("dispatcher.pool.minWorkers", 1), maxWorkers),
+                    maxWorkers,
+                    List.copyOf(command),
+                    Integer.getInteger("dispatcher.pool.queuedPerWorker", 2),
+                    Duration.ofMillis(Long.getLong("dispatcher.pool.turnaroundMs", 0)),
+                    Duration.ofSeconds(Long.getLong("dispatcher.pool.idleSeconds", 60)),
+                    Duration.ofSeconds(Long.getLong("dispatcher.pool.cooldownSeconds", 30)));
+        }
+    }
+}
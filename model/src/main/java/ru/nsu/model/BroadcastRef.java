@@ -0,0 +1,18 @@
+package ru.nsu.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.Serializable;
+
+/**
+ * Ссылка на broadcast-переменную в аргументах задачи.
+ * Перед вызовом worker подменяет её на read-only {@link java.nio.ByteBuffer}, отображённый на локальный файл.
+ */
+@Getter
+@AllArgsConstructor
+public class BroadcastRef implements Serializable {
+    @JsonProperty("broadcastId")
+    private final String broadcastId;
+}
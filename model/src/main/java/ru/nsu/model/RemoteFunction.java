@@ -0,0 +1,14 @@
+package ru.nsu.model;
+
+import java.io.Serializable;
+import java.util.function.Function;
+
+/**
+ * Функция, применяемая к элементам коллекции на worker-ах в parallel map ({@link TaskType#MAP}).
+ * На worker передаётся сериализованный экземпляр функции и байткод её класса с зависимостями. Для лямбды
+ * передаётся байткод класса, в котором она объявлена, а захваченные значения должны быть сериализуемыми.
+ * Интерфейс лежит в model, чтобы быть доступным worker-ам, на которых нет клиентской библиотеки.
+ */
+@FunctionalInterface
+public interface RemoteFunction<T, R> extends Function<T, R>, Serializable {
+}
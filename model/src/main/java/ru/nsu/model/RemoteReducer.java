@@ -0,0 +1,20 @@
+package ru.nsu.model;
+
+import java.io.Serializable;
+
+/**
+ * Map и ассоциативная свёртка для map-reduce ({@link TaskType#REDUCE}).
+ * Worker применяет {@link #map} к элементам своих чанков и сворачивает результаты через {@link #combine}
+ * в одно частичное значение, клиент сворачивает частичные значения worker-ов тем же {@link #combine}.
+ * <p>
+ * Класс должен быть именованным (не лямбдой), {@link #map} не должен возвращать null.
+ */
+public interface RemoteReducer<T, R> extends Serializable {
+
+    R map(T element);
+
+    /**
+     * Ассоциативная операция: порядок применения к частичным значениям не определён.
+     */
+    R combine(R left, R right);
+}
@@ -5,6 +5,9 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 
 import java.io.Serializable;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @Getter
@@ -12,6 +15,12 @@ import java.util.UUID;
 public class Task implements Serializable {
     @JsonProperty("taskId")
     private final UUID taskId;
+
+    /**
+     * Вид задачи, null означает {@link TaskType#CALL}.
+     */
+    @JsonProperty("type")
+    private final TaskType type;
     
     @JsonProperty("className")
     private final String className;
@@ -24,10 +33,56 @@ public class Task implements Serializable {
     
     @JsonProperty("arguments")
     private final byte[] arguments;
+
+    /**
+     * Сериализованная функция задач {@link TaskType#MAP} и {@link TaskType#REDUCE}, общая для всех чанков задания.
+     * Worker десериализует её один раз и переиспользует экземпляр.
+     */
+    @JsonProperty("function")
+    private final byte[] function;
     
     @JsonProperty("codeHash")
     private final String codeHash;
+
+    /**
+     * Идентификаторы broadcast-переменных, на которые ссылаются аргументы задачи.
+     */
+    @JsonProperty("broadcastIds")
+    private final List<String> broadcastIds;
+
+    /**
+     * Задачи, результаты которых передаются в аргументах по ссылке {@link TaskRef}.
+     * Dispatcher отправляет задачу на worker только после завершения всех этих задач.
+     */
+    @JsonProperty("dependencies")
+    private final List<UUID> dependencies;
+
+    /**
+     * Адреса peer-узлов, у которых можно забрать отсутствующие в задаче blob-ы по их ключу: код по хэшу,
+     * broadcast-переменные по идентификатору, результаты зависимостей по идентификатору задачи.
+     * Аргументы всегда передаются в теле задачи.
+     */
+    @JsonProperty("blobSources")
+    private final Map<String, URI> blobSources;
     
     @JsonProperty("metadata")
     private final TaskMetadata metadata;
+
+    public Task withTaskId(UUID taskId) {
+        return new Task(taskId, type, className, methodName, classBytes, arguments, function, codeHash,
+                broadcastIds, dependencies, blobSources, metadata);
+    }
+
+    public Task withMetadata(TaskMetadata metadata) {
+        return new Task(taskId, type, className, methodName, classBytes, arguments, function, codeHash,
+                broadcastIds, dependencies, blobSources, metadata);
+    }
+
+    /**
+     * Возвращает копию задачи с заменённым содержимым blob-ов и их источниками.
+     */
+    public Task withBlobs(byte[] classBytes, byte[] arguments, Map<String, URI> blobSources) {
+        return new Task(taskId, type, className, methodName, classBytes, arguments, function, codeHash,
+                broadcastIds, dependencies, blobSources, metadata);
+    }
 }
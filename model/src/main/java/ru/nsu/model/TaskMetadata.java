@@ -21,5 +21,68 @@ public class TaskMetadata implements Serializable {
     
     @JsonProperty("timeoutMs")
     private final long timeoutMs;
+
+    /**
+     * Формат сериализации аргументов и результата (см. ru.nsu.common.codec.Codecs), null - Java Serialization.
+     */
+    @JsonProperty("codec")
+    private final String codec;
+
+    /**
+     * Идентификатор задания, объединяющего несколько задач (например, чанки одного map-reduce).
+     */
+    @JsonProperty("jobId")
+    private final String jobId;
+
+    /**
+     * Worker, на котором должна выполниться задача, null - любой.
+     */
+    @JsonProperty("workerId")
+    private final String workerId;
+
+    /**
+     * Сколько задач получают результат этой задачи по {@link TaskRef}. Пока все они не прочитали результат,
+     * worker хранит его в памяти.
+     */
+    @JsonProperty("consumers")
+    private final int consumers;
+
+    /**
+     * Промежуточная задача: её результат нужен только зависимым задачам и не передаётся клиенту.
+     * Клиент получает лишь признак успеха или сообщение об ошибке.
+     */
+    @JsonProperty("intermediate")
+    private final boolean intermediate;
+
+    /**
+     * Результат задачи зависит только от её кода и аргументов. Dispatcher может вернуть сохранённый результат
+     * такой же задачи вместо повторного выполнения и объединяет одновременные одинаковые задачи в одно выполнение.
+     */
+    @JsonProperty("deterministic")
+    private final boolean deterministic;
+
+    /**
+     * Идентификатор трассы, null - задача не трассируется. Узлы записывают события этапов только
+     * для трассируемых задач, поэтому доля трассируемых задач определяет накладные расходы.
+     */
+    @JsonProperty("traceId")
+    private final String traceId;
+
+    /**
+     * Арендатор кластера, от имени которого отправлена задача, null - клиент, отправивший задачу.
+     * Dispatcher делит свободные worker-ы между арендаторами поровну с учётом их весов.
+     */
+    @JsonProperty("tenantId")
+    private final String tenantId;
+
+    public TaskMetadata withTraceId(String traceId) {
+        return new TaskMetadata(createdAt, priority, timeoutMs, codec, jobId, workerId, consumers, intermediate,
+                deterministic, traceId, tenantId);
+    }
+
+    public TaskMetadata withTenantId(String tenantId) {
+        return new TaskMetadata(createdAt, priority, timeoutMs, codec, jobId, workerId, consumers, intermediate,
+                deterministic, traceId, tenantId);
+    }
 }
 
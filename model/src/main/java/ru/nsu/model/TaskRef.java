@@ -0,0 +1,20 @@
+package ru.nsu.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.Serializable;
+import java.util.UUID;
+
+/**
+ * Ссылка на результат другой задачи в аргументах задачи.
+ * Перед вызовом worker подменяет её результатом задачи-производителя: объектом из памяти, если производитель
+ * выполнялся на этом же worker-е, иначе результатом, загруженным у worker-а, который его выполнил.
+ */
+@Getter
+@AllArgsConstructor
+public class TaskRef implements Serializable {
+    @JsonProperty("taskId")
+    private final UUID taskId;
+}
@@ -5,6 +5,7 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 
 import java.io.Serializable;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -25,12 +26,56 @@ public class TaskResult implements Serializable {
     @JsonProperty("errorMessage")
     private final String errorMessage;
 
-    public static TaskResult success(UUID taskId, byte[] result) {
-        return new TaskResult(taskId, true, result, null);
+    /**
+     * Формат сериализации результата.
+     */
+    @JsonProperty("codec")
+    private final String codec;
+
+    /**
+     * Время выполнения задачи на worker-е без учёта загрузки кода и данных, в наносекундах.
+     */
+    @JsonProperty("executionNanos")
+    private final long executionNanos;
+
+    /**
+     * Worker, выполнивший задачу.
+     */
+    @JsonProperty("workerId")
+    private final String workerId;
+
+    /**
+     * События трассы, записанные worker-ом при выполнении задачи, null - задача не трассируется.
+     */
+    @JsonProperty("trace")
+    private final List<TraceEvent> trace;
+
+    public TaskResult withTaskId(UUID taskId) {
+        return new TaskResult(taskId, success, result, errorMessage, codec, executionNanos, workerId, trace);
+    }
+
+    public TaskResult withResult(byte[] result) {
+        return new TaskResult(taskId, success, result, errorMessage, codec, executionNanos, workerId, trace);
+    }
+
+    public TaskResult withExecutionNanos(long executionNanos) {
+        return new TaskResult(taskId, success, result, errorMessage, codec, executionNanos, workerId, trace);
+    }
+
+    public TaskResult withWorkerId(String workerId) {
+        return new TaskResult(taskId, success, result, errorMessage, codec, executionNanos, workerId, trace);
+    }
+
+    public TaskResult withTrace(List<TraceEvent> trace) {
+        return new TaskResult(taskId, success, result, errorMessage, codec, executionNanos, workerId, trace);
+    }
+
+    public static TaskResult success(UUID taskId, byte[] result, String codec) {
+        return new TaskResult(taskId, true, result, null, codec, 0, null, null);
     }
 
     public static TaskResult failure(UUID taskId, String errorMessage) {
-        return new TaskResult(taskId, false, null, errorMessage);
+        return new TaskResult(taskId, false, null, errorMessage, null, 0, null, null);
     }
 }
 
@@ -0,0 +1,30 @@
+package ru.nsu.model;
+
+/**
+ * Вид задачи.
+ */
+public enum TaskType {
+    /**
+     * Вызов метода класса задачи с переданными аргументами.
+     */
+    CALL,
+
+    /**
+     * Применение функции к каждому элементу чанка коллекции.
+     * Функция ({@link RemoteFunction}) передаётся в {@link Task#getFunction()}, аргумент задачи - список элементов,
+     * результат - список результатов в том же порядке.
+     */
+    MAP,
+
+    /**
+     * Map чанка с последующей свёрткой в частичное значение задания ({@link TaskMetadata#getJobId()}),
+     * которое хранится на worker-е. Функция - {@link RemoteReducer}, аргумент - список элементов, результат - null.
+     */
+    REDUCE,
+
+    /**
+     * Возвращает частичное значение задания, накопленное worker-ом, и удаляет его.
+     * Выполняется на worker-е из {@link TaskMetadata#getWorkerId()}.
+     */
+    COLLECT
+}
@@ -0,0 +1,46 @@
+package ru.nsu.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.Serializable;
+import java.util.UUID;
+
+/**
+ * Отметка времени на границе этапа обработки задачи (отправка, назначение, загрузка кода, вызов и т.д.).
+ * Из событий всех узлов собирается хронология задачи.
+ */
+@Getter
+@AllArgsConstructor
+public class TraceEvent implements Serializable {
+    /**
+     * Идентификатор трассы: одна задача или несколько связанных задач (граф).
+     */
+    @JsonProperty("traceId")
+    private final String traceId;
+
+    @JsonProperty("taskId")
+    private final UUID taskId;
+
+    /**
+     * Узел, записавший событие: client, dispatcher или идентификатор worker-а.
+     */
+    @JsonProperty("node")
+    private final String node;
+
+    @JsonProperty("phase")
+    private final String phase;
+
+    /**
+     * Подробности этапа, например выбранный worker, null - нет.
+     */
+    @JsonProperty("detail")
+    private final String detail;
+
+    /**
+     * Время события в микросекундах от начала эпохи.
+     */
+    @JsonProperty("timestampMicros")
+    private final long timestampMicros;
+}
@@ -8,6 +8,7 @@ import lombok.Getter;
 import java.io.Serializable;
 import java.net.URI;
 import java.time.Instant;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -33,12 +34,31 @@ public class WorkerInfo implements Serializable {
     @JsonProperty("lastHeartbeat")
     private final Instant lastHeartbeat;
 
-    public WorkerInfo(String workerId, URI address, WorkerStatus status, Instant lastHeartbeat) {
+    @JsonProperty("acceptEncodings")
+    private final List<String> acceptEncodings;
+
+    /**
+     * Число задач, которые worker выполняет одновременно, 0 - неизвестно.
+     */
+    @JsonProperty("slots")
+    private final int slots;
+
+    /**
+     * Свободная часть бюджета памяти worker-а для задач в байтах по его последнему сообщению, -1 - неизвестно.
+     */
+    @JsonProperty("memoryAvailable")
+    private final long memoryAvailable;
+
+    public WorkerInfo(String workerId, URI address, WorkerStatus status, Instant lastHeartbeat,
+                      List<String> acceptEncodings, int slots, long memoryAvailable) {
         this.workerId = workerId;
         this.address = address;
         this.activeTaskIds = ConcurrentHashMap.newKeySet();
         this.status = status;
         this.lastHeartbeat = lastHeartbeat;
+        this.acceptEncodings = acceptEncodings != null ? acceptEncodings : List.of();
+        this.slots = slots;
+        this.memoryAvailable = memoryAvailable;
     }
 
     /**
@@ -49,26 +69,67 @@ public class WorkerInfo implements Serializable {
         return activeTaskIds.size();
     }
 
+    /**
+     * Возвращает число назначенных задач, которые ждут в очереди worker-а свободного потока.
+     */
+    @JsonIgnore
+    public int getQueuedTasks() {
+        return Math.max(0, getActiveTasks() - Math.max(1, slots));
+    }
+
     public WorkerInfo withStatus(WorkerStatus status) {
-        return new WorkerInfo(workerId, address, activeTaskIds, status, lastHeartbeat);
+        return new WorkerInfo(workerId, address, activeTaskIds, status, lastHeartbeat, acceptEncodings, slots,
+                memoryAvailable);
     }
 
     public WorkerInfo withLastHeartbeat(Instant lastHeartbeat) {
-        return new WorkerInfo(workerId, address, activeTaskIds, status, lastHeartbeat);
+        return new WorkerInfo(workerId, address, activeTaskIds, status, lastHeartbeat, acceptEncodings, slots,
+                memoryAvailable);
+    }
+
+    public WorkerInfo withMemoryAvailable(long memoryAvailable) {
+        return new WorkerInfo(workerId, address, activeTaskIds, status, lastHeartbeat, acceptEncodings, slots,
+                memoryAvailable);
+    }
+
+    /**
+     * Проверяет, принимает ли worker тела запросов в указанной кодировке.
+     */
+    public boolean acceptsEncoding(String encoding) {
+        return acceptEncodings.contains(encoding);
     }
 
     /**
      * Добавляет задачу в Set активных задач.
      */
     public void addTask(UUID taskId) {
-        activeTaskIds.add(taskId);
+        synchronized (activeTaskIds) {
+            activeTaskIds.add(taskId);
+        }
+    }
+
+    /**
+     * Добавляет задачу в Set активных задач, если в нём меньше limit задач. Проверка и добавление выполняются
+     * под блокировкой Set-а, общего для всех копий WorkerInfo, поэтому параллельные вызовы не превысят limit.
+     * @return false, если свободных мест нет
+     */
+    public boolean tryAddTask(UUID taskId, int limit) {
+        synchronized (activeTaskIds) {
+            if (activeTaskIds.size() >= limit) {
+                return false;
+            }
+            activeTaskIds.add(taskId);
+            return true;
+        }
     }
 
     /**
      * Удаляет задачу из Set активных задач.
      */
     public void removeTask(UUID taskId) {
-        activeTaskIds.remove(taskId);
+        synchronized (activeTaskIds) {
+            activeTaskIds.remove(taskId);
+        }
     }
 }
 
@@ -6,6 +6,7 @@ import lombok.Getter;
 
 import java.io.Serializable;
 import java.net.URI;
+import java.util.List;
 
 /**
  * Запрос на регистрацию worker-а.
@@ -18,5 +19,23 @@ public class WorkerRegistrationRequest implements Serializable {
     
     @JsonProperty("address")
     private final URI address;
+
+    /**
+     * Поддерживаемые worker-ом Content-Encoding для тел запросов (например, deflate).
+     */
+    @JsonProperty("acceptEncodings")
+    private final List<String> acceptEncodings;
+
+    /**
+     * Число потоков, которыми worker выполняет задачи. Задачи сверх этого числа ждут в его очереди.
+     */
+    @JsonProperty("slots")
+    private final int slots;
+
+    /**
+     * Heap-память, которую worker отводит под выполняемые задачи, в байтах. 0 - не ограничена.
+     */
+    @JsonProperty("memoryBudget")
+    private final long memoryBudget;
 }
 
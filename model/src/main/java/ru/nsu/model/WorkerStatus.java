@@ -5,5 +5,6 @@ package ru.nsu.model;
  */
 public enum WorkerStatus {
     ALIVE,      // Worker активен и готов к выполнению задач
+    DRAINING,   // Worker завершает выполняющиеся задачи и получает только адресованные ему
     UNAVAILABLE // Worker недоступен
 }
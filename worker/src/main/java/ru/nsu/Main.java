@@ -31,14 +31,14 @@ public class Main {
             workerId = args[2];
         }
 
-        WorkerServer server = new WorkerServer(workerId, workerPort, URI.create(dispatcherUrl));
+        try {
+            WorkerServer server = new WorkerServer(workerId, workerPort, URI.create(dispatcherUrl));
 
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            log.info("Shutting down...");
-            server.stop();
-        }));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                log.info("Shutting down...");
+                server.stop();
+            }));
 
-        try {
             server.start();
             Thread.currentThread().join();
         } catch (IOException e) {
@@ -0,0 +1,137 @@
+package ru.nsu.worker;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.nsu.common.metrics.Counter;
+import ru.nsu.common.metrics.MetricsRegistry;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Локальное хранилище байткода, адресуемого по хэшу, ограниченное по объёму: при переполнении
+ * вытесняются давно не использованные blob-ы. Аргументы задач приходят в теле задачи и здесь не хранятся.
+ * Недостающие blob-ы забираются напрямую у peer-worker-а, адрес которого сообщил dispatcher.
+ */
+@Slf4j
+public class BlobStore {
+    /**
+     * Сколько последних вытесненных blob-ов сообщать dispatcher-у.
+     */
+    private static final int REPORTED_EVICTIONS = 1024;
+
+    private final Map<String, byte[]> blobs = new LinkedHashMap<>(16, 0.75f, true); // порядок доступа, под this
+    private final Set<String> evicted = new LinkedHashSet<>(); // вытесненные и не сохранённые повторно
+    private final long maxBytes;
+    private long bytes;
+    private final PeerClient peerClient;
+    private final Counter inline;
+    private final Counter local;
+    private final Counter peer;
+    private final Counter evictions;
+
+    /**
+     * @param maxBytes суммарный размер хранимых blob-ов
+     */
+    public BlobStore(PeerClient peerClient, long maxBytes, MetricsRegistry metrics) {
+        this.peerClient = peerClient;
+        this.maxBytes = maxBytes;
+        String name = "worker_blob_lookups_total";
+        String help = "Blobs resolved by source: sent with the task, local store or fetched from a peer";
+        this.inline = metrics.counter(name, help, "source", "inline");
+        this.local = metrics.counter(name, help, "source", "local");
+        this.peer = metrics.counter(name, help, "source", "peer");
+        this.evictions = metrics.counter("worker_blob_evictions_total", "Blobs evicted from the store to stay within its size");
+        metrics.gauge("worker_blob_store_bytes", "Size of blobs kept in the store", this::getBytes);
+    }
+
+    public synchronized byte[] get(String hash) {
+        return blobs.get(hash);
+    }
+
+    /**
+     * Сохраняет blob, вытесняя давно не использованные. Blob больше всего хранилища не сохраняется
+     * и сразу считается вытесненным.
+     */
+    public synchronized void put(String hash, byte[] blob) {
+        if (blobs.containsKey(hash)) {
+            return;
+        }
+        if (blob.length > maxBytes) {
+            evict(hash);
+            return;
+        }
+        var iterator = blobs.entrySet().iterator();
+        while (bytes + blob.length > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, byte[]> eldest = iterator.next();
+            iterator.remove();
+            bytes -= eldest.getValue().length;
+            evict(eldest.getKey());
+            log.debug("Blob {} evicted from local store", eldest.getKey());
+        }
+        blobs.put(hash, blob);
+        bytes += blob.length;
+        evicted.remove(hash);
+    }
+
+    private void evict(String hash) {
+        evictions.inc();
+        evicted.add(hash);
+        if (evicted.size() > REPORTED_EVICTIONS) {
+            evicted.remove(evicted.iterator().next());
+        }
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Вытесненные blob-ы, о которых нужно сообщать dispatcher-у, чтобы он перестал направлять
+     * к этому worker-у peer-ов и задачи без байткода. Список передаётся в каждом heartbeat-е:
+     * dispatcher может записать worker держателем уже после вытеснения, когда придёт результат задачи.
+     */
+    public synchronized List<String> getEvicted() {
+        return List.copyOf(evicted);
+    }
+
+    /**
+     * Возвращает содержимое blob-а: переданное в задаче, из локального хранилища или скачанное у peer-а.
+     * @param hash хэш blob-а, может быть null для blob-ов без адреса
+     * @param bytes байты из тела задачи, если dispatcher их передал
+     * @param sources адреса peer-ов по хэшам blob-ов
+     * @throws IOException если blob нигде не найден
+     */
+    public byte[] resolve(String hash, byte[] bytes, Map<String, URI> sources) throws IOException {
+        if (hash == null) {
+            return bytes;
+        }
+        if (bytes != null) {
+            inline.inc();
+            put(hash, bytes);
+            return bytes;
+        }
+
+        byte[] cached = get(hash);
+        if (cached != null) {
+            local.inc();
+            log.debug("Blob {} found in local store", hash);
+            return cached;
+        }
+
+        URI source = sources != null ? sources.get(hash) : null;
+        if (source == null) {
+            throw new IOException("Blob " + hash + " is not available locally and has no peer source");
+        }
+
+        byte[] fetched = peerClient.fetchBlob(source, hash);
+        peer.inc();
+        put(hash, fetched);
+        log.debug("Blob {} fetched from peer {} ({} bytes)", hash, source, fetched.length);
+        return fetched;
+    }
+}
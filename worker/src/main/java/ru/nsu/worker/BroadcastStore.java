@@ -0,0 +1,127 @@
+package ru.nsu.worker;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.nsu.common.HashUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище broadcast-переменных worker-а.
+ * Каждая переменная загружается на worker один раз, хранится в файле и отображается в память (mmap).
+ * Задачи получают общий read-only вид на отображённый буфер, без копий в heap.
+ */
+@Slf4j
+public class BroadcastStore {
+    private final Path directory;
+    private final PeerClient peerClient;
+    private final Map<String, MappedByteBuffer> buffers = new ConcurrentHashMap<>();
+
+    public BroadcastStore(Path directory, PeerClient peerClient) {
+        this.directory = directory;
+        this.peerClient = peerClient;
+    }
+
+    public boolean contains(String broadcastId) {
+        return buffers.containsKey(broadcastId);
+    }
+
+    /**
+     * Сохраняет broadcast-переменную из потока, проверяя, что её SHA-256 совпадает с идентификатором.
+     * @throws IOException если данные не удалось записать или хэш не совпал
+     */
+    public void store(String broadcastId, InputStream data) throws IOException {
+        if (buffers.containsKey(broadcastId)) {
+            data.transferTo(OutputStream.nullOutputStream());
+            return;
+        }
+
+        Path tmp = Files.createTempFile(directory, broadcastId, ".part");
+        try {
+            MessageDigest digest = HashUtils.sha256();
+            try (InputStream in = new DigestInputStream(data, digest)) {
+                Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            String actual = HexFormat.of().formatHex(digest.digest());
+            if (!actual.equals(broadcastId)) {
+                throw new IOException("Broadcast content hash " + actual + " does not match id " + broadcastId);
+            }
+            Path target = directory.resolve(broadcastId);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            buffers.computeIfAbsent(broadcastId, id -> map(target));
+            log.info("Broadcast {} stored ({} bytes)", broadcastId, Files.size(target));
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Гарантирует наличие broadcast-переменной, при необходимости скачивая её у peer-а.
+     */
+    public void ensure(String broadcastId, Map<String, URI> sources) throws IOException {
+        if (buffers.containsKey(broadcastId)) {
+            return;
+        }
+        URI peer = sources != null ? sources.get(broadcastId) : null;
+        if (peer == null) {
+            throw new IOException("Broadcast " + broadcastId + " is not available locally and has no peer source");
+        }
+        try (InputStream in = peerClient.openBlob(peer, broadcastId)) {
+            store(broadcastId, in);
+        }
+    }
+
+    /**
+     * Возвращает независимый read-only вид на данные broadcast-переменной.
+     */
+    public ByteBuffer view(String broadcastId) {
+        MappedByteBuffer buffer = buffers.get(broadcastId);
+        if (buffer == null) {
+            throw new IllegalStateException("Broadcast " + broadcastId + " is not loaded");
+        }
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Путь к файлу broadcast-переменной, либо null, если её нет на worker-е.
+     */
+    public Path file(String broadcastId) {
+        return buffers.containsKey(broadcastId) ? directory.resolve(broadcastId) : null;
+    }
+
+    /**
+     * Удаляет файлы broadcast-переменных. Уже отображённые буферы остаются валидными до сборки мусора.
+     */
+    public void close() {
+        buffers.clear();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            log.warn("Failed to clean broadcast directory {}", directory, e);
+        }
+    }
+
+    private static MappedByteBuffer map(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to map broadcast file " + file, e);
+        }
+    }
+}
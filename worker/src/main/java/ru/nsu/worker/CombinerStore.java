@@ -0,0 +1,61 @@
+package ru.nsu.worker;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BinaryOperator;
+
+/**
+ * Частичные значения map-reduce заданий, накопленные на этом worker-е.
+ * Чанки одного задания сворачиваются в одно значение, которое клиент забирает задачей COLLECT.
+ */
+public class CombinerStore {
+    private final Map<String, Partial> partials = new ConcurrentHashMap<>();
+
+    /**
+     * Сворачивает значение чанка с уже накопленным значением задания.
+     * @throws NullPointerException если значение или результат свёртки - null, как у Stream.reduce
+     */
+    public void merge(String jobId, Object value, BinaryOperator<Object> combiner) {
+        Objects.requireNonNull(value, "Chunk value of job " + jobId + " is null");
+        partials.compute(jobId, (id, partial) -> partial == null
+                ? new Partial(value)
+                : new Partial(Objects.requireNonNull(combiner.apply(partial.value, value),
+                        "Combined value of job " + jobId + " is null")));
+    }
+
+    /**
+     * Возвращает накопленное значение задания и удаляет его.
+     * @return null, если значения нет: чанки задания здесь не выполнялись, значение вытеснено
+     * по {@link #evictIdle} или worker перезапущен
+     */
+    public Object take(String jobId) {
+        Partial partial = partials.remove(jobId);
+        return partial != null ? partial.value : null;
+    }
+
+    /**
+     * Возвращает число заданий, значения которых ещё не забраны.
+     */
+    public int size() {
+        return partials.size();
+    }
+
+    /**
+     * Удаляет значения заданий, которые не обновлялись дольше idleTimeout (клиент не забрал результат).
+     */
+    public void evictIdle(Duration idleTimeout) {
+        long now = System.nanoTime();
+        partials.values().removeIf(partial -> now - partial.updatedAt > idleTimeout.toNanos());
+    }
+
+    private static final class Partial {
+        private final Object value;
+        private final long updatedAt = System.nanoTime();
+
+        private Partial(Object value) {
+            this.value = value;
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package ru.nsu.worker;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import ru.nsu.common.JacksonConfig;
+import ru.nsu.common.PayloadCompressor;
+import ru.nsu.common.TaskFrames;
 import ru.nsu.model.TaskResult;
 import ru.nsu.model.WorkerRegistrationRequest;
 
@@ -11,26 +14,42 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 @Slf4j
 public class DispatcherClient {
+    /**
+     * Попытки отправить результат. Повтор безопасен: dispatcher принимает результат задачи один раз.
+     */
+    private static final int RESULT_ATTEMPTS = 5;
+    private static final Duration RESULT_RETRY_DELAY = Duration.ofMillis(200);
+
     private final URI dispatcherBaseUrl;
     private final ObjectMapper objectMapper;
     private final HttpClient httpClient;
+    private final PayloadCompressor compressor;
+    private volatile boolean dispatcherAcceptsDeflate = false;
 
-    public DispatcherClient(URI dispatcherBaseUrl) {
+    public DispatcherClient(URI dispatcherBaseUrl, PayloadCompressor compressor) {
         this.dispatcherBaseUrl = dispatcherBaseUrl;
+        this.compressor = compressor;
         this.objectMapper = JacksonConfig.createObjectMapper();
         this.httpClient = HttpClient.newBuilder()
                 .connectTimeout(Duration.ofSeconds(5))
                 .build();
     }
 
-    public boolean registerWorker(String workerId, URI workerAddress) {
+    /**
+     * @param slots число потоков, которыми worker выполняет задачи
+     */
+    public boolean registerWorker(String workerId, URI workerAddress, int slots, long memoryBudget) {
         try {
-            WorkerRegistrationRequest request = new WorkerRegistrationRequest(workerId, workerAddress);
+            WorkerRegistrationRequest request = new WorkerRegistrationRequest(workerId, workerAddress,
+                    List.of(PayloadCompressor.ENCODING), slots, memoryBudget);
             String requestBody = objectMapper.writeValueAsString(request);
 
             HttpRequest httpRequest = HttpRequest.newBuilder()
@@ -42,6 +61,12 @@ public class DispatcherClient {
             HttpResponse<String> response = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofString());
 
             if (response.statusCode() == 200) {
+                JsonNode acceptEncodings = objectMapper.readTree(response.body()).path("acceptEncodings");
+                for (JsonNode encoding : acceptEncodings) {
+                    if (PayloadCompressor.ENCODING.equals(encoding.asText())) {
+                        dispatcherAcceptsDeflate = true;
+                    }
+                }
                 log.info("Successfully registered worker {} at {}", workerId, workerAddress);
                 return true;
             } else {
@@ -54,11 +79,21 @@ public class DispatcherClient {
         }
     }
 
-    public boolean sendHeartbeat(String workerId, int activeTasks) {
+    /**
+     * @param taskIds принятые задачи, результат которых ещё не доставлен dispatcher-у
+     * @param evictedBlobs blob-ы, вытесненные из {@link BlobStore}
+     * @param combinerJobs число map-reduce заданий, частичные значения которых хранит {@link CombinerStore}
+     */
+    public boolean sendHeartbeat(String workerId, int activeTasks, long memoryAvailable, Collection<UUID> taskIds,
+                                 Collection<String> evictedBlobs, int combinerJobs) {
         try {
-            Map<String, String> request = new HashMap<>();
+            Map<String, Object> request = new HashMap<>();
             request.put("workerId", workerId);
             request.put("activeTasks", String.valueOf(activeTasks));
+            request.put("memoryAvailable", String.valueOf(memoryAvailable));
+            request.put("taskIds", taskIds.stream().map(UUID::toString).toList());
+            request.put("evictedBlobs", evictedBlobs);
+            request.put("combinerJobs", String.valueOf(combinerJobs));
             String requestBody = objectMapper.writeValueAsString(request);
 
             HttpRequest httpRequest = HttpRequest.newBuilder()
@@ -75,22 +110,59 @@ public class DispatcherClient {
         }
     }
 
+    /**
+     * Отправляет результат, повторяя попытку при сетевой ошибке или ошибке сервера dispatcher-а.
+     * @return false, если результат не удалось доставить
+     */
     public boolean sendTaskResult(TaskResult result) {
+        HttpRequest httpRequest;
         try {
-            String requestBody = objectMapper.writeValueAsString(result);
+            PayloadCompressor.Body body = compressor.prepare(TaskFrames.encodeResult(objectMapper, result),
+                    "worker->dispatcher", dispatcherAcceptsDeflate);
 
-            HttpRequest httpRequest = HttpRequest.newBuilder()
+            HttpRequest.Builder builder = HttpRequest.newBuilder()
                     .uri(dispatcherBaseUrl.resolve("/api/tasks/result"))
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(requestBody))
-                    .build();
-
-            HttpResponse<String> response = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofString());
-            return response.statusCode() == 200;
+                    .header("Content-Type", TaskFrames.CONTENT_TYPE)
+                    .POST(HttpRequest.BodyPublishers.ofByteArrays(body.segments()));
+            if (body.encoding() != null) {
+                builder.header("Content-Encoding", body.encoding());
+            }
+            httpRequest = builder.build();
         } catch (Exception e) {
-            log.error("Error sending task result", e);
+            log.error("Error encoding result of task {}", result.getTaskId(), e);
             return false;
         }
+
+        long delay = RESULT_RETRY_DELAY.toMillis();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                HttpResponse<String> response = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() == 200) {
+                    return true;
+                }
+                if (response.statusCode() < 500 || attempt == RESULT_ATTEMPTS) {
+                    log.error("Dispatcher rejected result of task {}: status {}",
+                            result.getTaskId(), response.statusCode());
+                    return false;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (Exception e) {
+                if (attempt == RESULT_ATTEMPTS) {
+                    log.error("Error sending result of task {}", result.getTaskId(), e);
+                    return false;
+                }
+                log.warn("Error sending result of task {}, retrying: {}", result.getTaskId(), e.toString());
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            delay *= 2;
+        }
     }
 }
 
@@ -1,52 +1,124 @@
 package ru.nsu.worker;
 
 import lombok.extern.slf4j.Slf4j;
+import ru.nsu.common.HashUtils;
+import ru.nsu.common.metrics.Counter;
+import ru.nsu.common.metrics.MetricsRegistry;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
 
+/**
+ * Загружает код задач.
+ * Код задачи - байткод одного класса или jar-архив с классом задачи и его зависимостями. Для каждого хэша кода
+ * создаётся свой ClassLoader, поэтому разные версии одного класса не конфликтуют, а повторные задачи с тем же
+ * кодом используют уже загруженные классы.
+ */
 @Slf4j
 public class DynamicClassLoader extends ClassLoader {
-    private final Map<String, Class<?>> classCache = new HashMap<>();
+    private final Map<String, CodeBundleLoader> bundleLoaders = new ConcurrentHashMap<>();
+    private final Counter hits;
+    private final Counter misses;
 
     public DynamicClassLoader(ClassLoader parent) {
+        this(parent, new MetricsRegistry());
+    }
+
+    public DynamicClassLoader(ClassLoader parent, MetricsRegistry metrics) {
         super(parent);
+        this.hits = metrics.counter("worker_code_cache_lookups_total", "Task code lookups in the class cache",
+                "outcome", "hit");
+        this.misses = metrics.counter("worker_code_cache_lookups_total", "Task code lookups in the class cache",
+                "outcome", "miss");
     }
 
     /**
-     * Загружает класс из байткода.
-     * @param className имя класса
-     * @param classBytes байткод класса
+     * Загружает класс задачи из её кода.
+     * @param codeHash хэш кода, null - вычисляется по байтам
+     * @param className имя класса задачи
+     * @param code байткод класса или jar-архив
      * @return загруженный класс
-     * @throws ClassFormatError если байткод невалидный
+     * @throws ClassFormatError если код не является ни class-файлом, ни jar-архивом
+     * @throws ClassNotFoundException если класса задачи нет в архиве
      */
-    public Class<?> loadClassFromBytes(String className, byte[] classBytes) throws ClassFormatError {
-        if (classCache.containsKey(className)) {
-            log.debug("Class {} found in cache", className);
-            return classCache.get(className);
+    public Class<?> loadTaskClass(String codeHash, String className, byte[] code)
+            throws ClassFormatError, ClassNotFoundException {
+        String hash = codeHash != null ? codeHash : HashUtils.sha256Hex(code);
+        CodeBundleLoader loader = bundleLoaders.get(hash);
+        if (loader == null) {
+            misses.inc();
+            loader = bundleLoaders.computeIfAbsent(hash, h -> new CodeBundleLoader(this, readClasses(className, code)));
+        } else {
+            hits.inc();
+            log.debug("Code {} found in cache", hash);
         }
+        return Class.forName(className, false, loader);
+    }
+
+    public boolean isCodeCached(String codeHash) {
+        return bundleLoaders.containsKey(codeHash);
+    }
+
+    private static Map<String, byte[]> readClasses(String className, byte[] code) {
+        log.debug("Loading code of {} from {} bytes", className, code.length);
 
-        log.debug("Loading class {} from {} bytes", className, classBytes.length);
-        
-        // Проверяем минимальный размер класса (магическое число CAFEBABE + версия + минимум данных)
-        if (classBytes.length < 8) {
-            throw new ClassFormatError("Class file too small: " + classBytes.length + " bytes. Minimum is 8 bytes.");
+        // Проверяем минимальный размер (магическое число + версия + минимум данных)
+        if (code.length < 8) {
+            throw new ClassFormatError("Class file too small: " + code.length + " bytes. Minimum is 8 bytes.");
         }
 
-        if (classBytes[0] != (byte)0xCA || classBytes[1] != (byte)0xFE || 
-            classBytes[2] != (byte)0xBA || classBytes[3] != (byte)0xBE) {
-            throw new ClassFormatError("Invalid class file: missing magic number (0xCAFEBABE)");
+        if (code[0] == (byte) 0xCA && code[1] == (byte) 0xFE && code[2] == (byte) 0xBA && code[3] == (byte) 0xBE) {
+            return Map.of(className, code);
         }
+        if (code[0] == 'P' && code[1] == 'K' && code[2] == 3 && code[3] == 4) {
+            return readJar(code);
+        }
+        throw new ClassFormatError("Invalid class file: missing magic number (0xCAFEBABE)");
+    }
 
-        Class<?> clazz = defineClass(className, classBytes, 0, classBytes.length);
-        classCache.put(className, clazz);
-        log.debug("Class {} loaded and cached successfully", className);
-        
-        return clazz;
+    private static Map<String, byte[]> readJar(byte[] jar) {
+        Map<String, byte[]> classes = new HashMap<>();
+        try (JarInputStream in = new JarInputStream(new ByteArrayInputStream(jar))) {
+            JarEntry entry;
+            while ((entry = in.getNextJarEntry()) != null) {
+                String name = entry.getName();
+                if (!entry.isDirectory() && name.endsWith(".class")) {
+                    classes.put(name.substring(0, name.length() - ".class".length()).replace('/', '.'),
+                            in.readAllBytes());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read code bundle", e);
+        }
+        log.debug("Code bundle contains {} classes", classes.size());
+        return classes;
     }
 
-    public boolean isClassCached(String className) {
-        return classCache.containsKey(className);
+    /**
+     * ClassLoader одного пакета кода. Классы определяются лениво при первом обращении; классы, доступные
+     * родителю (JDK, model, common), всегда берутся у родителя, даже если попали в пакет.
+     */
+    private static final class CodeBundleLoader extends ClassLoader {
+        private final Map<String, byte[]> classes;
+
+        private CodeBundleLoader(ClassLoader parent, Map<String, byte[]> classes) {
+            super(parent);
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytes = classes.get(name);
+            if (bytes == null) {
+                throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, bytes, 0, bytes.length);
+        }
     }
 }
-
@@ -0,0 +1,123 @@
+package ru.nsu.worker;
+
+import lombok.Getter;
+import ru.nsu.common.metrics.MetricsRegistry;
+import ru.nsu.model.Task;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Бюджет heap-памяти worker-а для выполняемых задач.
+ * Память задачи оценивается как размер её payload (аргументы и функция), умноженный на коэффициент её кода.
+ * Байткод в payload не входит: он загружается один раз на worker и приходит только с первой задачей.
+ * Коэффициент учится по выполненным задачам с тем же codeHash: отношение памяти, выделенной потоком задачи, к размеру
+ * payload. Выделенная память не меньше удерживаемой, поэтому оценка скорее завышена: задача с большой оценкой
+ * не отклоняется, а ждёт, пока сможет выполняться одна. Отклоняются только задачи, которым не хватит бюджета
+ * даже при минимальном коэффициенте. Память, выделенная потоками parallel map, в коэффициент не попадает.
+ */
+public class MemoryBudget {
+    /**
+     * Оценка задачи с маленьким payload.
+     */
+    private static final long MIN_ESTIMATE = 64 * 1024;
+    /**
+     * Десериализованные аргументы занимают не меньше места, чем сериализованные, и существуют одновременно с ними.
+     */
+    private static final double MIN_MULTIPLIER = 2;
+    private static final double MAX_MULTIPLIER = 64;
+    /**
+     * Вес нового наблюдения в коэффициенте кода.
+     */
+    private static final double LEARNING_RATE = 0.3;
+    private static final com.sun.management.ThreadMXBean THREADS =
+            ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                    && threads.isThreadAllocatedMemorySupported() ? threads : null;
+
+    @Getter
+    private final long budget;
+    private final double defaultMultiplier;
+    private final Map<String, Double> multipliers = new ConcurrentHashMap<>();
+    private long reserved;
+
+    /**
+     * @param budget            память для задач в байтах
+     * @param defaultMultiplier коэффициент кода, по которому ещё не выполнялись задачи
+     */
+    public MemoryBudget(long budget, double defaultMultiplier, MetricsRegistry metrics) {
+        this.budget = budget;
+        this.defaultMultiplier = defaultMultiplier;
+        metrics.gauge("worker_memory_budget_bytes", "Heap memory budget for tasks", () -> budget);
+        metrics.gauge("worker_memory_reserved_bytes", "Estimated memory of tasks being executed", this::getReserved);
+    }
+
+    /**
+     * Оценивает память, которая понадобится задаче, но не больше бюджета.
+     */
+    public long estimate(Task task) {
+        double multiplier = task.getCodeHash() != null
+                ? multipliers.getOrDefault(task.getCodeHash(), defaultMultiplier) : defaultMultiplier;
+        return Math.min(budget, Math.max(MIN_ESTIMATE, (long) (payloadSize(task) * multiplier)));
+    }
+
+    /**
+     * Проверяет, что задаче не хватит бюджета, даже если она будет выполняться одна.
+     */
+    public boolean isTooLarge(Task task) {
+        return payloadSize(task) * MIN_MULTIPLIER > budget;
+    }
+
+    /**
+     * Занимает память под задачу. Если других задач нет, память занимается в любом случае,
+     * чтобы задача с оценкой, равной всему бюджету, всё же выполнилась.
+     * @return false, если свободной памяти не хватает
+     */
+    public synchronized boolean tryReserve(long bytes) {
+        if (reserved > 0 && reserved + bytes > budget) {
+            return false;
+        }
+        reserved += bytes;
+        return true;
+    }
+
+    public synchronized void release(long bytes) {
+        reserved -= bytes;
+    }
+
+    public synchronized long getReserved() {
+        return reserved;
+    }
+
+    /**
+     * Уточняет коэффициент кода задачи по памяти, выделенной потоком при её выполнении.
+     * @param allocatedBytes результат {@link #allocatedBytes()} после задачи минус до неё
+     */
+    public void learn(Task task, long allocatedBytes) {
+        long payload = payloadSize(task);
+        if (task.getCodeHash() == null || payload == 0 || allocatedBytes <= 0) {
+            return;
+        }
+        double observed = Math.min(MAX_MULTIPLIER, Math.max(MIN_MULTIPLIER, (double) allocatedBytes / payload));
+        multipliers.merge(task.getCodeHash(), observed,
+                (current, next) -> current + LEARNING_RATE * (next - current));
+    }
+
+    /**
+     * Размер payload задачи в байтах.
+     */
+    public static long payloadSize(Task task) {
+        return length(task.getArguments()) + length(task.getFunction());
+    }
+
+    /**
+     * Память, выделенная текущим потоком с его запуска, -1 - JVM её не считает.
+     */
+    public static long allocatedBytes() {
+        return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    private static long length(byte[] bytes) {
+        return bytes != null ? bytes.length : 0;
+    }
+}
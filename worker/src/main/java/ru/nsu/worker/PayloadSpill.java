@@ -0,0 +1,79 @@
+package ru.nsu.worker;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.nsu.common.metrics.Counter;
+import ru.nsu.common.metrics.MetricsRegistry;
+import ru.nsu.model.Task;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Выгружает на диск большие аргументы задач, ожидающих выполнения, чтобы очередь worker-а не держала их в heap.
+ */
+@Slf4j
+public class PayloadSpill {
+    private final Path directory;
+    private final long threshold;
+    private final Map<UUID, Path> files = new ConcurrentHashMap<>();
+    private final Counter spilled;
+
+    /**
+     * @param threshold размер аргументов в байтах, начиная с которого они выгружаются
+     */
+    public PayloadSpill(Path directory, long threshold, MetricsRegistry metrics) {
+        this.directory = directory;
+        this.threshold = threshold;
+        this.spilled = metrics.counter("worker_tasks_spilled_total", "Queued tasks with arguments spilled to disk");
+    }
+
+    /**
+     * Записывает аргументы задачи в файл, если они не меньше порога.
+     * @return задача без аргументов или исходная задача, если аргументы маленькие или записать их не удалось
+     */
+    public Task spill(Task task) {
+        if (task.getArguments() == null || task.getArguments().length < threshold) {
+            return task;
+        }
+        try {
+            Path file = directory.resolve(task.getTaskId().toString());
+            Files.write(file, task.getArguments());
+            files.put(task.getTaskId(), file);
+            spilled.inc();
+            return task.withBlobs(task.getClassBytes(), null, task.getBlobSources());
+        } catch (IOException e) {
+            log.warn("Failed to spill arguments of task {}, keeping them in memory", task.getTaskId(), e);
+            return task;
+        }
+    }
+
+    /**
+     * Возвращает задаче выгруженные аргументы и удаляет файл.
+     */
+    public Task restore(Task task) throws IOException {
+        Path file = files.remove(task.getTaskId());
+        if (file == null) {
+            return task;
+        }
+        try {
+            return task.withBlobs(task.getClassBytes(), Files.readAllBytes(file), task.getBlobSources());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    public void close() {
+        files.clear();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            log.warn("Failed to clean spill directory {}", directory, e);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package ru.nsu.worker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * HTTP клиент для обмена blob-ами между worker-ами.
+ */
+public class PeerClient {
+    /**
+     * Заголовок ответа с результатом задачи: формат, которым результат сериализован на peer-е.
+     */
+    static final String CODEC_HEADER = "X-Codec";
+
+    private final HttpClient httpClient;
+
+    public PeerClient() {
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    /**
+     * Скачивает blob с указанным хэшем у peer-worker-а.
+     * @throws IOException если peer недоступен или не содержит blob
+     */
+    public byte[] fetchBlob(URI peerAddress, String hash) throws IOException {
+        return send(peerAddress, hash, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    /**
+     * Скачивает у peer-worker-а результат задачи вместе с форматом, которым он сериализован.
+     * @throws IOException если peer недоступен или не хранит результат
+     */
+    public ResultStore.Encoded fetchResult(URI peerAddress, String taskId) throws IOException {
+        HttpResponse<byte[]> response = send(get(peerAddress, taskId), peerAddress, taskId,
+                HttpResponse.BodyHandlers.ofByteArray());
+        return new ResultStore.Encoded(response.body(), response.headers().firstValue(CODEC_HEADER).orElse(null));
+    }
+
+    /**
+     * Открывает поток к blob-у peer-worker-а, не загружая его целиком в память.
+     * @throws IOException если peer недоступен или не содержит blob
+     */
+    public InputStream openBlob(URI peerAddress, String hash) throws IOException {
+        return send(peerAddress, hash, HttpResponse.BodyHandlers.ofInputStream());
+    }
+
+    /**
+     * Сообщает peer-worker-у, что blob получен и больше не нужен: DELETE /api/blobs/{hash}.
+     * @throws IOException если peer недоступен или не содержит blob
+     */
+    public void releaseBlob(URI peerAddress, String hash) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(peerAddress.resolve("/api/blobs/" + hash))
+                .DELETE()
+                .timeout(Duration.ofSeconds(30))
+                .build();
+        send(request, peerAddress, hash, HttpResponse.BodyHandlers.discarding());
+    }
+
+    private <T> T send(URI peerAddress, String hash, HttpResponse.BodyHandler<T> bodyHandler) throws IOException {
+        return send(get(peerAddress, hash), peerAddress, hash, bodyHandler).body();
+    }
+
+    private static HttpRequest get(URI peerAddress, String hash) {
+        return HttpRequest.newBuilder()
+                .uri(peerAddress.resolve("/api/blobs/" + hash))
+                .GET()
+                .timeout(Duration.ofSeconds(30))
+                .build();
+    }
+
+    private <T> HttpResponse<T> send(HttpRequest request, URI peerAddress, String hash,
+                                     HttpResponse.BodyHandler<T> bodyHandler) throws IOException {
+
+        HttpResponse<T> response;
+        try {
+            response = httpClient.send(request, bodyHandler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching blob " + hash, e);
+        }
+
+        if (response.statusCode() != 200) {
+            if (response.body() instanceof InputStream in) {
+                in.close();
+            }
+            throw new IOException("Peer " + peerAddress + " returned status " + response.statusCode()
+                    + " for blob " + hash);
+        }
+        return response;
+    }
+}
@@ -0,0 +1,137 @@
+package ru.nsu.worker;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.nsu.common.codec.Codec;
+import ru.nsu.common.codec.Codecs;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Результаты задач графа, которые ждут зависимые задачи на этом worker-е.
+ * Результат хранится как объект: зависимая задача на этом же worker-е получает его без сериализации и копирования,
+ * поэтому задачи не должны изменять полученные по {@link ru.nsu.model.TaskRef} значения. Другим worker-ам
+ * результат отдаётся сериализованным тем же форматом, что и аргументы задачи-производителя, вместе с именем
+ * формата: формат зависимой задачи может быть другим.
+ * Результат удаляется, когда его прочитали все зависимые задачи. Чтение peer-ом засчитывается только после того,
+ * как peer подтвердил получение: оборвавшаяся или повторённая загрузка не расходует чтение другой зависимой задачи.
+ */
+@Slf4j
+public class ResultStore {
+    private final Map<UUID, Retained> results = new ConcurrentHashMap<>();
+    private final PeerClient peerClient;
+
+    public ResultStore(PeerClient peerClient) {
+        this.peerClient = peerClient;
+    }
+
+    /**
+     * Сохраняет результат задачи до того, как его прочитают consumers зависимых задач.
+     */
+    public void put(UUID taskId, Object value, String codec, int consumers) {
+        results.put(taskId, new Retained(value, codec, consumers));
+    }
+
+    /**
+     * Возвращает результат задачи: из памяти или загрузив его у peer-а, который выполнил задачу.
+     * @param sources адреса peer-ов по идентификаторам задач и хэшам blob-ов
+     * @param classLoader ClassLoader для пользовательских типов результата
+     * @throws IOException если результата нет ни локально, ни у peer-а
+     */
+    public Object read(UUID taskId, Map<String, URI> sources, ClassLoader classLoader) throws IOException {
+        Retained retained = claim(taskId);
+        if (retained != null) {
+            return retained.value;
+        }
+
+        URI peer = sources != null ? sources.get(taskId.toString()) : null;
+        if (peer == null) {
+            throw new IOException("Result of task " + taskId + " is not available locally and has no peer source");
+        }
+        Encoded encoded = peerClient.fetchResult(peer, taskId.toString());
+        log.debug("Result of task {} fetched from peer {} ({} bytes, codec {})", taskId, peer,
+                encoded.bytes().length, encoded.codec());
+        Object value;
+        try {
+            value = Codecs.forName(encoded.codec()).decode(encoded.bytes(), classLoader);
+        } catch (ClassNotFoundException | IllegalArgumentException e) {
+            throw new IOException("Failed to decode result of task " + taskId + ": " + e.getMessage(), e);
+        }
+        try {
+            peerClient.releaseBlob(peer, taskId.toString());
+        } catch (IOException e) {
+            // Неподтверждённый результат peer удалит по evictIdle
+            log.warn("Failed to confirm result of task {} to peer {}: {}", taskId, peer, e.getMessage());
+        }
+        return value;
+    }
+
+    /**
+     * Сериализует результат для peer-worker-а, на котором выполняется зависимая задача. Чтение не засчитывается,
+     * пока peer не подтвердит получение через {@link #release}.
+     * @return null, если результата нет на этом worker-е
+     */
+    public Encoded readForPeer(UUID taskId) throws IOException {
+        Retained retained = results.get(taskId);
+        if (retained == null) {
+            return null;
+        }
+        Codec codec = Codecs.forName(retained.codec);
+        return new Encoded(codec.encode(retained.value), codec.getName());
+    }
+
+    /**
+     * Засчитывает чтение результата peer-ом, который получил и декодировал его.
+     * @return false, если результата нет на этом worker-е
+     */
+    public boolean release(UUID taskId) {
+        return claim(taskId) != null;
+    }
+
+    /**
+     * Удаляет результаты, которые не читались дольше idleTimeout: часть зависимых задач так и не была отправлена.
+     */
+    public void evictIdle(Duration idleTimeout) {
+        long now = System.nanoTime();
+        results.values().removeIf(retained -> now - retained.updatedAt > idleTimeout.toNanos());
+    }
+
+    /**
+     * Засчитывает одно чтение результата и удаляет его после последнего.
+     */
+    private Retained claim(UUID taskId) {
+        Retained[] claimed = new Retained[1];
+        results.computeIfPresent(taskId, (id, retained) -> {
+            claimed[0] = retained;
+            return retained.remaining > 1 ? retained.read() : null;
+        });
+        return claimed[0];
+    }
+
+    /**
+     * Сериализованный результат и имя формата, которым он сериализован.
+     */
+    public record Encoded(byte[] bytes, String codec) {
+    }
+
+    private static final class Retained {
+        private final Object value;
+        private final String codec;
+        private final int remaining;
+        private final long updatedAt = System.nanoTime();
+
+        private Retained(Object value, String codec, int remaining) {
+            this.value = value;
+            this.codec = codec;
+            this.remaining = remaining;
+        }
+
+        private Retained read() {
+            return new Retained(value, codec, remaining - 1);
+        }
+    }
+}
@@ -1,32 +1,130 @@
 package ru.nsu.worker;
 
-import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import ru.nsu.common.HashUtils;
+import ru.nsu.common.codec.Codec;
+import ru.nsu.common.codec.Codecs;
+import ru.nsu.common.metrics.Counter;
+import ru.nsu.common.metrics.Histogram;
+import ru.nsu.common.metrics.MetricsRegistry;
+import ru.nsu.common.trace.TraceBuffer;
+import ru.nsu.model.BroadcastRef;
+import ru.nsu.model.RemoteReducer;
 import ru.nsu.model.Task;
+import ru.nsu.model.TaskMetadata;
+import ru.nsu.model.TaskRef;
 import ru.nsu.model.TaskResult;
+import ru.nsu.model.TaskType;
 
-import java.io.ByteArrayInputStream;
-import java.io.ObjectInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
  * Выполняет задачи в пуле потоков.
  * Использует DynamicClassLoader для загрузки и выполнения кода.
+ * Задача запускается, когда есть свободный поток и хватает бюджета памяти ({@link MemoryBudget}), иначе ждёт
+ * в очереди в порядке поступления. Большие аргументы ожидающих задач выгружаются на диск ({@link PayloadSpill}).
  */
 @Slf4j
 public class TaskExecutor {
+    private static final int FUNCTION_CACHE_SIZE = 256;
+
     private final DynamicClassLoader classLoader;
+    private final BlobStore blobStore;
+    private final BroadcastStore broadcastStore;
+    private final CombinerStore combinerStore;
+    private final ResultStore resultStore;
+    private final TraceBuffer trace;
+    private final MemoryBudget memoryBudget;
+    private final PayloadSpill spill;
+    private final Histogram queueLatency;
+    private final Histogram taskLatency;
+    private final Histogram executionLatency;
+    private final Histogram argumentSize;
+    private final Histogram resultSize;
+    private final Counter succeeded;
+    private final Counter failed;
+    /**
+     * Задачи, принятые к выполнению и ещё не начатые.
+     */
+    private final AtomicInteger queued = new AtomicInteger();
+    /**
+     * Задачи, ждущие свободного потока или памяти. Доступ под блокировкой очереди.
+     */
+    private final Deque<Pending> waiting = new ArrayDeque<>();
+    private long waitingMemory;
+    private int started;
+    private final int threadPoolSize;
     private final ExecutorService executorService;
-    @Getter
-    private volatile int activeTasks = 0;
+    private final ForkJoinPool mapPool;
+    /**
+     * Восстановленные функции MAP/REDUCE задач, LRU.
+     */
+    private final Map<String, Object> functions = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+                    return size() > FUNCTION_CACHE_SIZE;
+                }
+            });
+    /**
+     * Задачи, выполняющиеся в пуле потоков.
+     */
+    private final AtomicInteger activeTasks = new AtomicInteger();
 
-    public TaskExecutor(DynamicClassLoader classLoader, int threadPoolSize) {
+    public TaskExecutor(DynamicClassLoader classLoader, BlobStore blobStore, BroadcastStore broadcastStore,
+                        CombinerStore combinerStore, ResultStore resultStore, TraceBuffer trace,
+                        MemoryBudget memoryBudget, PayloadSpill spill, MetricsRegistry metrics, int threadPoolSize,
+                        int mapParallelism) {
         this.classLoader = classLoader;
+        this.blobStore = blobStore;
+        this.broadcastStore = broadcastStore;
+        this.combinerStore = combinerStore;
+        this.resultStore = resultStore;
+        this.trace = trace;
+        this.memoryBudget = memoryBudget;
+        this.spill = spill;
+        this.threadPoolSize = threadPoolSize;
+        this.queueLatency = metrics.histogram("worker_task_queue_seconds",
+                "Time a task waits for an executor thread", Histogram.NANOS_TO_SECONDS,
+                Histogram.MIN_DURATION_NANOS, Histogram.MAX_DURATION_NANOS);
+        this.taskLatency = metrics.histogram("worker_task_seconds",
+                "Time to process a task including code and payload loading", Histogram.NANOS_TO_SECONDS,
+                Histogram.MIN_DURATION_NANOS, Histogram.MAX_DURATION_NANOS);
+        this.executionLatency = metrics.histogram("worker_task_execution_seconds",
+                "Time spent in the task method or function", Histogram.NANOS_TO_SECONDS,
+                Histogram.MIN_DURATION_NANOS, Histogram.MAX_DURATION_NANOS);
+        this.argumentSize = metrics.histogram("worker_task_argument_bytes", "Size of serialized task arguments",
+                1, Histogram.MIN_SIZE_BYTES, Histogram.MAX_SIZE_BYTES);
+        this.resultSize = metrics.histogram("worker_task_result_bytes", "Size of serialized task results",
+                1, Histogram.MIN_SIZE_BYTES, Histogram.MAX_SIZE_BYTES);
+        this.succeeded = metrics.counter("worker_tasks_total", "Tasks processed by the worker", "outcome", "success");
+        this.failed = metrics.counter("worker_tasks_total", "Tasks processed by the worker", "outcome", "failure");
+        metrics.gauge("worker_tasks_active", "Tasks being executed", activeTasks::get);
+        metrics.gauge("worker_tasks_queued", "Tasks waiting for an executor thread or memory", queued::get);
         this.executorService = Executors.newFixedThreadPool(threadPoolSize);
+        this.mapPool = new ForkJoinPool(mapParallelism);
     }
 
     /**
@@ -35,111 +133,379 @@ public class TaskExecutor {
      * @return TaskResult результат выполнения
      */
     public TaskResult executeTask(Task task) {
-        activeTasks++;
+        activeTasks.incrementAndGet();
+        long startedAt = System.nanoTime();
+        trace.record(task, "worker.started");
         try {
-            log.info("Executing task {}", task.getTaskId());
+            log.debug("Executing task {}", task.getTaskId());
             log.debug("Task details: className={}, methodName={}, classBytes.length={}, arguments.length={}", 
                     task.getClassName(), task.getMethodName(), 
                     task.getClassBytes() != null ? task.getClassBytes().length : 0,
                     task.getArguments() != null ? task.getArguments().length : 0);
 
+            byte[] classBytes;
+            byte[] argumentBytes = task.getArguments();
+            try {
+                classBytes = blobStore.resolve(task.getCodeHash(), task.getClassBytes(), task.getBlobSources());
+                if (task.getBroadcastIds() != null) {
+                    for (String broadcastId : task.getBroadcastIds()) {
+                        broadcastStore.ensure(broadcastId, task.getBlobSources());
+                    }
+                }
+            } catch (IOException e) {
+                log.error("Failed to resolve task {} payload: {}", task.getTaskId(), e.getMessage());
+                return TaskResult.failure(task.getTaskId(), "Failed to resolve payload: " + e.getMessage());
+            }
+            trace.record(task, "worker.payloadResolved");
+            if (argumentBytes != null) {
+                argumentSize.record(argumentBytes.length);
+            }
+
+            Codec codec;
+            try {
+                codec = Codecs.forName(task.getMetadata() != null ? task.getMetadata().getCodec() : null);
+            } catch (IllegalArgumentException e) {
+                return TaskResult.failure(task.getTaskId(), e.getMessage());
+            }
+
             Class<?> clazz;
             try {
-                clazz = classLoader.loadClassFromBytes(task.getClassName(), task.getClassBytes());
+                clazz = classLoader.loadTaskClass(task.getCodeHash(), task.getClassName(), classBytes);
                 log.debug("Class {} loaded successfully", task.getClassName());
-            } catch (LinkageError e) {
+            } catch (LinkageError | ClassNotFoundException | UncheckedIOException e) {
                 log.error("Failed to load class {}: {}", task.getClassName(), e.getMessage(), e);
                 return TaskResult.failure(task.getTaskId(), "Failed to load class: " + e.getMessage());
             }
+            trace.record(task, "worker.classLoaded");
 
             Object[] args;
             try {
-                args = deserializeArguments(task.getArguments());
-                String argsString = args == null ? "" : Arrays.stream(args)
-                        .map(String::valueOf)
-                        .collect(Collectors.joining(" "));
-
-                log.debug("Deserialized {} arguments: {}", args != null ? args.length : 0, argsString);
+                args = resolveReferences(task, deserializeArguments(argumentBytes, codec, clazz.getClassLoader()),
+                        clazz.getClassLoader());
+                if (log.isDebugEnabled()) {
+                    log.debug("Deserialized {} arguments: {}", args != null ? args.length : 0, args == null ? ""
+                            : Arrays.stream(args).map(String::valueOf).collect(Collectors.joining(" ")));
+                }
             } catch (Exception e) {
                 log.error("Failed to deserialize arguments: {}", e.getMessage(), e);
                 return TaskResult.failure(task.getTaskId(), "Failed to deserialize arguments: " + e.getMessage());
             }
+            trace.record(task, "worker.argumentsDecoded");
 
-            Method method;
-            try {
-                method = findMethod(clazz, task.getMethodName(), args);
-                log.debug("Found method {} with {} parameters", task.getMethodName(), args.length);
-            } catch (NoSuchMethodException e) {
-                log.error("Method {} not found in class {}: {}", task.getMethodName(), task.getClassName(), e.getMessage(), e);
-                return TaskResult.failure(task.getTaskId(), "Method not found: " + e.getMessage());
+            Object result;
+            long executionNanos;
+            if (task.getType() == TaskType.MAP || task.getType() == TaskType.REDUCE) {
+                try {
+                    long start = System.nanoTime();
+                    Object function = resolveFunction(task, classBytes, codec, clazz.getClassLoader());
+                    result = task.getType() == TaskType.MAP ? mapChunk(function, args)
+                            : reduceChunk(jobId(task), function, args);
+                    executionNanos = System.nanoTime() - start;
+                    log.debug("Processed {} chunk of task {}", task.getType(), task.getTaskId());
+                } catch (Exception | LinkageError e) {
+                    // LinkageError: класс функции не инициализировался на worker-е, например из-за клиентских классов
+                    Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                    log.error("Error mapping chunk of task {}: {}", task.getTaskId(), cause.getMessage(), cause);
+                    return TaskResult.failure(task.getTaskId(), "Error mapping chunk: " + cause);
+                }
+            } else if (task.getType() == TaskType.COLLECT) {
+                result = combinerStore.take(jobId(task));
+                if (result == null) {
+                    // Клиент запрашивает значение только у worker-ов, выполнивших чанки задания
+                    return TaskResult.failure(task.getTaskId(), "Partial value of job " + jobId(task)
+                            + " is not on this worker: it expired or the worker was restarted");
+                }
+                executionNanos = 0;
+            } else {
+                Method method;
+                try {
+                    method = findMethod(clazz, task.getMethodName(), args);
+                    log.debug("Found method {} with {} parameters", task.getMethodName(), args.length);
+                } catch (NoSuchMethodException e) {
+                    log.error("Method {} not found in class {}: {}", task.getMethodName(), task.getClassName(), e.getMessage(), e);
+                    return TaskResult.failure(task.getTaskId(), "Method not found: " + e.getMessage());
+                }
+
+                try {
+                    long start = System.nanoTime();
+                    // Для метода экземпляра объект создаётся на каждую задачу, состояние между задачами не разделяется
+                    Object target = Modifier.isStatic(method.getModifiers()) ? null
+                            : clazz.getDeclaredConstructor().newInstance();
+                    result = method.invoke(target, args);
+                    executionNanos = System.nanoTime() - start;
+                    log.debug("Method {} executed successfully, result type: {}, result value : {}", task.getMethodName(),
+                            result != null ? result.getClass().getName() : "null", result);
+                } catch (Exception | LinkageError e) {
+                    // ExceptionInInitializerError при первом обращении к классу - тоже ошибка задачи
+                    log.error("Error invoking method {}: {}", task.getMethodName(), e.getMessage(), e);
+                    return TaskResult.failure(task.getTaskId(), "Error invoking method: " + e.getMessage());
+                }
             }
 
-            Object result;
-            try {
-                result = method.invoke(null, args);
-                log.debug("Method {} executed successfully, result type: {}, result value : {}", task.getMethodName(),
-                        result != null ? result.getClass().getName() : "null", result);
-            } catch (Exception e) {
-                log.error("Error invoking method {}: {}", task.getMethodName(), e.getMessage(), e);
-                return TaskResult.failure(task.getTaskId(), "Error invoking method: " + e.getMessage());
+            trace.record(task, "worker.invoked");
+            executionLatency.record(executionNanos);
+
+            TaskMetadata metadata = task.getMetadata();
+            if (metadata != null && metadata.getConsumers() > 0) {
+                resultStore.put(task.getTaskId(), result, codec.getName(), metadata.getConsumers());
+            }
+            if (metadata != null && metadata.isIntermediate()) {
+                // Промежуточный результат остаётся на worker-е, клиенту сообщается только об успехе
+                log.debug("Task {} completed successfully, result retained", task.getTaskId());
+                return TaskResult.success(task.getTaskId(), null, codec.getName()).withExecutionNanos(executionNanos);
             }
 
             byte[] resultBytes;
             try {
-                resultBytes = serializeResult(result);
+                resultBytes = codec.encode(result);
                 log.debug("Result serialized to {} bytes", resultBytes.length);
             } catch (Exception e) {
                 log.error("Failed to serialize result: {}", e.getMessage(), e);
                 return TaskResult.failure(task.getTaskId(), "Failed to serialize result: " + e.getMessage());
             }
 
-            log.info("Task {} completed successfully", task.getTaskId());
-            return TaskResult.success(task.getTaskId(), resultBytes);
+            trace.record(task, "worker.resultEncoded");
+            resultSize.record(resultBytes.length);
+            log.debug("Task {} completed successfully", task.getTaskId());
+            return TaskResult.success(task.getTaskId(), resultBytes, codec.getName()).withExecutionNanos(executionNanos);
 
-        } catch (Exception e) {
+        } catch (Exception | LinkageError e) {
             log.error("Unexpected error executing task {}", task.getTaskId(), e);
             return TaskResult.failure(task.getTaskId(), "Unexpected error: " + e.getMessage());
         } finally {
-            activeTasks--;
+            activeTasks.decrementAndGet();
+            taskLatency.recordSince(startedAt);
         }
     }
 
+    public int getActiveTasks() {
+        return activeTasks.get();
+    }
+
     public void executeTaskAsync(Task task, TaskResultCallback callback) {
-        executorService.submit(() -> {
-            TaskResult result = executeTask(task);
-            callback.onComplete(result);
-        });
+        Pending pending = new Pending(task, callback, memoryBudget.estimate(task), System.nanoTime());
+        queued.incrementAndGet();
+        synchronized (waiting) {
+            if (waiting.isEmpty() && tryStart(pending)) {
+                return;
+            }
+        }
+
+        // Задача будет ждать: аргументы пишутся на диск вне блокировки
+        pending = pending.withTask(spill.spill(task));
+        synchronized (waiting) {
+            waiting.addLast(pending);
+            waitingMemory += pending.memory();
+        }
+        startWaiting();
+    }
+
+    /**
+     * Свободная часть бюджета памяти с учётом ожидающих задач, не меньше нуля.
+     */
+    public long getMemoryAvailable() {
+        synchronized (waiting) {
+            return Math.max(0, memoryBudget.getBudget() - memoryBudget.getReserved() - waitingMemory);
+        }
+    }
+
+    /**
+     * Запускает задачу, если есть свободный поток и память. Вызывается под блокировкой очереди.
+     */
+    private boolean tryStart(Pending pending) {
+        if (started >= threadPoolSize || !memoryBudget.tryReserve(pending.memory())) {
+            return false;
+        }
+        started++;
+        executorService.submit(() -> run(pending));
+        return true;
+    }
+
+    /**
+     * Запускает ожидающие задачи по порядку, пока хватает потоков и памяти.
+     */
+    private void startWaiting() {
+        synchronized (waiting) {
+            while (!waiting.isEmpty() && tryStart(waiting.peekFirst())) {
+                waitingMemory -= waiting.pollFirst().memory();
+            }
+        }
+    }
+
+    private void run(Pending pending) {
+        queued.decrementAndGet();
+        queueLatency.recordSince(pending.queuedAt());
+        try {
+            Task task;
+            TaskResult result;
+            try {
+                task = spill.restore(pending.task());
+            } catch (IOException e) {
+                task = null;
+                log.error("Failed to read spilled arguments of task {}", pending.task().getTaskId(), e);
+            }
+            if (task != null) {
+                long allocatedBefore = MemoryBudget.allocatedBytes();
+                try {
+                    result = executeTask(task);
+                } catch (Throwable e) {
+                    // Результат отправляется при любой ошибке, иначе клиент ждал бы его бесконечно
+                    log.error("Task {} failed with an error", task.getTaskId(), e);
+                    result = TaskResult.failure(task.getTaskId(), "Unexpected error: " + e);
+                }
+                memoryBudget.learn(task, MemoryBudget.allocatedBytes() - allocatedBefore);
+            } else {
+                result = TaskResult.failure(pending.task().getTaskId(), "Failed to read spilled arguments");
+            }
+            (result.isSuccess() ? succeeded : failed).inc();
+            pending.callback().onComplete(result);
+        } finally {
+            memoryBudget.release(pending.memory());
+            synchronized (waiting) {
+                started--;
+            }
+            startWaiting();
+        }
     }
 
     public void shutdown() {
         executorService.shutdown();
+        mapPool.shutdown();
+        spill.close();
+    }
+
+    /**
+     * Десериализует аргументы, разрешая пользовательские типы через ClassLoader класса задачи.
+     */
+    private Object[] deserializeArguments(byte[] arguments, Codec codec, ClassLoader taskClassLoader) throws Exception {
+        return (Object[]) codec.decode(arguments, taskClassLoader);
     }
 
-    private Object[] deserializeArguments(byte[] arguments) throws Exception {
-        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(arguments))) {
-            return (Object[]) ois.readObject();
+    /**
+     * Возвращает функцию задачи. Чанки одного задания передают одну и ту же функцию, поэтому восстановленный
+     * экземпляр кэшируется по хэшу кода и хэшу сериализованной функции.
+     */
+    private Object resolveFunction(Task task, byte[] classBytes, Codec codec, ClassLoader taskClassLoader)
+            throws Exception {
+        if (task.getFunction() == null) {
+            throw new IllegalArgumentException(task.getType() + " task without function");
+        }
+        String codeHash = task.getCodeHash() != null ? task.getCodeHash() : HashUtils.sha256Hex(classBytes);
+        String key = codeHash + ":" + HashUtils.sha256Hex(task.getFunction());
+        Object function = functions.get(key);
+        if (function == null) {
+            function = codec.decode(task.getFunction(), taskClassLoader);
+            functions.put(key, function);
+            log.debug("Function {} restored", key);
         }
+        return function;
+    }
+
+    /**
+     * Применяет функцию к элементам чанка в отдельном пуле по числу ядер, сохраняя порядок элементов.
+     * Параллельный stream, запущенный из задачи ForkJoinPool, выполняется в этом же пуле.
+     */
+    @SuppressWarnings("unchecked")
+    private List<Object> mapChunk(Object function, Object[] args) throws ExecutionException, InterruptedException {
+        Function<Object, Object> mapper = (Function<Object, Object>) function;
+        List<Object> chunk = (List<Object>) args[0];
+        return mapPool.submit(() -> chunk.parallelStream()
+                .map(mapper)
+                .collect(Collectors.toCollection(ArrayList::new))).get();
+    }
+
+    /**
+     * Применяет map к элементам чанка и сворачивает их в частичное значение задания на этом worker-е.
+     * @return null: частичное значение клиент заберёт задачей COLLECT
+     */
+    @SuppressWarnings("unchecked")
+    private Object reduceChunk(String jobId, Object function, Object[] args)
+            throws ExecutionException, InterruptedException {
+        RemoteReducer<Object, Object> reducer = (RemoteReducer<Object, Object>) function;
+        List<Object> chunk = (List<Object>) args[0];
+        Optional<Object> partial = mapPool.submit(() -> chunk.parallelStream()
+                .map(reducer::map)
+                .reduce(reducer::combine)).get();
+        partial.ifPresent(value -> combinerStore.merge(jobId, value, reducer::combine));
+        return null;
     }
 
-    private byte[] serializeResult(Object result) throws Exception {
-        java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
-        try (java.io.ObjectOutputStream oos = new java.io.ObjectOutputStream(baos)) {
-            oos.writeObject(result);
+    private static String jobId(Task task) {
+        if (task.getMetadata() == null || task.getMetadata().getJobId() == null) {
+            throw new IllegalArgumentException(task.getType() + " task without jobId");
         }
-        return baos.toByteArray();
+        return task.getMetadata().getJobId();
     }
 
-    private Method findMethod(Class<?> clazz, String methodName, Object[] args) throws NoSuchMethodException {
+    /**
+     * Подменяет ссылки на broadcast-переменные read-only видом на их отображённые в память данные,
+     * а ссылки на результаты других задач - самими результатами.
+     */
+    private Object[] resolveReferences(Task task, Object[] args, ClassLoader taskClassLoader) throws IOException {
+        // Результат читается один раз на задачу, даже если передан в нескольких аргументах
+        Map<UUID, Object> results = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i] instanceof BroadcastRef ref) {
+                args[i] = broadcastStore.view(ref.getBroadcastId());
+            } else if (args[i] instanceof TaskRef ref) {
+                if (!results.containsKey(ref.getTaskId())) {
+                    results.put(ref.getTaskId(),
+                            resultStore.read(ref.getTaskId(), task.getBlobSources(), taskClassLoader));
+                }
+                args[i] = results.get(ref.getTaskId());
+            }
+        }
+        return args;
+    }
+
+    /**
+     * Ищет публичный метод, параметры которого совместимы с типами аргументов.
+     * Сначала проверяется точное совпадение типов, затем присваиваемость (подтипы, примитивы и их обёртки).
+     * Доступен пакету для бенчмарков.
+     */
+    static Method findMethod(Class<?> clazz, String methodName, Object[] args) throws NoSuchMethodException {
         Class<?>[] paramTypes = new Class[args.length];
         for (int i = 0; i < args.length; i++) {
-            paramTypes[i] = args[i].getClass();
+            paramTypes[i] = args[i] != null ? args[i].getClass() : Object.class;
+        }
+        try {
+            return clazz.getMethod(methodName, paramTypes);
+        } catch (NoSuchMethodException e) {
+            for (Method method : clazz.getMethods()) {
+                if (method.getName().equals(methodName) && isApplicable(method.getParameterTypes(), args)) {
+                    return method;
+                }
+            }
+            throw e;
         }
-        return clazz.getMethod(methodName, paramTypes);
+    }
+
+    private static boolean isApplicable(Class<?>[] paramTypes, Object[] args) {
+        if (paramTypes.length != args.length) {
+            return false;
+        }
+        for (int i = 0; i < args.length; i++) {
+            Class<?> type = paramTypes[i].isPrimitive() ? MethodType.methodType(paramTypes[i]).wrap().returnType()
+                    : paramTypes[i];
+            if (args[i] == null ? paramTypes[i].isPrimitive() : !type.isInstance(args[i])) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @FunctionalInterface
     public interface TaskResultCallback {
         void onComplete(TaskResult result);
     }
-}
 
+    /**
+     * Принятая задача, ожидающая запуска.
+     * @param memory оценка памяти задачи, занимаемая на время её выполнения
+     */
+    private record Pending(Task task, TaskResultCallback callback, long memory, long queuedAt) {
+        Pending withTask(Task task) {
+            return new Pending(task, callback, memory, queuedAt);
+        }
+    }
+}
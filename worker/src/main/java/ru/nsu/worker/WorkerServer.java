@@ -5,12 +5,28 @@ import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
 import lombok.extern.slf4j.Slf4j;
 import ru.nsu.common.JacksonConfig;
+import ru.nsu.common.PayloadCompressor;
+import ru.nsu.common.PayloadTooLargeException;
+import ru.nsu.common.TaskFrames;
+import ru.nsu.common.metrics.Counter;
+import ru.nsu.common.metrics.Histogram;
+import ru.nsu.common.metrics.MetricsRegistry;
+import ru.nsu.common.trace.TraceBuffer;
 import ru.nsu.model.Task;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -21,23 +37,72 @@ import java.util.concurrent.TimeUnit;
  */
 @Slf4j
 public class WorkerServer {
+    /**
+     * Сколько хранить частичное значение map-reduce задания, которое клиент не забрал.
+     */
+    private static final Duration COMBINER_IDLE_TIMEOUT = Duration.ofMinutes(10);
+    /**
+     * Сколько хранить результат задачи графа, который не прочитали все зависимые задачи.
+     */
+    private static final Duration RESULT_IDLE_TIMEOUT = Duration.ofMinutes(10);
+
     private final String workerId;
     private final int workerPort;
+    private final int threadPoolSize;
     private final DispatcherClient dispatcherClient;
     private final DynamicClassLoader classLoader;
+    private final BlobStore blobStore;
+    private final BroadcastStore broadcastStore;
+    private final CombinerStore combinerStore;
+    private final ResultStore resultStore;
     private final TaskExecutor taskExecutor;
+    private final MemoryBudget memoryBudget;
+    /**
+     * Принятые задачи, результат которых ещё не доставлен dispatcher-у. Передаются в heartbeat: задачу,
+     * которой здесь нет, dispatcher считает потерянной.
+     */
+    private final Set<UUID> unreported = ConcurrentHashMap.newKeySet();
+    private final Counter rejectedTasks;
+    private final TraceBuffer trace;
+    private final Histogram resultSendLatency;
     private final ScheduledExecutorService scheduler;
     private final ObjectMapper objectMapper;
+    private final MetricsRegistry metrics;
+    private final PayloadCompressor compressor;
     private HttpServer httpServer;
     private volatile boolean running = false;
 
-    public WorkerServer(String workerId, int workerPort, URI dispatcherUrl) {
+    public WorkerServer(String workerId, int workerPort, URI dispatcherUrl) throws IOException {
         this.workerId = workerId;
         this.workerPort = workerPort;
-        this.dispatcherClient = new DispatcherClient(dispatcherUrl);
-        this.classLoader = new DynamicClassLoader(Thread.currentThread().getContextClassLoader());
-        int threadPoolSize = Runtime.getRuntime().availableProcessors();
-        this.taskExecutor = new TaskExecutor(classLoader, threadPoolSize);
+        this.metrics = new MetricsRegistry();
+        this.compressor = new PayloadCompressor(metrics);
+        this.resultSendLatency = metrics.histogram("worker_result_send_seconds",
+                "Time to deliver a task result to the dispatcher", Histogram.NANOS_TO_SECONDS,
+                Histogram.MIN_DURATION_NANOS, Histogram.MAX_DURATION_NANOS);
+        this.dispatcherClient = new DispatcherClient(dispatcherUrl, compressor);
+        this.classLoader = new DynamicClassLoader(Thread.currentThread().getContextClassLoader(), metrics);
+        PeerClient peerClient = new PeerClient();
+        this.blobStore = new BlobStore(peerClient,
+                Long.getLong("worker.blobs.maxBytes", 64L * 1024 * 1024), metrics);
+        this.broadcastStore = new BroadcastStore(Files.createTempDirectory(workerId + "-broadcast"), peerClient);
+        this.threadPoolSize = Runtime.getRuntime().availableProcessors();
+        // Число потоков, которыми worker применяет функцию к элементам одного чанка parallel map
+        int mapParallelism = Integer.getInteger("worker.mapParallelism", threadPoolSize);
+        this.combinerStore = new CombinerStore();
+        this.resultStore = new ResultStore(peerClient);
+        this.trace = new TraceBuffer(workerId, Integer.getInteger("worker.trace.bufferSize", 16_384));
+        // Память для задач: по умолчанию 70% heap, остальное - хранилища blob-ов, результатов и сам worker
+        long memoryBudgetBytes = Long.getLong("worker.memory.budgetBytes",
+                (long) (Runtime.getRuntime().maxMemory() * 0.7));
+        this.memoryBudget = new MemoryBudget(memoryBudgetBytes,
+                Double.parseDouble(System.getProperty("worker.memory.defaultMultiplier", "4")), metrics);
+        PayloadSpill spill = new PayloadSpill(Files.createTempDirectory(workerId + "-spill"),
+                Long.getLong("worker.memory.spillThresholdBytes", 1024 * 1024), metrics);
+        this.rejectedTasks = metrics.counter("worker_tasks_rejected_total",
+                "Tasks rejected because they do not fit the memory budget");
+        this.taskExecutor = new TaskExecutor(classLoader, blobStore, broadcastStore, combinerStore, resultStore,
+                trace, memoryBudget, spill, metrics, threadPoolSize, mapParallelism);
         this.scheduler = Executors.newScheduledThreadPool(1);
         this.objectMapper = JacksonConfig.createObjectMapper();
     }
@@ -53,12 +118,16 @@ public class WorkerServer {
 
         httpServer = HttpServer.create(new InetSocketAddress(workerPort), 0);
         httpServer.createContext("/api/tasks/execute", this::handleTaskExecution);
+        httpServer.createContext("/api/blobs/", this::handleBlobRequest);
+        httpServer.createContext("/api/broadcasts/", this::handleBroadcastUpload);
+        httpServer.createContext("/api/metrics", this::handleMetrics);
         httpServer.setExecutor(null);
         httpServer.start();
         log.info("Worker HTTP server started on port {}", workerPort);
 
         URI workerAddress = URI.create("http://localhost:" + workerPort);
-        if (!dispatcherClient.registerWorker(workerId, workerAddress)) {
+        if (!dispatcherClient.registerWorker(workerId, workerAddress, threadPoolSize,
+                memoryBudget.getBudget())) {
             log.error("Failed to register worker, stopping");
             stop();
             return;
@@ -70,6 +139,8 @@ public class WorkerServer {
                 10, // Период 10 секунд
                 TimeUnit.SECONDS
         );
+        scheduler.scheduleAtFixedRate(() -> combinerStore.evictIdle(COMBINER_IDLE_TIMEOUT), 1, 1, TimeUnit.MINUTES);
+        scheduler.scheduleAtFixedRate(() -> resultStore.evictIdle(RESULT_IDLE_TIMEOUT), 1, 1, TimeUnit.MINUTES);
 
         log.info("Worker server started successfully");
     }
@@ -88,6 +159,7 @@ public class WorkerServer {
 
         scheduler.shutdown();
         taskExecutor.shutdown();
+        broadcastStore.close();
         log.info("Worker server stopped");
     }
 
@@ -97,7 +169,8 @@ public class WorkerServer {
         }
 
         int activeTasks = taskExecutor.getActiveTasks();
-        if (!dispatcherClient.sendHeartbeat(workerId, activeTasks)) {
+        if (!dispatcherClient.sendHeartbeat(workerId, activeTasks, taskExecutor.getMemoryAvailable(),
+                List.copyOf(unreported), blobStore.getEvicted(), combinerStore.size())) {
             log.warn("Failed to send heartbeat");
         }
     }
@@ -110,20 +183,152 @@ public class WorkerServer {
 
 
         try {
-            Task task = objectMapper.readValue(exchange.getRequestBody(), Task.class);
-            log.info("Received task {} from dispatcher", task.getTaskId());
-            sendSuccessResponse(exchange, "{\"status\":\"accepted\"}");
-            taskExecutor.executeTaskAsync(task, result -> {
-                if (!dispatcherClient.sendTaskResult(result)) {
-                    log.error("Failed to send task result for task {}", task.getTaskId());
-                }
-            });
+            // Распакованная задача больше бюджета памяти всё равно не будет принята
+            InputStream body = compressor.decode(exchange.getRequestBody(),
+                    exchange.getRequestHeaders().getFirst("Content-Encoding"), "dispatcher->worker",
+                    memoryBudget.getBudget());
+            Task task = TaskFrames.isFrame(exchange.getRequestHeaders().getFirst("Content-Type"))
+                    ? TaskFrames.decodeTask(objectMapper, body)
+                    : objectMapper.readValue(body, Task.class);
+            trace.record(task, "worker.received");
+            log.debug("Received task {} from dispatcher", task.getTaskId());
+            if (memoryBudget.isTooLarge(task)) {
+                rejectedTasks.inc();
+                sendError(exchange, 507, "Task " + task.getTaskId() + " payload of "
+                        + MemoryBudget.payloadSize(task) + " bytes does not fit worker memory budget of "
+                        + memoryBudget.getBudget() + " bytes");
+                return;
+            }
+            if (task.getCodeHash() != null && task.getClassBytes() != null) {
+                // Dispatcher считает worker держателем кода, как только тот принял задачу
+                blobStore.put(task.getCodeHash(), task.getClassBytes());
+            }
+            // Свободная память с учётом принятой задачи, чтобы dispatcher не ждал heartbeat-а
+            long memoryAvailable = Math.max(0, taskExecutor.getMemoryAvailable() - memoryBudget.estimate(task));
+            sendSuccessResponse(exchange, "{\"status\":\"accepted\",\"memoryAvailable\":" + memoryAvailable + "}");
+            unreported.add(task.getTaskId());
+            taskExecutor.executeTaskAsync(task, resultSender(task.getTaskId(), TraceBuffer.traceId(task)));
+        } catch (PayloadTooLargeException e) {
+            rejectedTasks.inc();
+            sendError(exchange, 413, e.getMessage());
         } catch (Exception e) {
             log.error("Error processing task execution request", e);
             sendError(exchange, 400, "Invalid request: " + e.getMessage());
         }
     }
 
+    /**
+     * Обработчик результата задачи, отправляющий его dispatcher-у. Получает только идентификаторы, а не саму задачу:
+     * обработчик живёт, пока задача ждёт в очереди, и не должен удерживать её аргументы, выгруженные на диск.
+     */
+    private TaskExecutor.TaskResultCallback resultSender(UUID taskId, String traceId) {
+        return result -> {
+            if (traceId != null) {
+                // События worker-а уходят dispatcher-у вместе с результатом
+                trace.record(traceId, taskId, "worker.resultSending", null);
+                result = result.withTrace(trace.forTask(taskId));
+            }
+            long start = System.nanoTime();
+            boolean sent = dispatcherClient.sendTaskResult(result.withWorkerId(workerId));
+            resultSendLatency.recordSince(start);
+            // Недоставленный результат dispatcher обнаружит по следующему heartbeat-у
+            unreported.remove(taskId);
+            if (!sent) {
+                log.error("Failed to send task result for task {}", taskId);
+            }
+        };
+    }
+
+    /**
+     * Отдаёт peer-worker-у blob из локального хранилища: GET /api/blobs/{hash}.
+     * Вместо хэша может быть указан идентификатор задачи, результат которой хранится на этом worker-е;
+     * формат его сериализации передаётся в заголовке {@link PeerClient#CODEC_HEADER}.
+     * Получение результата задачи peer подтверждает запросом DELETE /api/blobs/{taskId}.
+     */
+    private void handleBlobRequest(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String hash = path.substring(path.lastIndexOf('/') + 1);
+        if ("DELETE".equals(exchange.getRequestMethod()) && isTaskId(hash)) {
+            if (resultStore.release(UUID.fromString(hash))) {
+                sendSuccessResponse(exchange, "{\"status\":\"released\"}");
+            } else {
+                sendError(exchange, 404, "Result not found: " + hash);
+            }
+            return;
+        }
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            sendError(exchange, 405, "Method not allowed");
+            return;
+        }
+
+        byte[] blob = blobStore.get(hash);
+        Path broadcastFile = blob == null ? broadcastStore.file(hash) : null;
+        if (blob == null && broadcastFile == null && isTaskId(hash)) {
+            ResultStore.Encoded result = resultStore.readForPeer(UUID.fromString(hash));
+            if (result != null) {
+                blob = result.bytes();
+                exchange.getResponseHeaders().set(PeerClient.CODEC_HEADER, result.codec());
+            }
+        }
+        if (blob == null && broadcastFile == null) {
+            sendError(exchange, 404, "Blob not found: " + hash);
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        exchange.sendResponseHeaders(200, blob != null ? blob.length : Files.size(broadcastFile));
+        try (OutputStream os = exchange.getResponseBody()) {
+            if (blob != null) {
+                os.write(blob);
+            } else {
+                Files.copy(broadcastFile, os);
+            }
+        }
+    }
+
+    /**
+     * Принимает broadcast-переменную от dispatcher-а: POST /api/broadcasts/{broadcastId}.
+     */
+    private void handleBroadcastUpload(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            sendError(exchange, 405, "Method not allowed");
+            return;
+        }
+
+        String path = exchange.getRequestURI().getPath();
+        String broadcastId = path.substring(path.lastIndexOf('/') + 1);
+        try {
+            broadcastStore.store(broadcastId, exchange.getRequestBody());
+            sendSuccessResponse(exchange, "{\"status\":\"stored\"}");
+        } catch (IOException e) {
+            log.error("Failed to store broadcast {}", broadcastId, e);
+            sendError(exchange, 400, "Invalid broadcast: " + e.getMessage());
+        }
+    }
+
+    private static boolean isTaskId(String value) {
+        try {
+            UUID.fromString(value);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            sendError(exchange, 405, "Method not allowed");
+            return;
+        }
+
+        byte[] response = metrics.scrape().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+        exchange.sendResponseHeaders(200, response.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(response);
+        }
+    }
+
     private void sendSuccessResponse(HttpExchange exchange, String response) throws IOException {
         sendResponse(exchange, 200, response);
     }
@@ -0,0 +1,147 @@
+package ru.nsu.worker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.nsu.common.JacksonConfig;
+import ru.nsu.common.TaskFrames;
+import ru.nsu.common.codec.Codecs;
+import ru.nsu.model.Task;
+import ru.nsu.model.TaskMetadata;
+import ru.nsu.model.TaskRef;
+import ru.nsu.model.TaskResult;
+import ru.nsu.model.TaskType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Передача результата задачи графа между двумя worker-ами. Вместо dispatcher-а - заглушка, которая принимает
+ * регистрацию и собирает результаты.
+ */
+class ResultExchangeTest {
+    private final ObjectMapper objectMapper = JacksonConfig.createObjectMapper();
+    private final BlockingQueue<TaskResult> results = new LinkedBlockingQueue<>();
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private HttpServer dispatcher;
+    private WorkerServer producer;
+    private WorkerServer consumer;
+    private URI producerAddress;
+    private URI consumerAddress;
+
+    public static class Stages {
+        public static long[] squares(int n) {
+            long[] squares = new long[n];
+            for (int i = 0; i < n; i++) {
+                squares[i] = (long) i * i;
+            }
+            return squares;
+        }
+
+        public static long sum(long[] values) {
+            long sum = 0;
+            for (long value : values) {
+                sum += value;
+            }
+            return sum;
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dispatcher = HttpServer.create(new InetSocketAddress(0), 0);
+        dispatcher.createContext("/api/workers/", exchange -> respond(exchange, "{\"acceptEncodings\":[]}"));
+        dispatcher.createContext("/api/tasks/result", exchange -> {
+            results.add(TaskFrames.decodeResult(objectMapper, exchange.getRequestBody()));
+            respond(exchange, "{}");
+        });
+        dispatcher.start();
+        URI dispatcherUrl = URI.create("http://localhost:" + dispatcher.getAddress().getPort());
+
+        int producerPort = freePort();
+        int consumerPort = freePort();
+        producer = new WorkerServer("producer", producerPort, dispatcherUrl);
+        consumer = new WorkerServer("consumer", consumerPort, dispatcherUrl);
+        producer.start();
+        consumer.start();
+        producerAddress = URI.create("http://localhost:" + producerPort);
+        consumerAddress = URI.create("http://localhost:" + consumerPort);
+    }
+
+    @AfterEach
+    void tearDown() {
+        producer.stop();
+        consumer.stop();
+        dispatcher.stop(0);
+    }
+
+    @Test
+    void consumerDecodesPeerResultWithProducerCodec() throws Exception {
+        byte[] code;
+        try (InputStream in = Stages.class.getResourceAsStream("ResultExchangeTest$Stages.class")) {
+            code = in.readAllBytes();
+        }
+
+        UUID producerId = UUID.randomUUID();
+        execute(producerAddress, new Task(producerId, TaskType.CALL, Stages.class.getName(), "squares", code,
+                Codecs.forName("compact").encode(new Object[]{5}), null, null, null, null, null,
+                new TaskMetadata(null, 0, 0L, "compact", null, null, 1, true, false, null, null)));
+        TaskResult produced = results.poll(10, TimeUnit.SECONDS);
+        assertNotNull(produced);
+        assertTrue(produced.isSuccess(), produced.getErrorMessage());
+
+        UUID consumerId = UUID.randomUUID();
+        execute(consumerAddress, new Task(consumerId, TaskType.CALL, Stages.class.getName(), "sum", code,
+                Codecs.forName("java").encode(new Object[]{new TaskRef(producerId)}), null, null, null,
+                List.of(producerId), Map.of(producerId.toString(), producerAddress),
+                new TaskMetadata(null, 0, 0L, "java", null, null, 0, false, false, null, null)));
+        TaskResult consumed = results.poll(10, TimeUnit.SECONDS);
+        assertNotNull(consumed);
+        assertTrue(consumed.isSuccess(), consumed.getErrorMessage());
+        assertEquals(0L + 1 + 4 + 9 + 16,
+                Codecs.forName("java").decode(consumed.getResult(), getClass().getClassLoader()));
+    }
+
+    private void execute(URI worker, Task task) throws Exception {
+        HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(worker.resolve("/api/tasks/execute"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(task)))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode(), response.body());
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        exchange.sendResponseHeaders(200, body.length());
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body.getBytes());
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package ru.nsu.worker;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.nsu.common.metrics.MetricsRegistry;
+import ru.nsu.common.trace.TraceBuffer;
+import ru.nsu.model.Task;
+import ru.nsu.model.TaskResult;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TaskExecutorTest {
+    private static final long BUDGET = 1L << 30;
+
+    private MemoryBudget memoryBudget;
+    private TaskExecutor executor;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        MetricsRegistry metrics = new MetricsRegistry();
+        PeerClient peerClient = new PeerClient();
+        memoryBudget = new MemoryBudget(BUDGET, 4, metrics);
+        executor = new TaskExecutor(new DynamicClassLoader(getClass().getClassLoader(), metrics),
+                new BlobStore(peerClient, 1024 * 1024, metrics),
+                new BroadcastStore(Files.createTempDirectory("test-broadcast"), peerClient), new CombinerStore(),
+                new ResultStore(peerClient), new TraceBuffer("test", 16), memoryBudget,
+                new PayloadSpill(Files.createTempDirectory("test-spill"), 1024, metrics), metrics, 1, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void spilledArgumentsOfQueuedTaskAreNotRetained() throws InterruptedException {
+        // Весь бюджет занят, поэтому задача остаётся в очереди
+        memoryBudget.tryReserve(BUDGET);
+        List<TaskResult> results = new CopyOnWriteArrayList<>();
+        WeakReference<byte[]> arguments = submit(results);
+
+        for (int i = 0; i < 50 && !arguments.refersTo(null); i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+
+        assertTrue(arguments.refersTo(null), "queued task still holds its spilled arguments");
+        assertEquals(List.of(), results);
+    }
+
+    /**
+     * Отправляет задачу так же, как WorkerServer: обработчик результата не ссылается на задачу.
+     * Задача создаётся в отдельном методе, чтобы на её аргументы не осталось ссылок в кадре теста.
+     */
+    private WeakReference<byte[]> submit(List<TaskResult> results) {
+        byte[] arguments = new byte[4 * 1024 * 1024];
+        Task task = new Task(UUID.randomUUID(), null, "Missing", "run", null, arguments, null, null, null, null, null,
+                null);
+        executor.executeTaskAsync(task, results::add);
+        return new WeakReference<>(arguments);
+    }
+}